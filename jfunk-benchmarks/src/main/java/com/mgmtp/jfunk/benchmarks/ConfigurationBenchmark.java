@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.common.util.ExtendedProperties;
+
+/**
+ * Compares placeholder resolution with and without the caches of parsed and resolved values of
+ * {@link ExtendedProperties}.
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConfigurationBenchmark {
+
+	private static final int COLD_BATCH_SIZE = 1000;
+
+	private Configuration config;
+	private List<String> keys;
+
+	@Setup
+	public void setUp() throws IOException {
+		config = new Configuration(Charsets.UTF_8);
+		InputStream is = null;
+		try {
+			is = getClass().getResourceAsStream("/benchmark-jfunk.properties");
+			config.load(is, Charsets.UTF_8.name());
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+		keys = Lists.newArrayList(config.keySet());
+	}
+
+	/**
+	 * Provides raw values which have never been parsed before for each invocation of
+	 * {@link ConfigurationBenchmark#cold(ColdState, Blackhole)}. A batch of values is created for
+	 * each iteration by appending a unique suffix to the configured raw values.
+	 */
+	@State(Scope.Thread)
+	public static class ColdState {
+
+		private final List<List<String>> batch = Lists.newArrayListWithCapacity(COLD_BATCH_SIZE);
+		private int iteration;
+		private int next;
+
+		@Setup(Level.Iteration)
+		public void createValues(final ConfigurationBenchmark benchmark) {
+			iteration++;
+			batch.clear();
+			for (int i = 0; i < COLD_BATCH_SIZE; ++i) {
+				List<String> values = Lists.newArrayListWithCapacity(benchmark.keys.size());
+				for (String key : benchmark.keys) {
+					values.add(benchmark.config.get(key, false) + '#' + iteration + '.' + i);
+				}
+				batch.add(values);
+			}
+			next = 0;
+		}
+
+		List<String> nextValues() {
+			return batch.get(next++);
+		}
+	}
+
+	/**
+	 * Parses and resolves all values on every invocation, bypassing all caches. Each iteration
+	 * measures a batch of {@value #COLD_BATCH_SIZE} invocations.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5, batchSize = COLD_BATCH_SIZE)
+	@Measurement(iterations = 10, batchSize = COLD_BATCH_SIZE)
+	public void cold(final ColdState state, final Blackhole bh) {
+		for (String value : state.nextValues()) {
+			bh.consume(config.processPropertyValue(value));
+		}
+	}
+
+	/**
+	 * Resolves all values on every invocation, bypassing the cache of resolved values. Values are
+	 * only parsed once.
+	 */
+	@Benchmark
+	public void uncached(final Blackhole bh) {
+		for (String key : keys) {
+			bh.consume(config.processPropertyValue(config.get(key, false)));
+		}
+	}
+
+	/**
+	 * Looks up all values through {@link Configuration#get(Object)}, which serves cached values.
+	 */
+	@Benchmark
+	public void cached(final Blackhole bh) {
+		for (String key : keys) {
+			bh.consume(config.get(key));
+		}
+	}
+
+	/**
+	 * Changes a key most other values depend on before looking up all values, so dependent values
+	 * have to be resolved again.
+	 */
+	@Benchmark
+	public void invalidated(final Blackhole bh) {
+		config.put("testing.env", "qa");
+		config.put("testing.env", "${env,qa}");
+		for (String key : keys) {
+			bh.consume(config.get(key));
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.data.generator.util.CharacterSet;
+import com.mgmtp.jfunk.data.generator.util.GeneratingExpression;
+
+/**
+ * Measures creating {@link GeneratingExpression} instances and generating values. Since
+ * expressions are parsed only once and shared as templates, {@link #createAndGenerate()} mostly
+ * measures the initialization of the random character pools. Run the benchmark on a revision
+ * before the introduction of templates in order to compare with parsing on every instantiation.
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratingExpressionBenchmark {
+
+	private static final String GOOD_EXP_LATIN_1 = "[^\\x00-\\x1F\\x7F\\x80-\\x9F¤¦¨´¸¼½¾­]";
+	private static final String BAD_EXP_LATIN_1 = "[[^\\x00-\\x1F\\x7F\\x80-\\x9F\\s­][ ]]";
+
+	@Param({ "[A-Z]{3,5}-?[0-9]{3,8}", "(Herr|Frau) [A-Z][a-z]{2,15}", "[a-z0-9._]{1,20}@(example|test)\\.(de|com)" })
+	private String expression;
+
+	private MathRandom random;
+	private CharacterSet characterSet;
+	private GeneratingExpression generatingExpression;
+
+	@Setup
+	public void setUp() throws IOException {
+		random = new MathRandom(42L);
+		characterSet = CharacterSet.createCharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "Latin-1");
+		generatingExpression = new GeneratingExpression(random, expression, characterSet);
+	}
+
+	/**
+	 * Creates a new instance for every value, as done by fields created for each generator.
+	 */
+	@Benchmark
+	public String createAndGenerate() throws IOException {
+		return new GeneratingExpression(random, expression, characterSet).generate(0);
+	}
+
+	/**
+	 * Generates values with a single instance.
+	 */
+	@Benchmark
+	public String generate() {
+		return generatingExpression.generate(0);
+	}
+
+	/**
+	 * Generates values containing forbidden characters with a single instance.
+	 */
+	@Benchmark
+	public String generateBad() {
+		return generatingExpression.generate(-1);
+	}
+}
@@ -33,6 +33,7 @@ import com.google.inject.Provider;
 public class ThreadScope extends BaseScope {
 
 	final ThreadLocal<Map<Key<?>, Object>> scopeCache = new ThreadLocal<Map<Key<?>, Object>>();
+	final ThreadLocal<Map<Key<?>, Object>> inheritedObjects = new ThreadLocal<Map<Key<?>, Object>>();
 
 	@Override
 	public <T> Provider<T> scope(final Key<T> key, final Provider<T> unscoped) {
@@ -66,6 +67,22 @@ public class ThreadScope extends BaseScope {
 		log.debug("Entered scope.");
 	}
 
+	/**
+	 * Enters a new scope context for the current thread which initially contains the specified
+	 * objects. This allows worker threads to share objects of the scope context of the thread which
+	 * started them. The specified objects are not disposed when the scope is exited.
+	 * 
+	 * @param objects
+	 *            the objects to be put into the scope map
+	 * @throws IllegalStateException
+	 *             if there is already a scope context for the current thread
+	 */
+	public void enterScope(final Map<Key<?>, Object> objects) {
+		enterScope();
+		scopeCache.get().putAll(objects);
+		inheritedObjects.set(objects);
+	}
+
 	/**
 	 * Checks whether the scope has been entered, i. e. there is a scope cache for the current
 	 * thread.
@@ -87,6 +104,12 @@ public class ThreadScope extends BaseScope {
 	public void exitScope() {
 		Map<Key<?>, Object> scopeMap = checkNotNull(scopeCache.get(),
 				"No scope map found for the current thread. Forgot to call enterScope()?");
+		Map<Key<?>, Object> inherited = inheritedObjects.get();
+		if (inherited != null) {
+			// inherited objects are disposed by the thread they were created for
+			scopeMap.keySet().removeAll(inherited.keySet());
+			inheritedObjects.remove();
+		}
 		performDisposal(scopeMap);
 		scopeCache.remove();
 		log.debug("Exited scope.");
@@ -53,6 +53,25 @@ public class MathRandom {
 		return SEED_UNIQUIFIER.addAndGet(System.nanoTime());
 	}
 
+	/**
+	 * Derives a seed from a base seed and an index, e. g. for independent random number generators
+	 * of parallel workers. Equal arguments always result in the same seed, while adjacent indices
+	 * result in well distributed seeds.
+	 * 
+	 * @param baseSeed
+	 *            the base seed
+	 * @param index
+	 *            the index, e. g. of the worker or the unit of work
+	 * @return the derived seed
+	 */
+	public static long deriveSeed(final long baseSeed, final long index) {
+		// SplitMix64 finalizer applied to the base seed advanced by the golden gamma
+		long z = baseSeed + (index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+		return z ^ z >>> 31;
+	}
+
 	public long getSeed() {
 		return seed;
 	}
@@ -79,7 +79,7 @@ public class RandomCollection<E> implements Randomizable<E>, Iterable<E> {
 		this.random = random;
 		this.originalElements = Lists.newArrayList(elements);
 		this.priorityElements = Lists.newArrayList(elements);
-		Collections.shuffle(priorityElements);
+		Collections.shuffle(priorityElements, random.getRandom());
 		this.currentElements = Lists.newArrayListWithExpectedSize(2 * elements.size());
 		this.currentElements.addAll(elements);
 	}
@@ -118,7 +118,7 @@ public class RandomCollection<E> implements Randomizable<E>, Iterable<E> {
 	@Override
 	public void reset() {
 		this.priorityElements = Lists.newArrayList(originalElements);
-		Collections.shuffle(priorityElements);
+		Collections.shuffle(priorityElements, random.getRandom());
 		this.currentElements = Lists.newArrayListWithExpectedSize(2 * originalElements.size());
 		this.currentElements.addAll(originalElements);
 	}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.common.random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A random permutation of the numbers from 0 to {@code size - 1}. Unlike shuffling a list, the
+ * permutation is computed on access and needs constant memory regardless of its size. It can thus
+ * be used to draw numbers from large ranges without replacement, i. e. {@code get(0)},
+ * {@code get(1)}, ... return all numbers of the range exactly once in random order.
+ * <p>
+ * The permutation is a balanced Feistel network over the smallest power of four not less than the
+ * size. Results outside of the range are mapped again until they fall into it (cycle walking).
+ * </p>
+ * 
+ */
+public class RandomPermutation {
+
+	/**
+	 * The maximum size of a permutation.
+	 */
+	public static final long MAX_SIZE = 1L << 62;
+
+	private static final int ROUNDS = 4;
+
+	private final long size;
+	private final int halfBits;
+	private final long halfMask;
+	private final long[] keys = new long[ROUNDS];
+
+	/**
+	 * Creates a new permutation.
+	 * 
+	 * @param random
+	 *            the random generator used to create the permutation
+	 * @param size
+	 *            the number of elements
+	 */
+	public RandomPermutation(final MathRandom random, final long size) {
+		checkArgument(size >= 0 && size <= MAX_SIZE, "size must be between 0 and %s", MAX_SIZE);
+		this.size = size;
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(size - 1, 3));
+		this.halfBits = (bits + 1) / 2;
+		this.halfMask = (1L << halfBits) - 1;
+		for (int i = 0; i < ROUNDS; ++i) {
+			keys[i] = random.getRandom().nextLong();
+		}
+	}
+
+	/**
+	 * @return the number of elements
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the element at the specified position of the permutation.
+	 * 
+	 * @param index
+	 *            the position, from 0 to {@code size - 1}
+	 * @return the element at the position
+	 */
+	public long get(final long index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index (" + index + ") must be less than size (" + size + ")");
+		}
+		// cycle walking terminates since index itself is part of the cycle
+		long value = index;
+		do {
+			value = encrypt(value);
+		} while (value >= size);
+		return value;
+	}
+
+	private long encrypt(final long value) {
+		long left = value >>> halfBits;
+		long right = value & halfMask;
+		for (long key : keys) {
+			long next = left ^ mix(right ^ key) & halfMask;
+			left = right;
+			right = next;
+		}
+		return left << halfBits | right;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+		return z ^ z >>> 31;
+	}
+}
@@ -26,6 +26,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +42,12 @@ import javax.annotation.concurrent.NotThreadSafe;
 import org.apache.commons.io.IOUtils;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 import com.mgmtp.jfunk.common.JFunkConstants;
@@ -48,6 +55,13 @@ import com.mgmtp.jfunk.common.exception.JFunkException;
 
 /**
  * {@link ExtendedProperties} subclass adding zip file handling.
+ * <p>
+ * The contents of properties files loaded from the file system are cached process-wide and only
+ * read again if the file's modification time or size changes. Files modified less than
+ * {@value #MODIFICATION_TIME_RESOLUTION} ms before they are read are not cached, since they might be
+ * modified again without changing their modification time. Properties are always applied in the
+ * order of the file.
+ * </p>
  * 
  */
 @NotThreadSafe
@@ -56,11 +70,25 @@ public final class Configuration extends ExtendedProperties {
 	private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\$\\{([^},]+)(?:\\s*,[^}]*)?\\}");
 	private static final long serialVersionUID = 1L;
 	private static final Object STACK_OBJECT = new Object();
+	private static final int MAX_CACHED_FILES = 200;
+
+	/**
+	 * The coarsest resolution of file modification times to be expected, in milliseconds.
+	 */
+	private static final long MODIFICATION_TIME_RESOLUTION = 2000L;
+
+	private static final Cache<String, LoadedFile> LOADED_FILES = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_FILES).build();
 
 	private transient ZipFile zipArchive;
 
 	private final List<String> extraFileProperties = newArrayList();
 
+	/*
+	 * Maps the keys of the placeholders in extra file names to the extra file names containing
+	 * them, so put does not have to check all extra file names.
+	 */
+	private final ListMultimap<String, String> extraFilesByPlaceholderKey = ArrayListMultimap.create();
+
 	private final Charset charset;
 
 	private final Deque<Object> loadingStack = newArrayDeque();
@@ -121,13 +149,12 @@ public final class Configuration extends ExtendedProperties {
 				}
 				is = zipArchive.getInputStream(entry);
 				// keeping preExisting properties is activated with preserveExisting set to true
-				doLoad(is, preserveExisting);
+				doLoad(readProperties(is), preserveExisting);
 			} else {
-				is = ResourceLoader.getConfigInputStream(fileName);
-				logger.info("Loading file '{}'...", fileName);
+				Map<String, String> fileProps = readConfigFile(fileName);
 
 				boolean initiallyEmpty = isEmpty();
-				doLoad(is, preserveExisting);
+				doLoad(fileProps, preserveExisting);
 
 				if (initiallyEmpty) {
 					// If config was emtpy initially, we add system properties, which always override existing properties.
@@ -169,16 +196,53 @@ public final class Configuration extends ExtendedProperties {
 		}
 	}
 
-	private void doLoad(final InputStream is, final boolean preserveExisting) throws IOException {
+	private void doLoad(final Map<String, String> props, final boolean preserveExisting) {
 		if (!isEmpty() && preserveExisting) {
 			Configuration copy = clone();
-			super.load(is, charset.name());
+			putAll(props);
 			putAll(copy);
 		} else {
-			super.load(is, charset.name());
+			putAll(props);
+		}
+	}
+
+	/*
+	 * Reads the properties of a file relative to the config directory. Files found in the file
+	 * system are cached by path and modification time, files from the classpath are always read.
+	 * Recently modified files are not cached, because a further modification within the resolution
+	 * of the modification time would go unnoticed.
+	 */
+	private Map<String, String> readConfigFile(final String fileName) throws IOException {
+		File file = ResourceLoader.getConfigFile(fileName);
+		String cacheKey = file.getAbsolutePath() + '|' + charset.name();
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		LoadedFile loadedFile = file.exists() ? LOADED_FILES.getIfPresent(cacheKey) : null;
+		if (loadedFile != null && loadedFile.lastModified == lastModified && loadedFile.length == length) {
+			logger.info("Loading file '{}' (cached)...", fileName);
+			return loadedFile.properties;
+		}
+
+		InputStream is = ResourceLoader.getConfigInputStream(fileName);
+		try {
+			logger.info("Loading file '{}'...", fileName);
+			Map<String, String> props = readProperties(is);
+			if (file.exists() && System.currentTimeMillis() - lastModified >= MODIFICATION_TIME_RESOLUTION) {
+				LOADED_FILES.put(cacheKey, new LoadedFile(lastModified, length, props));
+			}
+			return props;
+		} finally {
+			IOUtils.closeQuietly(is);
 		}
 	}
 
+	private Map<String, String> readProperties(final InputStream is) throws IOException {
+		OrderedProperties props = new OrderedProperties();
+		props.load(is, charset.name());
+		return ImmutableMap.copyOf(props.orderedProps);
+	}
+
 	/**
 	 * If properties are present which start with {@link JFunkConstants#SYSTEM_PROPERTIES} the
 	 * corresponding values are taken as property files and loaded here.
@@ -194,6 +258,11 @@ public final class Configuration extends ExtendedProperties {
 
 			// we need to keep them separately in order to be able to reload them (see put method)
 			extraFileProperties.addAll(fileKeys);
+			for (String extraFile : fileKeys) {
+				for (Matcher matcher = PLACEHOLDER_PATTERN.matcher(extraFile); matcher.find();) {
+					extraFilesByPlaceholderKey.put(matcher.group(1), extraFile);
+				}
+			}
 
 			// Remove original keys in order to prevent a stack overflow
 			view.clear();
@@ -222,14 +291,11 @@ public final class Configuration extends ExtendedProperties {
 			if (!Strings.isNullOrEmpty(value)) {
 				// reloads extra files if the contains placeholders and
 				// the properties the placeholders refer to are changed
-				// --> temp copy of list in order to avoid ConcurrentModificationException
-				List<String> tmpExtraFileProps = newArrayList(extraFileProperties);
-				for (String extraFile : tmpExtraFileProps) {
-					Matcher matcher = PLACEHOLDER_PATTERN.matcher(extraFile);
-					while (matcher.find()) {
-						if (matcher.group(1).equals(key)) {
-							load(processPropertyValue(extraFile));
-						}
+				Collection<String> extraFiles = extraFilesByPlaceholderKey.get(key);
+				if (!extraFiles.isEmpty()) {
+					// --> temp copy of list in order to avoid ConcurrentModificationException
+					for (String extraFile : ImmutableList.copyOf(extraFiles)) {
+						load(processPropertyValue(extraFile));
 					}
 				}
 			}
@@ -310,6 +376,36 @@ public final class Configuration extends ExtendedProperties {
 		return (Configuration) super.clone();
 	}
 
+	/**
+	 * The properties of a file together with the modification time and size of the file when it
+	 * was read.
+	 */
+	private static final class LoadedFile {
+		final long lastModified;
+		final long length;
+		final Map<String, String> properties;
+
+		LoadedFile(final long lastModified, final long length, final Map<String, String> properties) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.properties = properties;
+		}
+	}
+
+	/**
+	 * Records loaded properties in the order of the file. Properties are not resolved.
+	 */
+	private static final class OrderedProperties extends ExtendedProperties {
+		private static final long serialVersionUID = 1L;
+
+		final Map<String, String> orderedProps = Maps.newLinkedHashMap();
+
+		@Override
+		public String put(final String key, final String value) {
+			return orderedProps.put(key, value);
+		}
+	}
+
 	/**
 	 * @serialData The name of the zip file.
 	 */
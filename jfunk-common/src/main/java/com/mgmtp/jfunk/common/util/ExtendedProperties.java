@@ -19,6 +19,7 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
@@ -27,16 +28,18 @@ import java.io.Writer;
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -44,9 +47,13 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 
 /**
@@ -58,6 +65,10 @@ import com.google.common.collect.Sets;
  * as {@link #size()}, {@link #keySet}, or {@link #entrySet} always consider potential defaults.
  * This in turn, however, means that removal operations also affect defaults (e. g. {@link #clear()}
  * ).
+ * <p>
+ * Clones share their properties with the original instance until either of them is modified, so
+ * taking a snapshot via {@link #clone()} is cheap.
+ * </p>
  * 
  */
 @NotThreadSafe
@@ -67,25 +78,42 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 
 	private static final long serialVersionUID = 1L;
 
-	private static final ThreadLocal<List<String>> TOKEN = new ThreadLocal<List<String>>() {
+	private static final ThreadLocal<Deque<ResolutionFrame>> RESOLUTION_FRAMES = new ThreadLocal<Deque<ResolutionFrame>>() {
 		@Override
-		protected List<String> initialValue() {
-			return Lists.newArrayListWithCapacity(256);
+		protected Deque<ResolutionFrame> initialValue() {
+			return Queues.newArrayDeque();
 		}
 	};
 
 	private Map<String, String> propsMap;
 	private Map<String, String> defaults;
 
+	/*
+	 * True if propsMap may be shared with a clone and must be copied before it is modified. The
+	 * flag is not reset in the other instance when one of them makes its copy, so the other one
+	 * may copy the map once more than necessary.
+	 */
+	private transient boolean propsMapShared;
+
 	private transient Set<String> keySet;
 	private transient Set<Entry<String, String>> entrySet;
 	private transient Collection<String> values;
 
+	/*
+	 * Cache of resolved property values. Each entry remembers the keys looked up during its
+	 * resolution, so a change of a key only invalidates the entries depending on it.
+	 */
+	private transient Map<String, ResolvedValue> resolvedValues;
+	private transient ConcurrentMap<String, Set<String>> dependentKeys;
+	private transient volatile long modCount;
+	private transient volatile long defaultsModCount;
+
 	/**
 	 * Creates an empty instance.
 	 */
 	public ExtendedProperties() {
 		propsMap = new MapMaker().makeMap();
+		initResolutionCache();
 	}
 
 	/**
@@ -121,8 +149,14 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 	 */
 	@Override
 	public void clear() {
-		propsMap.clear();
+		if (propsMapShared) {
+			propsMap = new ConcurrentHashMap<String, String>();
+			propsMapShared = false;
+		} else {
+			propsMap.clear();
+		}
 		defaults = null;
+		invalidateAll();
 	}
 
 	/**
@@ -167,7 +201,10 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 	public String get(final Object key, final boolean process) {
 		String value = propsMap.get(key);
 		if (process) {
-			value = processPropertyValue(value);
+			recordLookup(key, value != null);
+			if (value != null) {
+				value = resolveValue((String) key, value);
+			}
 		}
 		return value == null && defaults != null ? defaults.get(key) : value;
 	}
@@ -212,7 +249,12 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 	 */
 	@Override
 	public String put(final String key, final String value) {
-		return propsMap.put(key, value);
+		copyPropsMapIfShared();
+		String result = propsMap.put(key, value);
+		if (!value.equals(result)) {
+			invalidate(key);
+		}
+		return result;
 	}
 
 	/**
@@ -293,6 +335,7 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 	 */
 	@Override
 	public String remove(final Object key) {
+		copyPropsMapIfShared();
 		String result = propsMap.remove(key);
 		if (defaults != null) {
 			String s = defaults.remove(key);
@@ -300,6 +343,9 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 				result = s;
 			}
 		}
+		if (result != null) {
+			invalidate(key);
+		}
 		return result;
 	}
 
@@ -373,82 +419,156 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 			return null;
 		}
 		// Check if there is anything to do at all...
-		int startIndex = input.indexOf("${");
-		if (startIndex == -1) {
+		if (!PropertyTemplate.containsPlaceholder(input)) {
 			return input;
 		}
-		if (input.indexOf('}', startIndex) == -1) {
-			return input;
+		return PropertyTemplate.compile(input).resolve(this);
+	}
+
+	/**
+	 * Resolves the raw value of the property with the specified key, which must be contained in
+	 * this instance (not in its defaults). Resolved values are cached until the property itself or
+	 * one of the properties it depends on is changed.
+	 */
+	private String resolveValue(final String key, final String rawValue) {
+		if (!PropertyTemplate.containsPlaceholder(rawValue)) {
+			return rawValue;
 		}
-		String prefix;
-		String property;
-		String postfix;
-		// as the first tag has been searched the beginning is tagfree
-		prefix = input.substring(0, startIndex);
-		// Search for a matching brace for the Open tag
-		int openTags = 1;
-		int endIndex = startIndex;
-		while (endIndex < input.length() - 1 && openTags > 0) {
-			endIndex++;
-			if (input.charAt(endIndex) == '}') {
-				openTags--;
-			} else if (input.charAt(endIndex) == '$' && input.charAt(endIndex + 1) == '{') {
-				openTags++;
-			}
+
+		checkDefaultsModCount();
+		ResolvedValue cached = resolvedValues.get(key);
+		if (cached != null && cached.rawValue.equals(rawValue)) {
+			recordDependencies(cached.dependencies, true);
+			return cached.value;
 		}
-		// if the openTag is not matching a closing tag we will return it as is
-		if (openTags > 0) {
-			return prefix + "${" + processPropertyValue(input.substring(startIndex + 2));
-		}
-		// register token to catch infinite loops
-		List<String> tokens = TOKEN.get();
-		if (tokens.contains(input)) {
-			StringBuilder buffer = new StringBuilder(256);
-			for (String s : tokens) {
-				buffer.append(s);
-				buffer.append("-->");
+
+		long modCountBefore = modCount;
+		long defaultsModCountBefore = defaultsModCount;
+
+		Deque<ResolutionFrame> frames = RESOLUTION_FRAMES.get();
+		ResolutionFrame frame = new ResolutionFrame(this);
+		frames.push(frame);
+		String result;
+		try {
+			result = PropertyTemplate.compile(rawValue).resolve(this);
+		} finally {
+			frames.pop();
+		}
+		recordDependencies(frame.dependencies, frame.cacheable);
+
+		// don't cache anything if the properties were modified concurrently
+		if (frame.cacheable && modCountBefore == modCount && defaultsModCountBefore == defaultsModCount) {
+			resolvedValues.put(key, new ResolvedValue(rawValue, result, frame.dependencies));
+			for (String dependency : frame.dependencies) {
+				Set<String> dependents = dependentKeys.get(dependency);
+				if (dependents == null) {
+					dependents = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+					Set<String> existing = dependentKeys.putIfAbsent(dependency, dependents);
+					if (existing != null) {
+						dependents = existing;
+					}
+				}
+				dependents.add(key);
 			}
-			throw new IllegalStateException("The string '" + input
-					+ "' is already being processed; this results in a short circuit: " + buffer);
-		}
-		tokens.add(input);
-		// now the startIndex is at the nun  ${ and endIndex at the associated }, so process the internal
-		// first process that inside of the tags
-		String inner = processPropertyValue(input.substring(startIndex + 2, endIndex));
-		int index = inner.indexOf(',');
-		String key;
-		if (index == -1) {
-			// kein default replacement
-			key = inner;
-		} else {
-			// default replacement
-			key = inner.substring(0, index);
 		}
-		property = null;
-		if (key.length() == 0) {
-			logger.warn("'" + input + "' contains an empty placeholder token ${...} which is not allowed");
-		} else {
-			property = get(key);
+		return result;
+	}
+
+	/*
+	 * Records a key looked up while resolving a value of this instance. If the key is not present
+	 * here and the lookup falls through to defaults whose changes cannot be tracked, the result
+	 * must not be cached.
+	 */
+	private void recordLookup(final Object key, final boolean present) {
+		Deque<ResolutionFrame> frames = RESOLUTION_FRAMES.get();
+		if (frames.isEmpty() || !(key instanceof String)) {
+			return;
+		}
+		boolean cacheable = present || isDefaultsTrackable();
+		for (ResolutionFrame frame : frames) {
+			if (frame.owner == this) {
+				frame.dependencies.add((String) key);
+				frame.cacheable &= cacheable;
+			}
 		}
-		// no value found; default value
-		if (property == null) {
-			if (index == -1) {
-				// kein default inner, so return everything
-				property = "${" + key + "}";
-			} else {
-				property = inner.substring(index + 1);
+	}
+
+	private void recordDependencies(final Set<String> dependencies, final boolean cacheable) {
+		Deque<ResolutionFrame> frames = RESOLUTION_FRAMES.get();
+		for (ResolutionFrame frame : frames) {
+			if (frame.owner == this) {
+				frame.dependencies.addAll(dependencies);
+				frame.cacheable &= cacheable;
 			}
 		}
-		// the string part after the tag still has to be processed
-		postfix = processPropertyValue(input.substring(endIndex + 1));
-		// remove token as this here is done
-		tokens.remove(input);
-		// assemble and return value
-		String result = prefix + property + postfix;
-		logger.debug("Processing property {} to {}", input, result);
+	}
+
+	private boolean isDefaultsTrackable() {
+		if (defaults == null) {
+			return true;
+		}
+		return defaults instanceof ExtendedProperties && ((ExtendedProperties) defaults).isDefaultsTrackable();
+	}
+
+	/*
+	 * Sum of the modification counts of this instance and its defaults chain. Since each
+	 * modification count only increases, any change in the chain changes the sum.
+	 */
+	private long chainModCount() {
+		long result = modCount;
+		if (defaults instanceof ExtendedProperties) {
+			result += ((ExtendedProperties) defaults).chainModCount();
+		}
 		return result;
 	}
 
+	private void checkDefaultsModCount() {
+		if (defaults instanceof ExtendedProperties) {
+			long current = ((ExtendedProperties) defaults).chainModCount();
+			if (current != defaultsModCount) {
+				// we cannot know what changed in the defaults
+				resolvedValues.clear();
+				dependentKeys.clear();
+				defaultsModCount = current;
+			}
+		}
+	}
+
+	private void invalidate(final Object key) {
+		modCount++;
+		resolvedValues.remove(key);
+		Set<String> dependents = dependentKeys.remove(key);
+		if (dependents != null) {
+			// dependencies are recorded transitively, so there is no need to recurse here
+			for (String dependent : dependents) {
+				resolvedValues.remove(dependent);
+			}
+		}
+	}
+
+	private void invalidateAll() {
+		modCount++;
+		resolvedValues.clear();
+		dependentKeys.clear();
+	}
+
+	private void copyPropsMapIfShared() {
+		if (propsMapShared) {
+			propsMap = new ConcurrentHashMap<String, String>(propsMap);
+			propsMapShared = false;
+		}
+	}
+
+	private void initResolutionCache() {
+		resolvedValues = new ConcurrentHashMap<String, ResolvedValue>();
+		dependentKeys = new ConcurrentHashMap<String, Set<String>>();
+	}
+
+	private void readObject(final ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		ois.defaultReadObject();
+		initResolutionCache();
+	}
+
 	@Override
 	public boolean equals(final Object obj) {
 		if (this == obj) {
@@ -675,9 +795,13 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 			clone.keySet = null;
 			clone.entrySet = null;
 			clone.values = null;
-			clone.propsMap = new ConcurrentHashMap<String, String>(propsMap);
+			// the map is copied lazily by the first of both instances that is modified
+			propsMapShared = true;
+			clone.propsMapShared = true;
+			clone.initResolutionCache();
+			clone.defaultsModCount = 0L;
 			if (defaults != null) {
-				// This recursively clones defaults.
+				// This recursively clones defaults, which share their maps as well.
 				if (defaults instanceof ExtendedProperties) {
 					clone.defaults = ((ExtendedProperties) defaults).clone();
 				} else {
@@ -918,7 +1042,8 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 
 		@Override
 		public Iterator<String> iterator() {
-			return new PropertiesIterator<String>(propsMap.keySet(), defaults != null ? defaults.keySet() : null, false);
+			return new PropertiesIterator<String>(ExtendedProperties.this, propsMap.keySet(),
+					defaults != null ? defaults.keySet() : null, false);
 		}
 
 		@Override
@@ -971,7 +1096,8 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 	final class Values extends AbstractCollection<String> {
 		@Override
 		public Iterator<String> iterator() {
-			return new PropertiesIterator<String>(propsMap.values(), defaults != null ? defaults.values() : null, true);
+			return new PropertiesIterator<String>(ExtendedProperties.this, propsMap.values(),
+					defaults != null ? defaults.values() : null, true);
 		}
 
 		@Override
@@ -1014,7 +1140,15 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 		@Override
 		public Iterator<Map.Entry<String, String>> iterator() {
 			Set<Map.Entry<String, String>> defaultsEntrySet = defaults != null ? defaults.entrySet() : null;
-			return new PropertiesIterator<Map.Entry<String, String>>(propsMap.entrySet(), defaultsEntrySet, false);
+			// entries must not write through to the map, which may be shared with a clone
+			Collection<Map.Entry<String, String>> entries = Collections2.transform(propsMap.entrySet(),
+					new Function<Map.Entry<String, String>, Map.Entry<String, String>>() {
+						@Override
+						public Map.Entry<String, String> apply(final Map.Entry<String, String> input) {
+							return new PropertyEntry(input.getKey(), input.getValue());
+						}
+					});
+			return new PropertiesIterator<Map.Entry<String, String>>(ExtendedProperties.this, entries, defaultsEntrySet, false);
 		}
 
 		@Override
@@ -1070,7 +1204,7 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 	/**
 	 * Simple implementation, copied and slightly adapted from java.util.AbstractMap.SimpleEntry.
 	 */
-	static final class SimpleEntry implements Entry<String, String> {
+	static class SimpleEntry implements Entry<String, String> {
 		String key;
 		String value;
 
@@ -1125,17 +1259,39 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 		}
 	}
 
+	/**
+	 * Entry of an {@link ExtendedProperties} instance. Setting the value puts it into the instance.
+	 */
+	final class PropertyEntry extends SimpleEntry {
+
+		PropertyEntry(final String key, final String value) {
+			super(key, value);
+		}
+
+		@Override
+		public String setValue(final String value) {
+			super.setValue(value);
+			return ExtendedProperties.this.put(key, value);
+		}
+	}
+
 	/**
 	 * {@link Iterator} implementation considering a default collection.
 	 */
 	static final class PropertiesIterator<T> implements Iterator<T> {
 
+		private final ExtendedProperties owner;
+		private final Map<String, String> propsMap;
 		private final Iterator<T> iter;
 		private final Iterator<T> defaultsIter;
 		private boolean defaultsMode;
 		private final boolean readonlyIterator;
+		private T last;
 
-		PropertiesIterator(final Collection<T> coll, final Collection<T> defaultsColl, final boolean readonlyIterator) {
+		PropertiesIterator(final ExtendedProperties owner, final Collection<T> coll, final Collection<T> defaultsColl,
+				final boolean readonlyIterator) {
+			this.owner = owner;
+			propsMap = owner.propsMap;
 			iter = coll.iterator();
 			if (defaultsColl != null) {
 				defaultsIter = defaultsColl.iterator();
@@ -1160,11 +1316,13 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 		@Override
 		public T next() {
 			if (iter.hasNext()) {
-				return iter.next();
+				last = iter.next();
+				return last;
 			}
 			if (defaultsIter != null) {
 				defaultsMode = true;
-				return defaultsIter.next();
+				last = defaultsIter.next();
+				return last;
 			}
 			throw new NoSuchElementException();
 		}
@@ -1176,9 +1334,42 @@ public class ExtendedProperties implements Map<String, String>, Serializable, Cl
 			}
 			if (defaultsMode) {
 				defaultsIter.remove();
+			} else if (owner.propsMapShared || owner.propsMap != propsMap) {
+				// the map iterated over is shared with a clone, so the property must be removed from a copy
+				owner.copyPropsMapIfShared();
+				owner.propsMap.remove(last instanceof Map.Entry<?, ?> ? ((Map.Entry<?, ?>) last).getKey() : last);
 			} else {
 				iter.remove();
 			}
+			owner.invalidateAll();
+		}
+	}
+
+	/**
+	 * A resolved property value together with the keys looked up during its resolution.
+	 */
+	static final class ResolvedValue {
+		final String rawValue;
+		final String value;
+		final Set<String> dependencies;
+
+		ResolvedValue(final String rawValue, final String value, final Set<String> dependencies) {
+			this.rawValue = rawValue;
+			this.value = value;
+			this.dependencies = ImmutableSet.copyOf(dependencies);
+		}
+	}
+
+	/**
+	 * Collects the keys looked up while a value of the owning instance is resolved.
+	 */
+	static final class ResolutionFrame {
+		final ExtendedProperties owner;
+		final Set<String> dependencies = Sets.newHashSet();
+		boolean cacheable = true;
+
+		ResolutionFrame(final ExtendedProperties owner) {
+			this.owner = owner;
 		}
 	}
-}
\ No newline at end of file
+}
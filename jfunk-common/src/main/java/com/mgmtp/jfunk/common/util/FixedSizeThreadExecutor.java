@@ -33,7 +33,11 @@ import com.google.common.collect.Lists;
  * {@link ExecutorService} implementation that executes a fixed number of tasks at a time. Each task
  * is executed in a new {@link Thread thread}. Threads are not reused.
  * 
+ * @deprecated Creating a thread per task is expensive for many short tasks. Use a
+ *             {@link java.util.concurrent.ThreadPoolExecutor} with a fixed number of threads
+ *             instead.
  */
+@Deprecated
 public class FixedSizeThreadExecutor extends AbstractExecutorService {
 
 	private enum RunState {
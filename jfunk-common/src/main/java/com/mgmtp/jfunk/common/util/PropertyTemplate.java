@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.common.util;
+
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+
+/**
+ * Pre-parsed form of a property value containing placeholder tokens like <code>${xxx}</code> or
+ * <code>${xxx,yyy}</code>. A value is parsed only once into a sequence of literal and placeholder
+ * segments. Resolving a template just walks these segments. Templates are immutable and shared
+ * process-wide.
+ *
+ * @see ExtendedProperties#processPropertyValue(String)
+ */
+@Immutable
+final class PropertyTemplate {
+
+	private static final int MAX_CACHED_TEMPLATES = 10000;
+
+	private static final LoadingCache<String, PropertyTemplate> TEMPLATES = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHED_TEMPLATES)
+			.build(new CacheLoader<String, PropertyTemplate>() {
+				@Override
+				public PropertyTemplate load(final String input) {
+					return new PropertyTemplate(input);
+				}
+			});
+
+	private static final ThreadLocal<List<String>> TOKEN = new ThreadLocal<List<String>>() {
+		@Override
+		protected List<String> initialValue() {
+			return Lists.newArrayListWithCapacity(256);
+		}
+	};
+
+	private final String source;
+	private final Segment[] segments;
+
+	private PropertyTemplate(final String source) {
+		this.source = source;
+		List<Segment> segmentList = Lists.newArrayList();
+		parse(source, segmentList);
+		this.segments = segmentList.toArray(new Segment[segmentList.size()]);
+	}
+
+	/**
+	 * Checks whether the specified string contains anything that needs to be resolved.
+	 *
+	 * @param input
+	 *            the input string
+	 * @return {@code true} if the input contains at least one complete placeholder token
+	 */
+	static boolean containsPlaceholder(final String input) {
+		int startIndex = input.indexOf("${");
+		return startIndex != -1 && input.indexOf('}', startIndex) != -1;
+	}
+
+	/**
+	 * Returns the compiled template for the specified input. Templates are cached, so repeated
+	 * calls with equal input do not parse the input again.
+	 *
+	 * @param input
+	 *            the input string
+	 * @return the template
+	 */
+	static PropertyTemplate compile(final String input) {
+		return TEMPLATES.getUnchecked(input);
+	}
+
+	/**
+	 * Resolves the template against the specified properties.
+	 *
+	 * @param props
+	 *            the properties placeholder keys are looked up in
+	 * @return the resolved value
+	 */
+	String resolve(final ExtendedProperties props) {
+		// register token to catch infinite loops
+		List<String> tokens = TOKEN.get();
+		if (tokens.contains(source)) {
+			StringBuilder buffer = new StringBuilder(256);
+			for (String s : tokens) {
+				buffer.append(s);
+				buffer.append("-->");
+			}
+			throw new IllegalStateException("The string '" + source
+					+ "' is already being processed; this results in a short circuit: " + buffer);
+		}
+		tokens.add(source);
+		try {
+			StringBuilder sb = new StringBuilder(source.length() + 32);
+			appendTo(sb, props);
+			String result = sb.toString();
+			props.logger.debug("Processing property {} to {}", source, result);
+			return result;
+		} finally {
+			tokens.remove(tokens.size() - 1);
+		}
+	}
+
+	private void appendTo(final StringBuilder sb, final ExtendedProperties props) {
+		for (Segment segment : segments) {
+			segment.appendTo(sb, props);
+		}
+	}
+
+	/*
+	 * Splits the input into segments in the same way ExtendedProperties used to process values
+	 * recursively, i. e. unmatched "${" are kept as literals and nested tokens are parsed into the
+	 * inner template of their placeholder.
+	 */
+	private static void parse(final String input, final List<Segment> segmentList) {
+		String rest = input;
+		while (true) {
+			int startIndex = rest.indexOf("${");
+			if (startIndex == -1 || rest.indexOf('}', startIndex) == -1) {
+				addLiteral(segmentList, rest);
+				return;
+			}
+			addLiteral(segmentList, rest.substring(0, startIndex));
+
+			// Search for a matching brace for the open tag
+			int openTags = 1;
+			int endIndex = startIndex;
+			int length = rest.length();
+			while (endIndex < length - 1 && openTags > 0) {
+				endIndex++;
+				char c = rest.charAt(endIndex);
+				if (c == '}') {
+					openTags--;
+				} else if (c == '$' && endIndex < length - 1 && rest.charAt(endIndex + 1) == '{') {
+					openTags++;
+				}
+			}
+
+			if (openTags > 0) {
+				// if the open tag is not matching a closing tag we keep it as is
+				addLiteral(segmentList, "${");
+				rest = rest.substring(startIndex + 2);
+			} else {
+				segmentList.add(new Placeholder(new PropertyTemplate(rest.substring(startIndex + 2, endIndex))));
+				rest = rest.substring(endIndex + 1);
+			}
+		}
+	}
+
+	private static void addLiteral(final List<Segment> segmentList, final String text) {
+		if (text.length() == 0) {
+			return;
+		}
+		int lastIndex = segmentList.size() - 1;
+		if (lastIndex >= 0 && segmentList.get(lastIndex) instanceof Literal) {
+			Literal last = (Literal) segmentList.get(lastIndex);
+			segmentList.set(lastIndex, new Literal(last.text + text));
+		} else {
+			segmentList.add(new Literal(text));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	private abstract static class Segment {
+		abstract void appendTo(StringBuilder sb, ExtendedProperties props);
+	}
+
+	private static final class Literal extends Segment {
+		private final String text;
+
+		Literal(final String text) {
+			this.text = text;
+		}
+
+		@Override
+		void appendTo(final StringBuilder sb, final ExtendedProperties props) {
+			sb.append(text);
+		}
+	}
+
+	private static final class Placeholder extends Segment {
+		private final PropertyTemplate inner;
+
+		Placeholder(final PropertyTemplate inner) {
+			this.inner = inner;
+		}
+
+		@Override
+		void appendTo(final StringBuilder sb, final ExtendedProperties props) {
+			// first process what is inside of the tags
+			String innerValue;
+			if (inner.segments.length == 1 && inner.segments[0] instanceof Literal) {
+				innerValue = inner.source;
+			} else {
+				StringBuilder innerBuilder = new StringBuilder(inner.source.length() + 16);
+				inner.appendTo(innerBuilder, props);
+				innerValue = innerBuilder.toString();
+			}
+
+			int index = innerValue.indexOf(',');
+			String key = index == -1 ? innerValue : innerValue.substring(0, index);
+			String property = null;
+			if (key.length() == 0) {
+				props.logger.warn("'" + inner.source + "' contains an empty placeholder token ${...} which is not allowed");
+			} else {
+				property = props.get(key);
+			}
+			// no value found; default value
+			if (property == null) {
+				if (index == -1) {
+					sb.append("${").append(key).append('}');
+				} else {
+					sb.append(innerValue, index + 1, innerValue.length());
+				}
+			} else {
+				sb.append(property);
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.common.random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for {@link RandomPermutation}
+ * 
+ */
+public class RandomPermutationTest {
+
+	@Test
+	public void testAllElementsReturnedOnce() {
+		for (int size : new int[] { 1, 2, 3, 26, 1000, 4097 }) {
+			RandomPermutation permutation = new RandomPermutation(new MathRandom(size), size);
+			BitSet seen = new BitSet(size);
+			for (int i = 0; i < size; ++i) {
+				int value = (int) permutation.get(i);
+				assertTrue(value >= 0 && value < size);
+				assertFalse(seen.get(value), "duplicate value " + value);
+				seen.set(value);
+			}
+			assertEquals(seen.cardinality(), size);
+		}
+	}
+
+	@Test
+	public void testSeedDeterminesPermutation() {
+		RandomPermutation permutation1 = new RandomPermutation(new MathRandom(42L), 1L << 40);
+		RandomPermutation permutation2 = new RandomPermutation(new MathRandom(42L), 1L << 40);
+		for (long i = 0; i < 100; ++i) {
+			assertEquals(permutation1.get(i), permutation2.get(i));
+		}
+	}
+
+	@Test(expectedExceptions = IndexOutOfBoundsException.class)
+	public void testIndexOutOfBounds() {
+		new RandomPermutation(new MathRandom(), 10).get(10);
+	}
+}
@@ -17,18 +17,25 @@ package com.mgmtp.jfunk.common.util;
 
 import static org.testng.Assert.assertEquals;
 
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 
 /**
  */
 public class ConfigurationTest {
 
+	private static final String CONFIG_DIR = "src/test/resources";
+
 	@BeforeClass
 	public void setUp() {
-		System.setProperty("config.dir", "src/test/resources");
+		System.setProperty("config.dir", CONFIG_DIR);
 	}
 
 	@Test
@@ -86,4 +93,93 @@ public class ConfigurationTest {
 		assertEquals(config.get("extraProp"), "extra2");
 		assertEquals(config.get("extraExtraProp"), "extraExtra");
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testCachedFileIsReadAgainWhenModified() throws IOException {
+		File dir = Files.createTempDir();
+		try {
+			System.setProperty("config.dir", dir.getPath());
+			File file = new File(dir, "cached.properties");
+			long lastModified = secondsAgo(60);
+
+			writeFile(file, "prop=value1", lastModified);
+			assertEquals(loadConfig("cached.properties").get("prop"), "value1");
+
+			// neither size nor modification time have changed, so the cached properties are used
+			writeFile(file, "prop=value2", lastModified);
+			assertEquals(loadConfig("cached.properties").get("prop"), "value1");
+
+			writeFile(file, "prop=value2", lastModified + 1000L);
+			assertEquals(loadConfig("cached.properties").get("prop"), "value2");
+
+			writeFile(file, "prop=value22", lastModified + 1000L);
+			assertEquals(loadConfig("cached.properties").get("prop"), "value22");
+		} finally {
+			System.setProperty("config.dir", CONFIG_DIR);
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+	@Test
+	public void testRecentlyModifiedFileIsNotCached() throws IOException {
+		File dir = Files.createTempDir();
+		try {
+			System.setProperty("config.dir", dir.getPath());
+			File file = new File(dir, "recent.properties");
+			long lastModified = secondsAgo(0);
+
+			writeFile(file, "prop=value1", lastModified);
+			assertEquals(loadConfig("recent.properties").get("prop"), "value1");
+
+			writeFile(file, "prop=value2", lastModified);
+			assertEquals(loadConfig("recent.properties").get("prop"), "value2");
+		} finally {
+			System.setProperty("config.dir", CONFIG_DIR);
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+	@Test
+	public void testPlaceholderReloadsCachedExtraFile() throws IOException {
+		File dir = Files.createTempDir();
+		try {
+			System.setProperty("config.dir", dir.getPath());
+			long lastModified = secondsAgo(60);
+			writeFile(new File(dir, "main.properties"), "system.properties.extra=extra_${variant,a}.properties", lastModified);
+			writeFile(new File(dir, "extra_a.properties"), "prop=a", lastModified);
+			writeFile(new File(dir, "extra_b.properties"), "prop=b", lastModified);
+
+			Configuration config = loadConfig("main.properties");
+			assertEquals(config.get("prop"), "a");
+
+			config.put("variant", "b");
+			assertEquals(config.get("prop"), "b");
+
+			config.put("variant", "a");
+			assertEquals(config.get("prop"), "a");
+
+			writeFile(new File(dir, "extra_b.properties"), "prop=bb", lastModified);
+			config.put("variant", "b");
+			assertEquals(config.get("prop"), "bb");
+		} finally {
+			System.setProperty("config.dir", CONFIG_DIR);
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+	private static Configuration loadConfig(final String fileName) {
+		Configuration config = new Configuration(Charsets.UTF_8);
+		config.load(fileName);
+		return config;
+	}
+
+	private static long secondsAgo(final int seconds) {
+		// full seconds, so the time can be set on file systems with a coarse resolution
+		return (System.currentTimeMillis() / 1000L - seconds) * 1000L;
+	}
+
+	private static void writeFile(final File file, final String content, final long lastModified) throws IOException {
+		FileUtils.writeStringToFile(file, content, "UTF-8");
+		file.setLastModified(lastModified);
+	}
+}
@@ -23,6 +23,7 @@ import java.io.ObjectOutputStream;
 import java.io.StringReader;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
@@ -31,6 +32,7 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.Maps;
 import com.mgmtp.jfunk.common.util.ExtendedProperties.SimpleEntry;
 
 /**
@@ -112,6 +114,32 @@ public class ExtendedPropertiesTest {
 		assertProps(clone);
 	}
 
+	@Test
+	public void testCloneIsIndependent() {
+		ExtendedProperties clone = props.clone();
+		clone.put("prop2", "changed");
+		clone.remove("moreProp");
+		assertProps(props);
+
+		props.put("prop1", "changed");
+		Assert.assertEquals(clone.get("prop1"), "öäü~@€^°é");
+		Assert.assertEquals(clone.get("prop2"), "changed");
+
+		ExtendedProperties other = props.clone();
+		for (Iterator<Entry<String, String>> it = other.entrySet().iterator(); it.hasNext();) {
+			Entry<String, String> entry = it.next();
+			if (entry.getKey().equals("prop1")) {
+				it.remove();
+			} else if (entry.getKey().equals("prop2")) {
+				entry.setValue("set");
+			}
+		}
+		Assert.assertFalse(other.containsKey("prop1"));
+		Assert.assertEquals(other.get("prop2"), "set");
+		Assert.assertEquals(props.get("prop1"), "changed");
+		Assert.assertEquals(props.get("prop2"), "testtest");
+	}
+
 	@Test
 	public void testFromProperties() {
 		Properties p = new Properties();
@@ -257,6 +285,68 @@ public class ExtendedPropertiesTest {
 		Assert.assertTrue(props.containsValue("more\\Prop"));
 	}
 
+	@Test
+	public void testPlaceholderResolution() {
+		ExtendedProperties defaults = new ExtendedProperties();
+		defaults.put("root", "/base");
+		ExtendedProperties ep = new ExtendedProperties(defaults);
+		ep.put("dir", "${root}/dir");
+		ep.put("file", "${missing,default}-${dir}/file");
+		ep.put("nested", "${key${index,1}}");
+		ep.put("key1", "value1");
+		ep.put("unclosed", "foo${bar");
+
+		Assert.assertEquals(ep.get("file"), "default-/base/dir/file");
+		Assert.assertEquals(ep.get("nested"), "value1");
+		Assert.assertEquals(ep.get("unclosed"), "foo${bar");
+		Assert.assertEquals(ep.get("file", false), "${missing,default}-${dir}/file");
+	}
+
+	@Test
+	public void testResolvedValuesAreInvalidated() {
+		ExtendedProperties defaults = new ExtendedProperties();
+		defaults.put("root", "/base");
+		ExtendedProperties ep = new ExtendedProperties(defaults);
+		ep.put("dir", "${root}/dir");
+		ep.put("file", "${dir}/file");
+		Assert.assertEquals(ep.get("file"), "/base/dir/file");
+
+		ep.put("root", "/changed");
+		Assert.assertEquals(ep.get("file"), "/changed/dir/file");
+
+		ep.remove("root");
+		Assert.assertEquals(ep.get("file"), "${root}/dir/file");
+
+		defaults.put("root", "/defaults");
+		Assert.assertEquals(ep.get("file"), "/defaults/dir/file");
+
+		ep.put("missing", "foo");
+		ep.put("withDefault", "${missing,bar}");
+		Assert.assertEquals(ep.get("withDefault"), "foo");
+		ep.remove("missing");
+		Assert.assertEquals(ep.get("withDefault"), "bar");
+	}
+
+	@Test
+	public void testResolutionWithPlainMapDefaults() {
+		Map<String, String> defaults = Maps.newHashMap();
+		ExtendedProperties ep = new ExtendedProperties(defaults);
+		ep.put("value", "${dataSetKey}!");
+		Assert.assertEquals(ep.get("value"), "${dataSetKey}!");
+
+		// changes of plain map defaults cannot be tracked, so they must be seen nevertheless
+		defaults.put("dataSetKey", "foo");
+		Assert.assertEquals(ep.get("value"), "foo!");
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testCyclicPlaceholders() {
+		ExtendedProperties ep = new ExtendedProperties();
+		ep.put("a", "${b}");
+		ep.put("b", "${a}");
+		ep.get("a");
+	}
+
 	private void assertProps(final ExtendedProperties ep) {
 		Assert.assertEquals(ep.size(), 7);
 		Assert.assertEquals(ep.get("prop1"), "öäü~@€^°é");
@@ -28,7 +28,9 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -47,27 +49,40 @@ import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Module;
+import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.util.Configuration;
-import com.mgmtp.jfunk.common.util.FixedSizeThreadExecutor;
+import com.mgmtp.jfunk.core.config.ArchiveDir;
 import com.mgmtp.jfunk.core.config.JFunkDefaultModule;
 import com.mgmtp.jfunk.core.config.ModulesLoader;
 import com.mgmtp.jfunk.core.event.BeforeRunEvent;
+import com.mgmtp.jfunk.core.scripting.ArchiveWriter;
 import com.mgmtp.jfunk.core.scripting.ScriptExecutor;
 
 /**
  * Class for running a jFunk test. See {@link #main(String[])} for a description of all command line
  * arguments.
+ * <p>
+ * Scripts are executed by a fixed number of reusable threads. Scripts which took longest during
+ * previous runs are started first. Their durations are stored in the file specified by the system
+ * property {@value #SCRIPT_DURATIONS_FILE_PROPERTY} (default: {@value #SCRIPT_DURATIONS_FILE_DEFAULT} in
+ * the archive directory).
+ * </p>
  * 
  */
 public final class JFunk extends JFunkBase {
 
+	public static final String SCRIPT_DURATIONS_FILE_PROPERTY = "jfunk.script.durations.file";
+	public static final String SCRIPT_DURATIONS_FILE_DEFAULT = "script-durations.properties";
+
 	private final List<File> scripts;
 
 	private int threadCount;
 	private final Properties scriptProperties;
 	private final ScriptExecutor scriptExecutor;
+	private final ArchiveWriter archiveWriter;
+	private final Provider<File> archiveDirProvider;
 	private final String name;
 
 	/**
@@ -75,6 +90,10 @@ public final class JFunk extends JFunkBase {
 	 * 
 	 * @param scriptExecutor
 	 *            Used to execute the script.
+	 * @param archiveWriter
+	 *            Writes module archives in the background.
+	 * @param archiveDirProvider
+	 *            Provides the archive directory, which holds the script durations file by default.
 	 * @param threadCount
 	 *            Number of threads to be used. Allows for parallel execution of test scripts.
 	 * @param parallel
@@ -86,11 +105,15 @@ public final class JFunk extends JFunkBase {
 	 *            script properties passed in with {@code -S<key>=<value>}
 	 */
 	@Inject
-	public JFunk(final ScriptExecutor scriptExecutor, final EventBus eventBus, @Assisted final int threadCount,
-			@Assisted final boolean parallel, @Assisted final List<File> scripts, @Assisted final Properties scriptProperties) {
+	public JFunk(final ScriptExecutor scriptExecutor, final ArchiveWriter archiveWriter,
+			@ArchiveDir final Provider<File> archiveDirProvider, final EventBus eventBus,
+			@Assisted final int threadCount, @Assisted final boolean parallel, @Assisted final List<File> scripts,
+			@Assisted final Properties scriptProperties) {
 		super(eventBus);
 
 		this.scriptExecutor = scriptExecutor;
+		this.archiveWriter = archiveWriter;
+		this.archiveDirProvider = archiveDirProvider;
 		this.threadCount = threadCount;
 		this.scriptProperties = scriptProperties;
 
@@ -161,57 +184,78 @@ public final class JFunk extends JFunkBase {
 
 	/**
 	 * Executes the jFunk test. A thread pool ({@link ExecutorService}) is created with the number
-	 * of configured threads, which handles concurrent script execution.
+	 * of configured threads, which handles concurrent script execution. Threads are reused, but
+	 * each script execution gets a new thread name, which is used e. g. for archive directories.
 	 */
 	@Override
 	protected void doExecute() throws Exception {
 		ExecutorService execService = createExecutorService();
+		final ScriptDurations durations = ScriptDurations.load(getScriptDurationsFile());
+		final AtomicInteger scriptNumber = new AtomicInteger(1);
 
-		for (final File script : scripts) {
-			execService.submit(new Runnable() {
-				@Override
-				public void run() {
-					boolean success;
-					StopWatch stopWatch = new StopWatch();
-					stopWatch.start();
-
-					RESULT_LOG.info("Thread " + Thread.currentThread().getName() + ": starting execution of script "
-							+ script.getName());
-
-					try {
-						success = scriptExecutor.executeScript(script, scriptProperties);
-					} catch (Throwable th) {
-						success = false;
-						LOG.error(th.getMessage(), th);
-					}
+		try {
+			for (final File script : durations.sortLongestFirst(scripts)) {
+				execService.submit(new Runnable() {
+					@Override
+					public void run() {
+						Thread.currentThread().setName(StringUtils.leftPad(String.valueOf(scriptNumber.getAndIncrement()), 2, "0"));
+						// don't let an interrupt of a previous script affect this one
+						Thread.interrupted();
 
-					LOG.info("SCRIPT EXECUTION " + (success ? "SUCCESSFUL" : "FAILED") + " (" + script + ")");
+						boolean success;
+						StopWatch stopWatch = new StopWatch();
+						stopWatch.start();
 
-					RESULT_LOG.info("Thread " + Thread.currentThread().getName() + ": finished execution of script "
-							+ script.getName() + " (took "
-							+ stopWatch + " H:mm:ss.SSS)");
+						RESULT_LOG.info("Thread " + Thread.currentThread().getName() + ": starting execution of script "
+								+ script.getName());
 
-				}
-			});
+						try {
+							success = scriptExecutor.executeScript(script, scriptProperties);
+						} catch (Throwable th) {
+							success = false;
+							LOG.error(th.getMessage(), th);
+						}
+
+						LOG.info("SCRIPT EXECUTION " + (success ? "SUCCESSFUL" : "FAILED") + " (" + script + ")");
+
+						stopWatch.stop();
+						durations.record(script, stopWatch.getTime());
+
+						RESULT_LOG.info("Thread " + Thread.currentThread().getName() + ": finished execution of script "
+								+ script.getName() + " (took "
+								+ stopWatch + " H:mm:ss.SSS)");
+
+					}
+				});
+			}
+
+			shutDownExecutorService(execService);
+			durations.save();
+		} finally {
+			// make sure all archives are written before the run ends, even if it failed
+			archiveWriter.flush();
 		}
+	}
 
-		shutDownExecutorService(execService);
+	private File getScriptDurationsFile() {
+		String fileName = System.getProperty(SCRIPT_DURATIONS_FILE_PROPERTY);
+		return fileName != null ? new File(fileName) : new File(archiveDirProvider.get(), SCRIPT_DURATIONS_FILE_DEFAULT);
 	}
 
 	private ExecutorService createExecutorService() {
-		return new FixedSizeThreadExecutor(min(threadCount, scripts.size()), new ThreadFactory() {
-			private final AtomicInteger threadNumber = new AtomicInteger(1);
-
-			@Override
-			public Thread newThread(final Runnable r) {
-				int id = threadNumber.getAndIncrement();
-				String threadName = StringUtils.leftPad(String.valueOf(id), 2, "0");
-				Thread th = new Thread(r);
-				th.setName(threadName);
-				th.setDaemon(false);
-				return th;
-			}
-		});
+		int poolSize = min(threadCount, scripts.size());
+		return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						Thread th = new Thread(r);
+						th.setName("worker-" + threadNumber.getAndIncrement());
+						th.setDaemon(false);
+						return th;
+					}
+				});
 	}
 
 	private void shutDownExecutorService(final ExecutorService execService) {
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Durations of previous script executions. They are used in order to start long-running scripts
+ * first, which shortens the total execution time if scripts are executed in parallel. Durations
+ * are stored in a properties file using the absolute paths of the scripts as keys.
+ * 
+ */
+final class ScriptDurations {
+
+	private static final Logger LOG = Logger.getLogger(ScriptDurations.class);
+
+	private final File file;
+	private final ConcurrentMap<String, Long> durations = Maps.newConcurrentMap();
+
+	private ScriptDurations(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Loads the durations from the specified file. If the file does not exist or cannot be read,
+	 * no durations are known.
+	 * 
+	 * @param file
+	 *            the properties file
+	 * @return the durations
+	 */
+	static ScriptDurations load(final File file) {
+		ScriptDurations result = new ScriptDurations(file);
+		if (!file.exists()) {
+			return result;
+		}
+
+		Properties props = new Properties();
+		InputStream is = null;
+		try {
+			is = new FileInputStream(file);
+			props.load(is);
+		} catch (IOException ex) {
+			LOG.warn("Could not load script durations from " + file, ex);
+		} finally {
+			closeQuietly(is);
+		}
+
+		for (String script : props.stringPropertyNames()) {
+			try {
+				result.durations.put(script, Long.valueOf(props.getProperty(script)));
+			} catch (NumberFormatException ex) {
+				LOG.warn("Ignoring invalid duration for script " + script + ": " + props.getProperty(script));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sorts the specified scripts by their previous durations in descending order. Scripts without
+	 * known duration come first in their original order.
+	 * 
+	 * @param scripts
+	 *            the scripts
+	 * @return a new list containing the sorted scripts
+	 */
+	List<File> sortLongestFirst(final List<File> scripts) {
+		List<File> result = Lists.newArrayList(scripts);
+		// stable sort, so scripts with equal durations keep their order
+		Collections.sort(result, new Comparator<File>() {
+			@Override
+			public int compare(final File f1, final File f2) {
+				long d1 = getDuration(f1);
+				long d2 = getDuration(f2);
+				return d1 < d2 ? 1 : d1 == d2 ? 0 : -1;
+			}
+		});
+		return result;
+	}
+
+	private long getDuration(final File script) {
+		Long duration = durations.get(script.getAbsolutePath());
+		return duration == null ? Long.MAX_VALUE : duration;
+	}
+
+	/**
+	 * Records the duration of a script execution. This method is thread-safe.
+	 * 
+	 * @param script
+	 *            the script
+	 * @param millis
+	 *            the duration in milliseconds
+	 */
+	void record(final File script, final long millis) {
+		durations.put(script.getAbsolutePath(), millis);
+	}
+
+	/**
+	 * Saves the durations to the file they were loaded from.
+	 */
+	void save() {
+		Properties props = new Properties();
+		for (Map.Entry<String, Long> entry : durations.entrySet()) {
+			props.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+
+		OutputStream os = null;
+		try {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			os = new FileOutputStream(file);
+			props.store(os, "Durations of previous script executions in milliseconds");
+		} catch (IOException ex) {
+			LOG.warn("Could not save script durations to " + file, ex);
+		} finally {
+			closeQuietly(os);
+		}
+	}
+}
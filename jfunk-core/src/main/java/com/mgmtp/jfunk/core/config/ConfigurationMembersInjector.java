@@ -31,7 +31,9 @@ import com.google.inject.MembersInjector;
 import com.mgmtp.jfunk.common.util.Configuration;
 
 /**
- * {@link MembersInjector} for injecting configuration values.
+ * {@link MembersInjector} for injecting configuration values. The annotation, the accessibility of
+ * the field, and the conversion for the field's type are resolved once when the injector is created,
+ * so injection only needs to look up the configuration value.
  * 
  * @author rnaegele
  * @param <T>
@@ -39,27 +41,24 @@ import com.mgmtp.jfunk.common.util.Configuration;
  * @see InjectConfig
  */
 public class ConfigurationMembersInjector<T> implements MembersInjector<T> {
-	private final Logger log = LoggerFactory.getLogger(getClass());
+	private static final Logger LOG = LoggerFactory.getLogger(ConfigurationMembersInjector.class);
 
 	private final Field field;
 	private final Provider<Configuration> configurationProvider;
+	private final String configKey;
+	private final String defaultValue;
+	private final boolean hasDefault;
+	private final FieldType fieldType;
 
 	public ConfigurationMembersInjector(final Field field, final Provider<Configuration> configurationProvider) {
 		this.field = field;
 		this.configurationProvider = configurationProvider;
-	}
 
-	@Override
-	public void injectMembers(final T instance) {
 		InjectConfig injectConfigAnnotation = field.getAnnotation(InjectConfig.class);
-
-		String configKey = injectConfigAnnotation.name();
-		String defaultValue = injectConfigAnnotation.defaultValue();
-
-		boolean hasDefault = !defaultValue.equals(InjectConfig.NO_DEFAULT);
-
-		Configuration configuration = configurationProvider.get();
-		boolean containsKey = configuration.containsKey(configKey);
+		this.configKey = injectConfigAnnotation.name();
+		this.defaultValue = injectConfigAnnotation.defaultValue();
+		this.hasDefault = !defaultValue.equals(InjectConfig.NO_DEFAULT);
+		this.fieldType = FieldType.forType(field.getType());
 
 		AccessController.doPrivileged(new PrivilegedAction<Void>() {
 			@Override
@@ -68,60 +67,82 @@ public class ConfigurationMembersInjector<T> implements MembersInjector<T> {
 				return null;
 			}
 		});
+	}
+
+	@Override
+	public void injectMembers(final T instance) {
+		Configuration configuration = configurationProvider.get();
+		boolean containsKey = configuration.containsKey(configKey);
+		if (!containsKey) {
+			checkState(hasDefault, "Key '" + configKey + "' not found in configuration and no default value specified.");
+		}
 
 		try {
-			Class<?> type = field.getType();
-			if (type == Integer.TYPE) {
-				int value;
-				if (containsKey) {
-					value = configuration.getInteger(configKey);
-				} else {
-					checkDefaultValue(configKey, hasDefault);
-					value = Integer.parseInt(defaultValue);
-				}
-				field.setInt(instance, value);
-				logInjection(configKey, value, defaultValue);
-			} else if (type == Boolean.TYPE) {
-				boolean value;
-				if (containsKey) {
-					value = configuration.getBoolean(configKey);
-				} else {
-					checkDefaultValue(configKey, hasDefault);
-					value = Boolean.parseBoolean(defaultValue);
-				}
-				field.setBoolean(instance, value);
-				logInjection(configKey, value, defaultValue);
-			} else if (type == Long.TYPE) {
-				long value;
-				if (containsKey) {
-					value = configuration.getLong(configKey);
-				} else {
-					checkDefaultValue(configKey, hasDefault);
-					value = Long.parseLong(defaultValue);
-				}
-				field.setLong(instance, value);
-				logInjection(configKey, value, defaultValue);
-			} else {
-				String value;
-				if (containsKey) {
-					value = configuration.get(configKey);
-				} else {
-					checkDefaultValue(configKey, hasDefault);
-					value = defaultValue;
-				}
-				field.set(instance, value);
-				logInjection(configKey, value, defaultValue);
+			Object value = fieldType.inject(field, instance, containsKey ? configuration : null, configKey, defaultValue);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Injected config property: name={}, value={}, defaultValue={}", va(configKey, value, defaultValue));
 			}
 		} catch (IllegalAccessException ex) {
 			throw new IllegalStateException("Error injecting configuration item '" + configKey + "'", ex);
 		}
 	}
 
-	private void logInjection(final String configKey, final Object value, final String defaultValue) {
-		log.debug("Injected config property: name={}, value={}, defaultValue={}", va(configKey, value, defaultValue));
-	}
+	/*
+	 * Conversions for the supported field types. The value is taken from the configuration if one is
+	 * passed in, otherwise the default value is converted.
+	 */
+	private enum FieldType {
+		INT {
+			@Override
+			Object inject(final Field field, final Object instance, final Configuration configuration, final String configKey,
+					final String defaultValue) throws IllegalAccessException {
+				int value = configuration != null ? configuration.getInteger(configKey) : Integer.parseInt(defaultValue);
+				field.setInt(instance, value);
+				return value;
+			}
+		},
+		BOOLEAN {
+			@Override
+			Object inject(final Field field, final Object instance, final Configuration configuration, final String configKey,
+					final String defaultValue) throws IllegalAccessException {
+				boolean value = configuration != null ? configuration.getBoolean(configKey) : Boolean.parseBoolean(defaultValue);
+				field.setBoolean(instance, value);
+				return value;
+			}
+		},
+		LONG {
+			@Override
+			Object inject(final Field field, final Object instance, final Configuration configuration, final String configKey,
+					final String defaultValue) throws IllegalAccessException {
+				long value = configuration != null ? configuration.getLong(configKey) : Long.parseLong(defaultValue);
+				field.setLong(instance, value);
+				return value;
+			}
+		},
+		STRING {
+			@Override
+			Object inject(final Field field, final Object instance, final Configuration configuration, final String configKey,
+					final String defaultValue) throws IllegalAccessException {
+				String value = configuration != null ? configuration.get(configKey) : defaultValue;
+				field.set(instance, value);
+				return value;
+			}
+		};
 
-	private void checkDefaultValue(final String configKey, final boolean hasDefault) {
-		checkState(hasDefault, "Key '" + configKey + "' not found in configuration and no default value specified.");
+		abstract Object inject(Field field, Object instance, Configuration configuration, String configKey, String defaultValue)
+				throws IllegalAccessException;
+
+		static FieldType forType(final Class<?> type) {
+			if (type == Integer.TYPE) {
+				return INT;
+			}
+			if (type == Boolean.TYPE) {
+				return BOOLEAN;
+			}
+			if (type == Long.TYPE) {
+				return LONG;
+			}
+			return STRING;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -50,6 +50,7 @@ import com.mgmtp.jfunk.core.data.DataSetAdapter;
 import com.mgmtp.jfunk.core.event.AfterCommandEvent;
 import com.mgmtp.jfunk.core.event.BeforeCommandEvent;
 import com.mgmtp.jfunk.core.event.EventHandlers;
+import com.mgmtp.jfunk.core.event.JFunkEventBus;
 import com.mgmtp.jfunk.core.mail.EmailModule;
 import com.mgmtp.jfunk.core.reporting.ReportData;
 import com.mgmtp.jfunk.core.scripting.BreakIndex;
@@ -172,7 +173,7 @@ public final class JFunkBaseModule extends BaseJFunkGuiceModule {
 	@Provides
 	@Singleton
 	EventBus provideEventBus(@EventHandlers final Set<Object> eventHandlers) {
-		EventBus eventBus = new EventBus();
+		EventBus eventBus = new JFunkEventBus();
 		for (Object eventHandler : eventHandlers) {
 			eventBus.register(eventHandler);
 		}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.event;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an event handler whose events may be delivered asynchronously. Events are passed to the
+ * handler in the order they were posted, one at a time, by a dedicated thread. Event handlers
+ * without this annotation are called on the posting thread.
+ * <p>
+ * Only handlers which neither depend on the posting thread, e. g. via thread or module scoped
+ * objects or the module log, nor on being called before the posting thread continues may be
+ * annotated. Asynchronous handlers must not post events themselves. All pending events are
+ * delivered before {@link JFunkEventBus#post(Object)} returns for an {@link AfterRunEvent}.
+ * </p>
+ * 
+ * @see JFunkEventBus
+ * @since 3.1.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface AsyncEventHandler {
+
+	/**
+	 * The maximum number of events waiting for the handler. The posting thread blocks if the queue
+	 * is full.
+	 */
+	int queueCapacity() default 1000;
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.event;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link EventBus} which dispatches events to each registered event handler separately. Handlers
+ * annotated with {@link AsyncEventHandler} get their events on a dedicated thread through a bounded
+ * queue, so they do not add their latency to the posting thread. All other handlers are called on
+ * the posting thread as with a plain {@link EventBus}.
+ * <p>
+ * The time spent in each handler is recorded and logged after an {@link AfterRunEvent} has been
+ * posted. Posting an {@link AfterRunEvent} also waits until all asynchronous handlers have
+ * processed their pending events (see {@link #flush()}).
+ * </p>
+ * 
+ * @since 3.1.0
+ */
+@ThreadSafe
+public class JFunkEventBus extends EventBus {
+	private static final Logger LOG = LoggerFactory.getLogger(JFunkEventBus.class);
+
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+
+	@Override
+	public void register(final Object object) {
+		Subscriber subscriber = new Subscriber(object);
+		subscribers.add(subscriber);
+		super.register(subscriber);
+	}
+
+	@Override
+	public void unregister(final Object object) {
+		for (Subscriber subscriber : subscribers) {
+			if (subscriber.handler == object) {
+				subscribers.remove(subscriber);
+				super.unregister(subscriber);
+				subscriber.shutdown();
+				return;
+			}
+		}
+		throw new IllegalArgumentException("missing event handler for an annotated method. Is " + object + " registered?");
+	}
+
+	@Override
+	public void post(final Object event) {
+		super.post(event);
+		if (event instanceof AfterRunEvent) {
+			flush();
+			for (Subscriber subscriber : subscribers) {
+				LOG.info("Event handler dispatch: {}", subscriber.getStats());
+			}
+		}
+	}
+
+	/**
+	 * Waits until all events posted so far have been processed by the asynchronous event handlers.
+	 */
+	public void flush() {
+		for (Subscriber subscriber : subscribers) {
+			subscriber.flush();
+		}
+	}
+
+	/**
+	 * @return a snapshot of the dispatch statistics of all registered event handlers in the order
+	 *         of their registration
+	 */
+	public List<Stats> getStats() {
+		List<Stats> result = Lists.newArrayListWithCapacity(subscribers.size());
+		for (Subscriber subscriber : subscribers) {
+			result.add(subscriber.getStats());
+		}
+		return result;
+	}
+
+	/**
+	 * Dispatch statistics of an event handler registered with a {@link JFunkEventBus}.
+	 */
+	public static class Stats {
+		private final String handlerName;
+		private final boolean async;
+		private final long eventCount;
+		private final long totalMicros;
+		private final long maxMicros;
+		private final int pendingCount;
+
+		Stats(final String handlerName, final boolean async, final long eventCount, final long totalMicros, final long maxMicros,
+				final int pendingCount) {
+			this.handlerName = handlerName;
+			this.async = async;
+			this.eventCount = eventCount;
+			this.totalMicros = totalMicros;
+			this.maxMicros = maxMicros;
+			this.pendingCount = pendingCount;
+		}
+
+		/**
+		 * @return the class name of the event handler
+		 */
+		public String getHandlerName() {
+			return handlerName;
+		}
+
+		/**
+		 * @return {@code true} if the handler is called asynchronously
+		 */
+		public boolean isAsync() {
+			return async;
+		}
+
+		/**
+		 * @return the number of events dispatched to the handler
+		 */
+		public long getEventCount() {
+			return eventCount;
+		}
+
+		/**
+		 * @return the total time in microseconds spent in the handler
+		 */
+		public long getTotalMicros() {
+			return totalMicros;
+		}
+
+		/**
+		 * @return the maximum time in microseconds spent in the handler for a single event
+		 */
+		public long getMaxMicros() {
+			return maxMicros;
+		}
+
+		/**
+		 * @return the number of events waiting for an asynchronous handler
+		 */
+		public int getPendingCount() {
+			return pendingCount;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats[handlerName=%s, async=%b, eventCount=%d, totalMicros=%d, maxMicros=%d, pendingCount=%d]",
+					handlerName, async, eventCount, totalMicros, maxMicros, pendingCount);
+		}
+	}
+
+	/*
+	 * Registered with the super class for each event handler. Delivers the events the handler has
+	 * subscribed to through a separate EventBus, which takes care of calling the annotated methods.
+	 */
+	private static final class Subscriber {
+		private final Object handler;
+		private final Set<Class<?>> eventTypes;
+		private final EventBus handlerBus;
+		private final ThreadPoolExecutor executor;
+
+		private final AtomicLong eventCount = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		Subscriber(final Object handler) {
+			this.handler = handler;
+			this.eventTypes = findEventTypes(handler.getClass());
+			this.handlerBus = new EventBus(handler.getClass().getName());
+			this.handlerBus.register(handler);
+
+			AsyncEventHandler async = handler.getClass().getAnnotation(AsyncEventHandler.class);
+			this.executor = async == null ? null : createExecutor(handler.getClass(), async.queueCapacity());
+		}
+
+		@Subscribe
+		@AllowConcurrentEvents
+		public void dispatch(final Object event) {
+			if (!isSubscribed(event)) {
+				return;
+			}
+			if (executor == null) {
+				deliver(event);
+			} else {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						deliver(event);
+					}
+				});
+			}
+		}
+
+		void flush() {
+			if (executor == null) {
+				return;
+			}
+			final CountDownLatch latch = new CountDownLatch(1);
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					latch.countDown();
+				}
+			});
+			try {
+				while (!latch.await(1L, TimeUnit.MINUTES)) {
+					LOG.info("Waiting for event handler {}...", handler.getClass().getName());
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				LOG.warn("Interrupted while waiting for event handler {}", handler.getClass().getName());
+			}
+		}
+
+		void shutdown() {
+			if (executor != null) {
+				flush();
+				executor.shutdown();
+			}
+		}
+
+		Stats getStats() {
+			return new Stats(handler.getClass().getName(), executor != null, eventCount.get(),
+					TimeUnit.NANOSECONDS.toMicros(totalNanos.get()), TimeUnit.NANOSECONDS.toMicros(maxNanos.get()),
+					executor == null ? 0 : executor.getQueue().size());
+		}
+
+		private void deliver(final Object event) {
+			long start = System.nanoTime();
+			handlerBus.post(event);
+			long nanos = System.nanoTime() - start;
+
+			eventCount.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			for (long max = maxNanos.get(); nanos > max && !maxNanos.compareAndSet(max, nanos); max = maxNanos.get()) {
+				// retry
+			}
+		}
+
+		private boolean isSubscribed(final Object event) {
+			for (Class<?> eventType : eventTypes) {
+				if (eventType.isInstance(event)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static Set<Class<?>> findEventTypes(final Class<?> handlerClass) {
+			ImmutableSet.Builder<Class<?>> builder = ImmutableSet.builder();
+			for (Class<?> type : TypeToken.of(handlerClass).getTypes().rawTypes()) {
+				for (Method method : type.getMethods()) {
+					if (method.isAnnotationPresent(Subscribe.class) && method.getParameterTypes().length == 1) {
+						builder.add(method.getParameterTypes()[0]);
+					}
+				}
+			}
+			return builder.build();
+		}
+
+		private static ThreadPoolExecutor createExecutor(final Class<?> handlerClass, final int queueCapacity) {
+			String nameFormat = "event-handler-" + handlerClass.getSimpleName().replace("%", "%%");
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1L, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(
+					queueCapacity), new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build(),
+					new RejectedExecutionHandler() {
+						@Override
+						public void rejectedExecution(final Runnable r, final ThreadPoolExecutor e) {
+							if (e.isShutdown()) {
+								LOG.warn("Event handler {} has been unregistered, event discarded", handlerClass.getName());
+								return;
+							}
+							// block instead of running the task in the caller, which would break the order of the events
+							try {
+								e.getQueue().put(r);
+							} catch (InterruptedException ex) {
+								Thread.currentThread().interrupt();
+								LOG.warn("Interrupted while waiting to dispatch event to {}", handlerClass.getName());
+							}
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		}
+	}
+}
@@ -20,6 +20,8 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.Maps.filterKeys;
 import static com.google.common.collect.Sets.newHashSet;
 import static com.mgmtp.jfunk.common.util.Predicates.contains;
+import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_CACHE_MAX_CHARS;
+import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_CACHE_MAX_MESSAGES;
 import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_DEBUG;
 import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_DELETE_ALL_ON_RESERVATION;
 import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_SLEEP_MILLIS;
@@ -41,10 +43,8 @@ import javax.mail.Session;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.SetMultimap;
-import com.google.common.collect.Table;
 import com.google.inject.PrivateModule;
 import com.google.inject.Provides;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
@@ -92,6 +92,8 @@ public class EmailModule extends BaseJFunkGuiceModule {
 		install(new FactoryModuleBuilder().build(StoreManager.Factory.class));
 		bindEventHandler().to(MailboxPurger.class);
 		bindEventHandler().to(MailAccountReleaser.class);
+		bindEventHandler().to(StoreConnectionPool.class);
+		bindEventHandler().to(MailArrivalWatcher.class);
 	}
 
 	@Provides
@@ -184,7 +186,8 @@ public class EmailModule extends BaseJFunkGuiceModule {
 
 	@Provides
 	@ScriptScoped
-	Table<String, String, MailMessage> provideMailMessageCache() {
-		return HashBasedTable.create();
+	MailMessageCache provideMailMessageCache(final Configuration config) {
+		return new MailMessageCache(config.getInteger(MAIL_CACHE_MAX_MESSAGES, MailMessageCache.DEFAULT_MAX_MESSAGES_PER_ACCOUNT),
+				config.getLong(MAIL_CACHE_MAX_CHARS, MailMessageCache.DEFAULT_MAX_CHARS_PER_ACCOUNT));
 	}
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import java.util.Map;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.google.common.collect.Maps;
+import com.mgmtp.jfunk.common.config.ScriptScoped;
+
+/**
+ * Remembers the highest UID of the messages fetched from a folder by the current script, so
+ * subsequent polls only need to fetch new messages. Messages fetched before are held in the
+ * script's message cache, which has the same scope.
+ * 
+ * @since 3.1.0
+ */
+@ScriptScoped
+@NotThreadSafe
+class FetchedUids {
+
+	private final Map<String, Watermark> watermarks = Maps.newHashMap();
+
+	/**
+	 * Returns the highest UID fetched from the specified folder.
+	 * 
+	 * @param accountId
+	 *            the id of the mail account
+	 * @param folderName
+	 *            the name of the folder
+	 * @param uidValidity
+	 *            the current UIDVALIDITY value of the folder
+	 * @return the highest UID fetched, or {@code 0} if no messages have been fetched or UIDs have
+	 *         been invalidated in the meantime
+	 */
+	long getLastUid(final String accountId, final String folderName, final long uidValidity) {
+		Watermark watermark = watermarks.get(accountId + '/' + folderName);
+		return watermark != null && watermark.uidValidity == uidValidity ? watermark.lastUid : 0L;
+	}
+
+	/**
+	 * Sets the highest UID fetched from the specified folder.
+	 * 
+	 * @param accountId
+	 *            the id of the mail account
+	 * @param folderName
+	 *            the name of the folder
+	 * @param uidValidity
+	 *            the current UIDVALIDITY value of the folder
+	 * @param lastUid
+	 *            the highest UID fetched
+	 */
+	void setLastUid(final String accountId, final String folderName, final long uidValidity, final long lastUid) {
+		watermarks.put(accountId + '/' + folderName, new Watermark(uidValidity, lastUid));
+	}
+
+	private static final class Watermark {
+		private final long uidValidity;
+		private final long lastUid;
+
+		Watermark(final long uidValidity, final long lastUid) {
+			this.uidValidity = uidValidity;
+			this.lastUid = lastUid;
+		}
+	}
+}
@@ -15,21 +15,24 @@
  */
 package com.mgmtp.jfunk.core.mail;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Maps.filterValues;
-import static com.google.common.collect.Maps.newHashMap;
-import static com.google.common.collect.Maps.transformValues;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -40,9 +43,9 @@ import javax.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Function;
-import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.eventbus.EventBus;
 import com.mgmtp.jfunk.common.exception.JFunkException;
@@ -97,6 +100,13 @@ import com.mgmtp.jfunk.common.util.Configuration;
  * A {@link MailAccountReservationEvent} is posted on the {@link EventBus} when an account is newly
  * reserved (and has not already been reserved) by a thread.
  * </p>
+ * <p>
+ * Free accounts are kept in a queue per pool, which is guarded by a fair lock of its own. Thus,
+ * threads reserving accounts from different pools do not contend, and threads waiting for an
+ * account of a pool are served in FIFO order. Released accounts are appended to the queue, so
+ * accounts are used in turn. The time threads have to wait for accounts is available from
+ * {@link #getReservationStats()}.
+ * </p>
  * 
  * @author rnaegele
  * @since 3.1.0
@@ -108,12 +118,18 @@ public class MailAccountManager {
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	private final SetMultimap<String, MailAccount> emailAddressPools;
-	private final MathRandom random;
 	private final String defaultPool;
 
-	private final Map<MailAccount, ThreadReservationKeyWrapper> usedAccounts = newHashMap();
-	private final ReentrantLock lock = new ReentrantLock();
-	private final Condition condition = lock.newCondition();
+	private final Map<String, Pool> pools;
+	private final Map<MailAccount, Pool> accountPools;
+	private final ConcurrentMap<MailAccount, Reservation> usedAccounts = Maps.newConcurrentMap();
+	private final ConcurrentMap<Thread, ConcurrentMap<String, MailAccount>> reservationsByThread = Maps.newConcurrentMap();
+
+	private final AtomicLong reservationCount = new AtomicLong();
+	private final AtomicLong waitingReservationCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
 	private final Provider<EventBus> eventBusProvider;
 	private final Configuration config;
 
@@ -121,10 +137,23 @@ public class MailAccountManager {
 	MailAccountManager(final SetMultimap<String, MailAccount> emailAddressPools, final MathRandom random,
 			final Provider<EventBus> eventBusProvider, final Configuration config) {
 		this.emailAddressPools = emailAddressPools;
-		this.random = random;
 		this.defaultPool = emailAddressPools.keySet().size() == 1 ? getOnlyElement(emailAddressPools.keySet()) : null;
 		this.eventBusProvider = eventBusProvider;
 		this.config = config;
+
+		ImmutableMap.Builder<String, Pool> poolsBuilder = ImmutableMap.builder();
+		Map<MailAccount, Pool> accountPoolsMap = Maps.newHashMap();
+		for (Entry<String, Collection<MailAccount>> entry : emailAddressPools.asMap().entrySet()) {
+			List<MailAccount> accounts = newArrayList(entry.getValue());
+			Collections.shuffle(accounts, random.getRandom());
+			Pool pool = new Pool(entry.getKey(), accounts);
+			poolsBuilder.put(entry.getKey(), pool);
+			for (MailAccount account : accounts) {
+				checkArgument(accountPoolsMap.put(account, pool) == null, "Mail account configured in multiple pools: %s", account);
+			}
+		}
+		this.pools = poolsBuilder.build();
+		this.accountPools = ImmutableMap.copyOf(accountPoolsMap);
 	}
 
 	private MailAccount lookupMailAccount(final String accountId) {
@@ -178,79 +207,40 @@ public class MailAccountManager {
 		}
 
 		String poolKey = pool == null ? defaultPool : pool;
-		List<MailAccount> addressPool = newArrayList(emailAddressPools.get(poolKey));
-		Collections.shuffle(addressPool, random.getRandom());
-
-		return reserveAvailableMailAccount(accountReservationKey, addressPool);
+		return reserveAvailableMailAccount(accountReservationKey, poolKey);
 	}
 
-	private MailAccount reserveAvailableMailAccount(final String accountReservationKey, final List<MailAccount> addressPool) {
+	private MailAccount reserveAvailableMailAccount(final String accountReservationKey, final String poolKey) {
 		checkNotNull(accountReservationKey, "'accountReservationKey' must not be null");
-		checkNotNull(addressPool, "'addressPool' must not be null");
 		checkState(emailAddressPools.keySet().size() > 0, "'addressPool' must not be empty.");
 
-		lock.lock();
-		try {
-			while (true) {
-				String fixedAccountId = config.get("mail." + accountReservationKey + ".accountId");
-
-				MailAccount account = lookupUsedMailAccountForCurrentThread(accountReservationKey);
-				if (!isNullOrEmpty(fixedAccountId)) {
-					if (account != null) {
-						checkState(
-								account.getAccountId().equals(fixedAccountId),
-								"Fixed configured mail account does not match that already reserved (configured=%s, reserved=%s)",
-								fixedAccountId, account.getAccountId());
-					} else {
-						account = lookupMailAccount(fixedAccountId);
-						if (isReserved(account)) {
-							// Already reserved by another thread, so we cannot use it.
-							// Set it to null in order to trigger the wait below.
-							account = null;
-						}
-					}
-				} else {
-					checkState(!addressPool.isEmpty(), "No fixed e-mail account configured and specified pool is empty.");
-					if (account != null) {
-						checkState(addressPool.contains(account),
-								"Account '%s' is already reserved under key: %s", account, accountReservationKey);
-						log.info("Using already reserved e-mail account: {}", account.getAccountId());
-						return account;
-					}
-
-					// Try to find a free account.
-					for (MailAccount acc : addressPool) {
-						ThreadReservationKeyWrapper wrapper = usedAccounts.get(acc);
-						if (wrapper == null) {
-							account = acc;
-							break;
-						}
-					}
-				}
-
-				if (account == null) {
-					// No free account available. We wait and then start over with the loop.
-					log.info("No free e-mail account available. Waiting...");
-					condition.await();
-				} else {
-					// We've found a free account and return it.
-					String accountId = account.getAccountId();
-					log.info("Found free e-mail account: {}", accountId);
-
-					usedAccounts.put(account, new ThreadReservationKeyWrapper(Thread.currentThread(), accountReservationKey));
-
-					// post account reservation
-					eventBusProvider.get().post(new MailAccountReservationEvent(accountReservationKey, account));
+		String fixedAccountId = config.get("mail." + accountReservationKey + ".accountId");
+		MailAccount account = lookupUsedMailAccountForCurrentThread(accountReservationKey);
 
-					return account;
-				}
+		if (!isNullOrEmpty(fixedAccountId)) {
+			if (account != null) {
+				checkState(account.getAccountId().equals(fixedAccountId),
+						"Fixed configured mail account does not match that already reserved (configured=%s, reserved=%s)",
+						fixedAccountId, account.getAccountId());
+				log.info("Using already reserved e-mail account: {}", account.getAccountId());
+				return account;
+			}
+			account = lookupMailAccount(fixedAccountId);
+			accountPools.get(account).reserve(account, accountReservationKey);
+		} else {
+			Pool pool = poolKey != null ? pools.get(poolKey) : null;
+			checkState(pool != null, "No fixed e-mail account configured and specified pool is empty.");
+			if (account != null) {
+				checkState(pool.contains(account), "Account '%s' is already reserved under key: %s", account, accountReservationKey);
+				log.info("Using already reserved e-mail account: {}", account.getAccountId());
+				return account;
 			}
-		} catch (InterruptedException ex) {
-			Thread.currentThread().interrupt();
-			throw new JFunkException(ex.getMessage(), ex);
-		} finally {
-			lock.unlock();
+			account = pool.reserve(null, accountReservationKey);
 		}
+
+		// post account reservation
+		eventBusProvider.get().post(new MailAccountReservationEvent(accountReservationKey, account));
+		return account;
 	}
 
 	/**
@@ -261,23 +251,8 @@ public class MailAccountManager {
 	 * @return the reserved account, or {@code null} if none is found
 	 */
 	public MailAccount lookupUsedMailAccountForCurrentThread(final String accountReservationKey) {
-		lock.lock();
-		try {
-			Map<MailAccount, ThreadReservationKeyWrapper> usedAccountsForThread = filterValues(usedAccounts,
-					new CurrentThreadWrapperPredicate());
-
-			if (!usedAccountsForThread.isEmpty()) {
-				for (Entry<MailAccount, ThreadReservationKeyWrapper> entry : usedAccountsForThread.entrySet()) {
-					if (entry.getValue().accountReservationKey.equals(accountReservationKey)) {
-						return entry.getKey();
-					}
-				}
-			}
-
-			return null;
-		} finally {
-			lock.unlock();
-		}
+		Map<String, MailAccount> reservations = reservationsByThread.get(Thread.currentThread());
+		return reservations != null ? reservations.get(accountReservationKey) : null;
 	}
 
 	/**
@@ -295,14 +270,8 @@ public class MailAccountManager {
 	 * @return the set of reserved mail accounts
 	 */
 	public Set<MailAccount> getReservedMailAccountsForCurrentThread() {
-		lock.lock();
-		try {
-			Map<MailAccount, ThreadReservationKeyWrapper> accountsForThread = filterValues(usedAccounts,
-					new CurrentThreadWrapperPredicate());
-			return ImmutableSet.copyOf(accountsForThread.keySet());
-		} finally {
-			lock.unlock();
-		}
+		Map<String, MailAccount> reservations = reservationsByThread.get(Thread.currentThread());
+		return reservations != null ? ImmutableSet.copyOf(reservations.values()) : ImmutableSet.<MailAccount>of();
 	}
 
 	/**
@@ -311,32 +280,22 @@ public class MailAccountManager {
 	 * @return the set of reservation keys
 	 */
 	public Set<String> getRegisteredAccountReservationKeysForCurrentThread() {
-		lock.lock();
-		try {
-			Map<MailAccount, String> accountsForThread = transformValues(filterValues(usedAccounts,
-					new CurrentThreadWrapperPredicate()),
-					new Function<ThreadReservationKeyWrapper, String>() {
-						@Override
-						public String apply(final ThreadReservationKeyWrapper input) {
-							return input.accountReservationKey;
-						}
-					}
-					);
+		Map<String, MailAccount> reservations = reservationsByThread.get(Thread.currentThread());
+		return reservations != null ? ImmutableSet.copyOf(reservations.keySet()) : ImmutableSet.<String>of();
+	}
 
-			return ImmutableSet.copyOf(accountsForThread.values());
-		} finally {
-			lock.unlock();
-		}
+	/**
+	 * @return statistics on the time threads had to wait for mail accounts
+	 */
+	public ReservationStats getReservationStats() {
+		return new ReservationStats(reservationCount.get(), waitingReservationCount.get(),
+				TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
 	}
 
 	void releaseAllMailAccounts() {
 		log.info("Releasing all mail accounts...");
-		lock.lock();
-		try {
-			usedAccounts.clear();
-			condition.signalAll();
-		} finally {
-			lock.unlock();
+		for (MailAccount account : ImmutableSet.copyOf(usedAccounts.keySet())) {
+			release(account);
 		}
 	}
 
@@ -346,17 +305,8 @@ public class MailAccountManager {
 	 */
 	public void releaseAllMailAccountsForThread() {
 		log.info("Releasing all mail accounts for the current thread...");
-		lock.lock();
-		try {
-			for (Iterator<Entry<MailAccount, ThreadReservationKeyWrapper>> it = usedAccounts.entrySet().iterator(); it.hasNext();) {
-				ThreadReservationKeyWrapper wrapper = it.next().getValue();
-				if (wrapper.thread == Thread.currentThread()) {
-					it.remove();
-				}
-			}
-			condition.signalAll();
-		} finally {
-			lock.unlock();
+		for (MailAccount account : getReservedMailAccountsForCurrentThread()) {
+			release(account);
 		}
 	}
 
@@ -368,21 +318,18 @@ public class MailAccountManager {
 	 *            the account to release
 	 */
 	public void releaseMailAccountForThread(final MailAccount account) {
-		log.info("Releasing mail account for the current thread: %s", account);
-		lock.lock();
-		try {
-			ThreadReservationKeyWrapper wrapper = usedAccounts.get(account);
-			if (wrapper != null) {
-				if (wrapper.thread == Thread.currentThread()) {
-					log.debug("Releasing mail account: {}", account);
-					usedAccounts.remove(account);
-					condition.signalAll();
-				} else {
-					log.warn("Cannot release a mail account reserved by a different thread: {}", account);
-				}
+		log.info("Releasing mail account for the current thread: {}", account);
+		if (account == null) {
+			return;
+		}
+		Reservation reservation = usedAccounts.get(account);
+		if (reservation != null) {
+			if (reservation.thread == Thread.currentThread()) {
+				log.debug("Releasing mail account: {}", account);
+				release(account);
+			} else {
+				log.warn("Cannot release a mail account reserved by a different thread: {}", account);
 			}
-		} finally {
-			lock.unlock();
 		}
 	}
 
@@ -395,27 +342,210 @@ public class MailAccountManager {
 	 *            the reservation key
 	 */
 	public void releaseMailAccountForThread(final String accountReservationKey) {
-		lock.lock();
-		try {
-			MailAccount mailAccount = lookupUsedMailAccountForCurrentThread(accountReservationKey);
-			releaseMailAccountForThread(mailAccount);
-		} finally {
-			lock.unlock();
+		MailAccount mailAccount = lookupUsedMailAccountForCurrentThread(accountReservationKey);
+		releaseMailAccountForThread(mailAccount);
+	}
+
+	private void release(final MailAccount account) {
+		Pool pool = accountPools.get(account);
+		if (pool != null) {
+			pool.release(account);
+		}
+	}
+
+	private void recordWait(final long waitNanos) {
+		reservationCount.incrementAndGet();
+		if (waitNanos > 0L) {
+			waitingReservationCount.incrementAndGet();
+			totalWaitNanos.addAndGet(waitNanos);
+			for (long max = maxWaitNanos.get(); waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos); max = maxWaitNanos.get()) {
+				// retry
+			}
 		}
 	}
 
-	static class CurrentThreadWrapperPredicate implements Predicate<ThreadReservationKeyWrapper> {
+	/**
+	 * The free accounts of a pool. All reservations and releases of accounts of a pool happen
+	 * while holding the pool's lock.
+	 */
+	private final class Pool {
+		private final String name;
+		private final Set<MailAccount> accounts;
+		private final LinkedHashSet<MailAccount> freeAccounts;
+		private final ReentrantLock lock = new ReentrantLock(true);
+
+		/**
+		 * Signalled once for each account returned to the pool.
+		 */
+		private final Condition accountReleased = lock.newCondition();
+
+		/**
+		 * Signalled for all waiters whenever an account is returned to the pool, because threads
+		 * waiting for a fixed configured account can only use this very account.
+		 */
+		private final Condition fixedAccountReleased = lock.newCondition();
+
+		Pool(final String name, final List<MailAccount> accounts) {
+			this.name = name;
+			this.accounts = ImmutableSet.copyOf(accounts);
+			this.freeAccounts = new LinkedHashSet<MailAccount>(accounts);
+		}
+
+		boolean contains(final MailAccount account) {
+			return accounts.contains(account);
+		}
+
+		/**
+		 * Reserves a mail account for the current thread, waiting until one is available.
+		 * 
+		 * @param fixedAccount
+		 *            the account to reserve, or {@code null} for any free account of the pool
+		 * @param accountReservationKey
+		 *            the reservation key
+		 * @return the reserved account
+		 */
+		MailAccount reserve(final MailAccount fixedAccount, final String accountReservationKey) {
+			long start = 0L;
+			lock.lock();
+			try {
+				while (true) {
+					MailAccount account = null;
+					if (fixedAccount == null) {
+						Iterator<MailAccount> it = freeAccounts.iterator();
+						if (it.hasNext()) {
+							account = it.next();
+							it.remove();
+						}
+					} else if (freeAccounts.remove(fixedAccount)) {
+						account = fixedAccount;
+					}
+
+					if (account != null) {
+						Thread thread = Thread.currentThread();
+						usedAccounts.put(account, new Reservation(thread, accountReservationKey));
+						ConcurrentMap<String, MailAccount> reservations = reservationsByThread.get(thread);
+						if (reservations == null) {
+							reservations = Maps.newConcurrentMap();
+							reservationsByThread.put(thread, reservations);
+						}
+						reservations.put(accountReservationKey, account);
+
+						long waitNanos = start != 0L ? System.nanoTime() - start : 0L;
+						recordWait(waitNanos);
+						log.info("Found free e-mail account: {} (waited {} ms)", account.getAccountId(),
+								TimeUnit.NANOSECONDS.toMillis(waitNanos));
+						return account;
+					}
+
+					// No free account available. We wait and then start over with the loop.
+					if (start == 0L) {
+						start = System.nanoTime();
+					}
+					log.info("No free e-mail account available in pool '{}'. Waiting...", name);
+					if (fixedAccount == null) {
+						awaitSignal(accountReleased);
+					} else {
+						fixedAccountReleased.await();
+					}
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new JFunkException(ex.getMessage(), ex);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void awaitSignal(final Condition condition) throws InterruptedException {
+			try {
+				condition.await();
+			} catch (InterruptedException ex) {
+				// pass on a signal this thread may have consumed
+				condition.signal();
+				throw ex;
+			}
+		}
+
+		void release(final MailAccount account) {
+			lock.lock();
+			try {
+				Reservation reservation = usedAccounts.remove(account);
+				if (reservation == null) {
+					return;
+				}
+				Map<String, MailAccount> reservations = reservationsByThread.get(reservation.thread);
+				if (reservations != null) {
+					reservations.remove(reservation.accountReservationKey);
+					if (reservations.isEmpty()) {
+						reservationsByThread.remove(reservation.thread);
+					}
+				}
+				freeAccounts.add(account);
+				accountReleased.signal();
+				fixedAccountReleased.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Statistics on the time threads had to wait for mail accounts.
+	 */
+	public static class ReservationStats {
+		private final long reservationCount;
+		private final long waitingReservationCount;
+		private final long totalWaitMillis;
+		private final long maxWaitMillis;
+
+		ReservationStats(final long reservationCount, final long waitingReservationCount, final long totalWaitMillis,
+				final long maxWaitMillis) {
+			this.reservationCount = reservationCount;
+			this.waitingReservationCount = waitingReservationCount;
+			this.totalWaitMillis = totalWaitMillis;
+			this.maxWaitMillis = maxWaitMillis;
+		}
+
+		/**
+		 * @return the number of accounts newly reserved
+		 */
+		public long getReservationCount() {
+			return reservationCount;
+		}
+
+		/**
+		 * @return the number of reservations which had to wait for a free account
+		 */
+		public long getWaitingReservationCount() {
+			return waitingReservationCount;
+		}
+
+		/**
+		 * @return the total time in milliseconds threads waited for free accounts
+		 */
+		public long getTotalWaitMillis() {
+			return totalWaitMillis;
+		}
+
+		/**
+		 * @return the maximum time in milliseconds a thread waited for a free account
+		 */
+		public long getMaxWaitMillis() {
+			return maxWaitMillis;
+		}
+
 		@Override
-		public boolean apply(final ThreadReservationKeyWrapper input) {
-			return input.thread == Thread.currentThread();
+		public String toString() {
+			return String.format("ReservationStats[reservationCount=%d, waitingReservationCount=%d, totalWaitMillis=%d, maxWaitMillis=%d]",
+					reservationCount, waitingReservationCount, totalWaitMillis, maxWaitMillis);
 		}
 	}
 
-	static class ThreadReservationKeyWrapper {
+	static class Reservation {
 		private final Thread thread;
 		private final String accountReservationKey;
 
-		ThreadReservationKeyWrapper(final Thread thread, final String accountReservationKey) {
+		Reservation(final Thread thread, final String accountReservationKey) {
 			this.thread = checkNotNull(thread);
 			this.accountReservationKey = checkNotNull(accountReservationKey);
 		}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+import com.mgmtp.jfunk.core.exception.MailException;
+import com.sun.mail.imap.IMAPFolder;
+
+/**
+ * Notifies threads waiting for e-mails when new messages arrive, so they need not sleep for a
+ * fixed interval between polls. For IMAP(S) accounts, one background thread per account and folder
+ * keeps a connection in IDLE state while at least one thread is waiting for messages of this
+ * account. The server reports new messages on this connection immediately.
+ * <p>
+ * If IDLE is not available, e. g. for POP3 accounts or servers not supporting it, waiting threads
+ * simply sleep for the specified time and thus fall back to polling.
+ * </p>
+ * 
+ * @since 3.1.0
+ */
+@Singleton
+public class MailArrivalWatcher {
+
+	private static final int MAX_STOP_ATTEMPTS = 10;
+	private static final long STOP_JOIN_MILLIS = 100L;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final StoreConnectionPool connectionPool;
+
+	// guarded by this
+	private final Map<String, Idler> idlers = Maps.newHashMap();
+
+	@Inject
+	MailArrivalWatcher(final StoreConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	/**
+	 * Starts watching the specified folder for new messages. The returned watch must be closed
+	 * after use.
+	 * 
+	 * @param mailAccount
+	 *            the mail account
+	 * @param sessionProperties
+	 *            the properties for the mail session
+	 * @param folderName
+	 *            the name of the folder
+	 * @return the watch
+	 */
+	Watch watch(final MailAccount mailAccount, final Properties sessionProperties, final String folderName) {
+		if (!StoreConnectionPool.isImap(sessionProperties)) {
+			return new Watch(null);
+		}
+
+		String key = mailAccount.getAccountId() + '/' + folderName;
+		synchronized (this) {
+			Idler idler = idlers.get(key);
+			if (idler == null) {
+				idler = new Idler(key, mailAccount, sessionProperties, folderName);
+				idlers.put(key, idler);
+				idler.start();
+			}
+			idler.users++;
+			return new Watch(idler);
+		}
+	}
+
+	private void unwatch(final Idler idler) {
+		synchronized (this) {
+			if (--idler.users > 0) {
+				return;
+			}
+			idlers.remove(idler.key);
+		}
+		idler.stop();
+	}
+
+	/**
+	 * Stops all background threads.
+	 */
+	public void stopAll() {
+		List<Idler> stopped;
+		synchronized (this) {
+			stopped = Lists.newArrayList(idlers.values());
+			idlers.clear();
+		}
+		for (Idler idler : stopped) {
+			idler.stop();
+		}
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		stopAll();
+	}
+
+	/**
+	 * A thread's handle for waiting for new messages.
+	 */
+	final class Watch {
+		private final Idler idler;
+		private long seenNotifications;
+		private boolean closed;
+
+		Watch(final Idler idler) {
+			this.idler = idler;
+			this.seenNotifications = idler != null ? idler.getNotifications() : 0L;
+		}
+
+		/**
+		 * Waits until the server reports changes to the folder since the last call of this method
+		 * or until the specified time has elapsed. If IDLE is not available, this method always
+		 * waits for the specified time.
+		 * 
+		 * @param timeoutMillis
+		 *            the maximum time to wait in milliseconds
+		 * @return {@code true} if the server reported changes, {@code false} if the time elapsed
+		 */
+		boolean await(final long timeoutMillis) throws InterruptedException {
+			if (idler == null) {
+				Thread.sleep(timeoutMillis);
+				return false;
+			}
+			boolean notified = idler.awaitNotification(seenNotifications, timeoutMillis);
+			seenNotifications = idler.getNotifications();
+			return notified;
+		}
+
+		/**
+		 * Stops watching. The background thread is stopped when no other thread is watching the
+		 * folder.
+		 */
+		void close() {
+			if (idler != null && !closed) {
+				closed = true;
+				unwatch(idler);
+			}
+		}
+	}
+
+	private final class Idler implements Runnable {
+		private final String key;
+		private final MailAccount mailAccount;
+		private final Properties sessionProperties;
+		private final String folderName;
+		private final Thread thread;
+
+		// guarded by MailArrivalWatcher.this
+		private int users;
+
+		// guarded by this
+		private long notifications;
+		private Folder folder;
+
+		private volatile boolean stopped;
+
+		Idler(final String key, final MailAccount mailAccount, final Properties sessionProperties, final String folderName) {
+			this.key = key;
+			this.mailAccount = mailAccount;
+			this.sessionProperties = sessionProperties;
+			this.folderName = folderName;
+			this.thread = new Thread(this, "mail-idle-" + key);
+			this.thread.setDaemon(true);
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			StoreConnectionPool.Connection connection;
+			try {
+				connection = connectionPool.borrow(mailAccount, sessionProperties, folderName);
+			} catch (MailException ex) {
+				log.warn("Could not connect for IDLE, falling back to polling: {}", ex.getMessage());
+				return;
+			}
+
+			boolean reusable = false;
+			try {
+				if (!(connection.getFolder() instanceof IMAPFolder)) {
+					log.info("IDLE not supported for account {}, falling back to polling", mailAccount.getAccountId());
+					reusable = true;
+					return;
+				}
+				IMAPFolder imapFolder = (IMAPFolder) connection.getFolder();
+				setFolder(imapFolder);
+				log.debug("Waiting for new e-mails for account {} using IDLE", mailAccount.getAccountId());
+				while (!stopped) {
+					// returns as soon as the server reports any changes
+					imapFolder.idle(true);
+					signal();
+				}
+				reusable = true;
+			} catch (MessagingException ex) {
+				if (!stopped) {
+					log.warn("IDLE failed for account {}, falling back to polling: {}", mailAccount.getAccountId(), ex.getMessage());
+				}
+			} finally {
+				setFolder(null);
+				connectionPool.release(connection, reusable);
+			}
+		}
+
+		void stop() {
+			stopped = true;
+			try {
+				for (int i = 0; thread.isAlive() && i < MAX_STOP_ATTEMPTS; ++i) {
+					abortIdle();
+					thread.join(STOP_JOIN_MILLIS);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			if (thread.isAlive()) {
+				log.warn("IDLE thread for account {} did not stop", mailAccount.getAccountId());
+			}
+		}
+
+		private void abortIdle() {
+			Folder idleFolder;
+			synchronized (this) {
+				idleFolder = folder;
+			}
+			if (idleFolder != null) {
+				try {
+					// any command issued by another thread terminates IDLE
+					idleFolder.getMessageCount();
+				} catch (MessagingException ex) {
+					log.debug("Error terminating IDLE: {}", ex.getMessage());
+				} catch (IllegalStateException ex) {
+					// folder already closed
+				}
+			}
+		}
+
+		private synchronized void setFolder(final Folder idleFolder) {
+			this.folder = idleFolder;
+		}
+
+		private synchronized void signal() {
+			notifications++;
+			notifyAll();
+		}
+
+		synchronized long getNotifications() {
+			return notifications;
+		}
+
+		synchronized boolean awaitNotification(final long seenNotifications, final long timeoutMillis)
+				throws InterruptedException {
+			long end = System.currentTimeMillis() + timeoutMillis;
+			while (notifications == seenNotifications) {
+				long remaining = end - System.currentTimeMillis();
+				if (remaining <= 0L) {
+					return false;
+				}
+				wait(remaining);
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Iterables.getOnlyElement;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+/**
+ * Caches fetched e-mail messages per mail account until a condition matches them. Messages are
+ * stored by their {@code Message-ID}.
+ * <p>
+ * Conditions created by {@link MessagePredicates#forHeader(String, String)} and
+ * {@link MessagePredicates#forSubjectAndHeaders(java.util.regex.Pattern, String, String)} are
+ * evaluated against an index of the respective header, which is built when a header is queried
+ * for the first time. Other conditions are applied to all cached messages of the account.
+ * </p>
+ * <p>
+ * The number of messages and the total size of their texts and headers are limited per account.
+ * If a limit is exceeded, the oldest messages are evicted. The message added last is never
+ * evicted.
+ * </p>
+ * 
+ * @since 3.1.0
+ */
+@NotThreadSafe
+public class MailMessageCache {
+
+	public static final int DEFAULT_MAX_MESSAGES_PER_ACCOUNT = 1000;
+	public static final long DEFAULT_MAX_CHARS_PER_ACCOUNT = 16L * 1024L * 1024L;
+
+	private static final String MESSAGE_ID = "Message-ID";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final int maxMessagesPerAccount;
+	private final long maxCharsPerAccount;
+	private final Map<String, AccountCache> accountCaches = Maps.newHashMap();
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	public MailMessageCache() {
+		this(DEFAULT_MAX_MESSAGES_PER_ACCOUNT, DEFAULT_MAX_CHARS_PER_ACCOUNT);
+	}
+
+	/**
+	 * @param maxMessagesPerAccount
+	 *            the maximum number of messages cached per mail account
+	 * @param maxCharsPerAccount
+	 *            the maximum total number of characters of texts and headers cached per mail
+	 *            account
+	 */
+	public MailMessageCache(final int maxMessagesPerAccount, final long maxCharsPerAccount) {
+		checkArgument(maxMessagesPerAccount > 0, "maxMessagesPerAccount must be positive");
+		checkArgument(maxCharsPerAccount > 0L, "maxCharsPerAccount must be positive");
+		this.maxMessagesPerAccount = maxMessagesPerAccount;
+		this.maxCharsPerAccount = maxCharsPerAccount;
+	}
+
+	/**
+	 * Adds a message to the cache. A message with the same {@code Message-ID} is replaced.
+	 * 
+	 * @param accountId
+	 *            the id of the mail account the message was fetched from
+	 * @param message
+	 *            the message
+	 */
+	public void put(final String accountId, final MailMessage message) {
+		String messageId = getOnlyElement(message.getHeaders().get(MESSAGE_ID));
+		AccountCache accountCache = accountCaches.get(accountId);
+		if (accountCache == null) {
+			accountCache = new AccountCache();
+			accountCaches.put(accountId, accountCache);
+		}
+		accountCache.put(messageId, message);
+	}
+
+	/**
+	 * Removes all messages of the specified mail account matching the specified condition from
+	 * the cache.
+	 * 
+	 * @param accountId
+	 *            the id of the mail account
+	 * @param condition
+	 *            the condition
+	 * @return the removed messages in the order they were added
+	 */
+	public List<MailMessage> removeMatching(final String accountId, final Predicate<MailMessage> condition) {
+		AccountCache accountCache = accountCaches.get(accountId);
+		List<MailMessage> result = accountCache != null
+				? accountCache.removeMatching(condition)
+				: ImmutableList.<MailMessage>of();
+		if (result.isEmpty()) {
+			missCount++;
+		} else {
+			hitCount++;
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all messages of the specified mail account from the cache.
+	 * 
+	 * @param accountId
+	 *            the id of the mail account
+	 */
+	public void clear(final String accountId) {
+		accountCaches.remove(accountId);
+	}
+
+	/**
+	 * @param accountId
+	 *            the id of the mail account
+	 * @return the number of messages cached for the specified mail account
+	 */
+	public int size(final String accountId) {
+		AccountCache accountCache = accountCaches.get(accountId);
+		return accountCache != null ? accountCache.messages.size() : 0;
+	}
+
+	/**
+	 * Returns statistics of this cache. A lookup of a condition counts as hit if at least one
+	 * cached message matched.
+	 * 
+	 * @return the statistics
+	 */
+	public CacheStats stats() {
+		return new CacheStats(hitCount, missCount, 0L, 0L, 0L, evictionCount);
+	}
+
+	private static long weigh(final MailMessage message) {
+		long weight = message.getText() != null ? message.getText().length() : 0L;
+		for (Entry<String, String> header : message.getHeaders().entries()) {
+			weight += header.getKey().length() + (header.getValue() != null ? header.getValue().length() : 0);
+		}
+		return weight;
+	}
+
+	private final class AccountCache {
+		private final LinkedHashMap<String, MailMessage> messages = new LinkedHashMap<String, MailMessage>();
+
+		// header name -> header value -> message ids
+		private final Map<String, SetMultimap<String, String>> headerIndexes = Maps.newHashMap();
+
+		private long totalChars;
+
+		void put(final String messageId, final MailMessage message) {
+			remove(messageId);
+			messages.put(messageId, message);
+			totalChars += weigh(message);
+			for (Entry<String, SetMultimap<String, String>> entry : headerIndexes.entrySet()) {
+				for (String value : message.getHeaders().get(entry.getKey())) {
+					entry.getValue().put(value, messageId);
+				}
+			}
+
+			while (messages.size() > 1 && (messages.size() > maxMessagesPerAccount || totalChars > maxCharsPerAccount)) {
+				String eldestId = messages.keySet().iterator().next();
+				log.debug("Evicting e-mail from cache: {}", eldestId);
+				remove(eldestId);
+				evictionCount++;
+			}
+		}
+
+		List<MailMessage> removeMatching(final Predicate<MailMessage> condition) {
+			Collection<String> candidates;
+			if (condition instanceof MessagePredicates.HeaderPredicate) {
+				MessagePredicates.HeaderPredicate headerPredicate = (MessagePredicates.HeaderPredicate) condition;
+				candidates = getHeaderIndex(headerPredicate.getHeaderName()).get(headerPredicate.getHeaderValue());
+			} else {
+				candidates = messages.keySet();
+			}
+
+			Set<String> matchingIds = Sets.newHashSet();
+			for (String messageId : candidates) {
+				if (condition.apply(messages.get(messageId))) {
+					matchingIds.add(messageId);
+				}
+			}
+			if (matchingIds.isEmpty()) {
+				return ImmutableList.of();
+			}
+
+			List<MailMessage> result = Lists.newArrayListWithCapacity(matchingIds.size());
+			for (Iterator<Entry<String, MailMessage>> it = messages.entrySet().iterator(); it.hasNext();) {
+				Entry<String, MailMessage> entry = it.next();
+				if (matchingIds.contains(entry.getKey())) {
+					it.remove();
+					onRemoval(entry.getKey(), entry.getValue());
+					result.add(entry.getValue());
+				}
+			}
+			return result;
+		}
+
+		private SetMultimap<String, String> getHeaderIndex(final String headerName) {
+			SetMultimap<String, String> index = headerIndexes.get(headerName);
+			if (index == null) {
+				index = HashMultimap.create();
+				for (Entry<String, MailMessage> entry : messages.entrySet()) {
+					for (String value : entry.getValue().getHeaders().get(headerName)) {
+						index.put(value, entry.getKey());
+					}
+				}
+				headerIndexes.put(headerName, index);
+			}
+			return index;
+		}
+
+		private void remove(final String messageId) {
+			MailMessage message = messages.remove(messageId);
+			if (message != null) {
+				onRemoval(messageId, message);
+			}
+		}
+
+		private void onRemoval(final String messageId, final MailMessage message) {
+			totalChars -= weigh(message);
+			for (Entry<String, SetMultimap<String, String>> entry : headerIndexes.entrySet()) {
+				for (String value : message.getHeaders().get(entry.getKey())) {
+					entry.getValue().remove(value, messageId);
+				}
+			}
+		}
+	}
+}
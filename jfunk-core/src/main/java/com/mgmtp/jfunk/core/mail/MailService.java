@@ -148,7 +148,8 @@ public class MailService {
 	 * @param timeoutSeconds
 	 *            the timeout in seconds
 	 * @param sleepMillis
-	 *            the time in milliseconds to sleep between polls
+	 *            the maximum time in milliseconds to wait between polls; for IMAP accounts, the
+	 *            mailbox is polled again as soon as new messages arrive
 	 */
 	public MailMessage findMessage(final String accountReservationKey, final Predicate<MailMessage> condition,
 			final long timeoutSeconds, final long sleepMillis) {
@@ -177,7 +178,8 @@ public class MailService {
 	 * @param timeoutSeconds
 	 *            the timeout in seconds
 	 * @param sleepMillis
-	 *            the time in milliseconds to sleep between polls
+	 *            the maximum time in milliseconds to wait between polls; for IMAP accounts, the
+	 *            mailbox is polled again as soon as new messages arrive
 	 */
 	public MailMessage findMessage(final MailAccount mailAccount, final Predicate<MailMessage> condition,
 			final long timeoutSeconds, final long sleepMillis) {
@@ -196,21 +198,26 @@ public class MailService {
 		long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
 
 		StoreManager storeManager = storeManagerFactory.create(mailAccount);
-		do {
-			MailMessage message = storeManager.fetchMessage(condition, true);
-			if (message == null) {
-				try {
-					log.info("No matching e-mail found. Sleeping {} ms...", sleepMillis);
-					Thread.sleep(sleepMillis);
-				} catch (InterruptedException ex) {
-					Thread.currentThread().interrupt();
-					throw new JFunkException("Interrupt received.", ex);
+		MailArrivalWatcher.Watch watch = storeManager.watchForNewMessages();
+		try {
+			do {
+				MailMessage message = storeManager.fetchMessage(condition, true);
+				if (message == null) {
+					try {
+						log.info("No matching e-mail found. Waiting up to {} ms for new e-mails...", sleepMillis);
+						watch.await(sleepMillis);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new JFunkException("Interrupt received.", ex);
+					}
+				} else {
+					log.info("Found matching e-mail.");
+					return message;
 				}
-			} else {
-				log.info("Found matching e-mail.");
-				return message;
-			}
-		} while (end > System.currentTimeMillis());
+			} while (end > System.currentTimeMillis());
+		} finally {
+			watch.close();
+		}
 
 		throw new MailException(String.format("No matching e-mail found [timeoutSeconds=%d, sleepMillis=%d, condition=%s]",
 				timeoutSeconds, sleepMillis, condition));
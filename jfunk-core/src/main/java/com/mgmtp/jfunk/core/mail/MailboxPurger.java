@@ -19,7 +19,6 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
-import com.google.common.collect.Table;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
@@ -34,12 +33,12 @@ public class MailboxPurger {
 
 	private final Provider<MailService> emailServiceProvider;
 	private final Provider<Boolean> deleteOnStartupProvider;
-	private final Provider<Table<String, String, MailMessage>> mailAccountCacheProvider;
+	private final Provider<MailMessageCache> mailAccountCacheProvider;
 
 	@Inject
 	MailboxPurger(final Provider<MailService> emailServiceProvider,
 			@MailDeleteOnReservation final Provider<Boolean> deleteOnStartupProvider,
-			final Provider<Table<String, String, MailMessage>> mailAccountCacheProvider) {
+			final Provider<MailMessageCache> mailAccountCacheProvider) {
 		this.emailServiceProvider = emailServiceProvider;
 		this.deleteOnStartupProvider = deleteOnStartupProvider;
 		this.mailAccountCacheProvider = mailAccountCacheProvider;
@@ -51,6 +50,6 @@ public class MailboxPurger {
 		if (deleteOnStartupProvider.get()) {
 			emailServiceProvider.get().deleteMessages(event.getAccountReservationKey());
 		}
-		mailAccountCacheProvider.get().row(event.getMailAccount().getAccountId()).clear();
+		mailAccountCacheProvider.get().clear(event.getMailAccount().getAccountId());
 	}
 }
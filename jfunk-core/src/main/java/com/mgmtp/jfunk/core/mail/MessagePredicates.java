@@ -43,16 +43,10 @@ public class MessagePredicates {
 	 * @return the predicate
 	 */
 	public static Predicate<MailMessage> forHeader(final String headerName, final String headerValue) {
-		return new Predicate<MailMessage>() {
+		return new HeaderPredicate(headerName, headerValue) {
 			@Override
 			public boolean apply(final MailMessage input) {
-				List<String> headers = input.getHeaders().get(headerName);
-				for (String singleHeader : headers) {
-					if (StringUtils.equals(singleHeader, headerValue)) {
-						return true;
-					}
-				}
-				return false;
+				return hasHeader(input);
 			}
 
 			@Override
@@ -77,18 +71,10 @@ public class MessagePredicates {
 	 */
 	public static Predicate<MailMessage> forSubjectAndHeaders(final Pattern subjectPattern, final String headerName,
 			final String headerValue) {
-		return new Predicate<MailMessage>() {
+		return new HeaderPredicate(headerName, headerValue) {
 			@Override
 			public boolean apply(final MailMessage input) {
-				boolean result = false;
-				List<String> headers = input.getHeaders().get(headerName);
-				for (String singleHeader : headers) {
-					if (StringUtils.equals(singleHeader, headerValue)) {
-						result = true;
-						break;
-					}
-				}
-				return result && subjectPattern.matcher(input.getSubject()).matches();
+				return hasHeader(input) && subjectPattern.matcher(input.getSubject()).matches();
 			}
 
 			@Override
@@ -168,4 +154,39 @@ public class MessagePredicates {
 			}
 		};
 	}
+
+	/**
+	 * Base class for predicates which only match messages having a specific header value. Such
+	 * predicates are evaluated against a header index by {@link MailMessageCache}.
+	 */
+	abstract static class HeaderPredicate implements Predicate<MailMessage> {
+		private final String headerName;
+		private final String headerValue;
+
+		HeaderPredicate(final String headerName, final String headerValue) {
+			this.headerName = headerName;
+			this.headerValue = headerValue;
+		}
+
+		String getHeaderName() {
+			return headerName;
+		}
+
+		String getHeaderValue() {
+			return headerValue;
+		}
+
+		/**
+		 * @return {@code true} if at least one value of the header matches
+		 */
+		boolean hasHeader(final MailMessage input) {
+			List<String> headers = input.getHeaders().get(headerName);
+			for (String singleHeader : headers) {
+				if (StringUtils.equals(singleHeader, headerValue)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_STORE_PROTOCOL;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+import com.mgmtp.jfunk.core.exception.MailException;
+
+/**
+ * Pool of open mail folders shared by all {@link StoreManager}s, so polling a mailbox does not
+ * require a new login for each poll. Connections are pooled per mail account, session
+ * configuration, and folder. A connection is only used by one thread at a time.
+ * <p>
+ * Before an idle connection is reused, the server is asked for the current message count. This
+ * serves as health check and makes new messages visible in the open folder. Connections which
+ * fail the check, which have been idle for more than {@link #MAX_IDLE_MILLIS} ms, or which have
+ * been used by an operation that failed, are closed and replaced by new ones.
+ * </p>
+ * <p>
+ * Only IMAP(S) connections are kept open. POP3 folders neither show new messages nor apply
+ * deletions until they are closed, so POP3 connections are closed after each use.
+ * </p>
+ * <p>
+ * All idle connections are closed when the test run is finished.
+ * </p>
+ * 
+ * @since 3.1.0
+ */
+@Singleton
+public class StoreConnectionPool {
+
+	/**
+	 * Idle connections are not reused after this time since servers may have dropped them.
+	 */
+	public static final long MAX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	private static final String FOLDER_SEP = "/";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final ConcurrentMap<PoolKey, Queue<Connection>> idleConnections = Maps.newConcurrentMap();
+
+	/**
+	 * Returns an open connection to the specified folder, reusing an idle one if possible. The
+	 * connection must be released using {@link #release(Connection, boolean)}.
+	 * 
+	 * @param mailAccount
+	 *            the mail account
+	 * @param sessionProperties
+	 *            the properties for the mail session
+	 * @param folderName
+	 *            the name of the folder, sub folders are separated by {@code /}
+	 * @return the connection
+	 */
+	Connection borrow(final MailAccount mailAccount, final Properties sessionProperties, final String folderName) {
+		PoolKey key = new PoolKey(mailAccount.getAccountId(), sessionProperties, folderName);
+		Queue<Connection> idle = idleConnections.get(key);
+		if (idle != null) {
+			for (Connection connection = idle.poll(); connection != null; connection = idle.poll()) {
+				if (connection.isUsable()) {
+					log.debug("Reusing connection to mail store for account {}", mailAccount.getAccountId());
+					return connection;
+				}
+				connection.close();
+			}
+		}
+		return new Connection(key, openFolder(mailAccount, sessionProperties, folderName));
+	}
+
+	/**
+	 * Releases a connection obtained by {@link #borrow(MailAccount, Properties, String)}.
+	 * 
+	 * @param connection
+	 *            the connection
+	 * @param reusable
+	 *            {@code false} if the connection was used by an operation that failed, so it is
+	 *            closed instead of being pooled
+	 */
+	void release(final Connection connection, final boolean reusable) {
+		if (!reusable || !connection.key.isPoolable()) {
+			connection.close();
+			return;
+		}
+		connection.lastUsed = System.currentTimeMillis();
+		Queue<Connection> idle = idleConnections.get(connection.key);
+		if (idle == null) {
+			Queue<Connection> newQueue = new ConcurrentLinkedQueue<Connection>();
+			idle = idleConnections.putIfAbsent(connection.key, newQueue);
+			if (idle == null) {
+				idle = newQueue;
+			}
+		}
+		idle.offer(connection);
+	}
+
+	/**
+	 * Closes all idle connections.
+	 */
+	public void closeAll() {
+		int count = 0;
+		for (Queue<Connection> idle : idleConnections.values()) {
+			for (Connection connection = idle.poll(); connection != null; connection = idle.poll()) {
+				connection.close();
+				count++;
+			}
+		}
+		log.debug("Closed {} idle connection(s) to mail stores", count);
+	}
+
+	/**
+	 * @return {@code true} if the specified session properties configure IMAP or IMAPS as store
+	 *         protocol
+	 */
+	static boolean isImap(final Map<Object, Object> sessionProperties) {
+		Object protocol = sessionProperties.get(MAIL_STORE_PROTOCOL);
+		return protocol != null && protocol.toString().startsWith(EmailConstants.MAIL_PROTOCOL_IMAP);
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		closeAll();
+	}
+
+	private Folder openFolder(final MailAccount mailAccount, final Properties sessionProperties, final String folderName) {
+		Folder folder = null;
+		try {
+			folder = openStore(mailAccount, sessionProperties).getDefaultFolder();
+		} catch (MessagingException e) {
+			throw new MailException("Could not open default folder", e);
+		}
+
+		String[] subFolderNames = getSubFolderNames(folderName);
+		for (String subFolderName : subFolderNames) {
+			try {
+				log.debug("Opening folder " + subFolderName);
+				folder = folder.getFolder(subFolderName);
+			} catch (MessagingException e) {
+				throw new MailException("Could not open folder " + subFolderName, e);
+			}
+		}
+		try {
+			folder.open(Folder.READ_WRITE);
+		} catch (MessagingException ex) {
+			throw new MailException("Error while opening INBOX for read-write-access", ex);
+		}
+		return folder;
+	}
+
+	private Store openStore(final MailAccount mailAccount, final Properties sessionProperties) {
+		try {
+			Session session = Session.getInstance(sessionProperties, mailAccount.getAuthenticator());
+			Store store = session.getStore();
+			store.connect();
+			log.debug("Successfully connected to email store for account {}", mailAccount.getAccountId());
+			return store;
+		} catch (MessagingException ex) {
+			throw new MailException("Error getting store", ex);
+		}
+	}
+
+	private String[] getSubFolderNames(final String folder) {
+		if (folder == null || folder.length() == 0 || folder.indexOf(FOLDER_SEP) < 0) {
+			return new String[] { folder };
+		}
+		return folder.split(FOLDER_SEP);
+	}
+
+	/**
+	 * An open folder and its store.
+	 */
+	final class Connection {
+		private final PoolKey key;
+		private final Folder folder;
+		private long lastUsed;
+
+		Connection(final PoolKey key, final Folder folder) {
+			this.key = key;
+			this.folder = folder;
+		}
+
+		Folder getFolder() {
+			return folder;
+		}
+
+		boolean isUsable() {
+			if (System.currentTimeMillis() - lastUsed > MAX_IDLE_MILLIS || !folder.isOpen()) {
+				return false;
+			}
+			try {
+				// sends a NOOP for open IMAP folders, which also updates the message count
+				folder.getMessageCount();
+				return true;
+			} catch (MessagingException ex) {
+				log.debug("Discarding broken connection to mail store: {}", ex.getMessage());
+				return false;
+			} catch (IllegalStateException ex) {
+				// folder has been closed in the meantime
+				return false;
+			}
+		}
+
+		void close() {
+			if (folder.isOpen()) {
+				Store store = folder.getStore();
+				try {
+					folder.close(true);
+				} catch (MessagingException ex) {
+					log.error("Could not close folder: " + folder.getName(), ex);
+				}
+				try {
+					store.close();
+				} catch (MessagingException ex) {
+					log.error("Could not close mail store", ex);
+				}
+			}
+		}
+	}
+
+	private static final class PoolKey {
+		private final String accountId;
+		private final Map<Object, Object> sessionProperties;
+		private final String folderName;
+
+		PoolKey(final String accountId, final Properties sessionProperties, final String folderName) {
+			this.accountId = accountId;
+			this.sessionProperties = Maps.newHashMap(sessionProperties);
+			this.folderName = folderName;
+		}
+
+		boolean isPoolable() {
+			return isImap(sessionProperties);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(accountId, sessionProperties, folderName);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof PoolKey)) {
+				return false;
+			}
+			PoolKey other = (PoolKey) obj;
+			return Objects.equal(accountId, other.accountId) && Objects.equal(sessionProperties, other.sessionProperties)
+					&& Objects.equal(folderName, other.folderName);
+		}
+	}
+}
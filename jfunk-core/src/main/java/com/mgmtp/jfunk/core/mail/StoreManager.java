@@ -20,17 +20,16 @@ import static com.google.common.collect.Lists.newArrayList;
 import static java.util.Arrays.asList;
 
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 
 import javax.inject.Inject;
+import javax.mail.FetchProfile;
 import javax.mail.Flags.Flag;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.Store;
+import javax.mail.UIDFolder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,7 +37,6 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
-import com.google.common.collect.Table;
 import com.google.inject.assistedinject.Assisted;
 import com.mgmtp.jfunk.core.exception.MailException;
 
@@ -50,13 +48,14 @@ class StoreManager {
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
-	private static final String FOLDER_SEP = "/";
-
 	private final Properties sessionProperties;
 	private final String folderName;
 	private final MailAccount mailAccount;
 	private final MailArchiver mailArchiver;
-	private final Table<String, String, MailMessage> mailMessageCache;
+	private final MailMessageCache mailMessageCache;
+	private final StoreConnectionPool connectionPool;
+	private final FetchedUids fetchedUids;
+	private final MailArrivalWatcher arrivalWatcher;
 
 	static interface Factory {
 		StoreManager create(MailAccount mailAccount);
@@ -65,27 +64,34 @@ class StoreManager {
 	@Inject
 	StoreManager(@StoreSession final Properties sessionProperties, @MailFolder final String folderName,
 			final MailArchiver mailArchiver, @Assisted final MailAccount mailAccount,
-			final Table<String, String, MailMessage> mailMessageCache) {
+			final MailMessageCache mailMessageCache, final StoreConnectionPool connectionPool,
+			final FetchedUids fetchedUids, final MailArrivalWatcher arrivalWatcher) {
 		this.sessionProperties = sessionProperties;
 		this.folderName = folderName;
 		this.mailArchiver = mailArchiver;
 		this.mailAccount = mailAccount;
 		this.mailMessageCache = mailMessageCache;
+		this.connectionPool = connectionPool;
+		this.fetchedUids = fetchedUids;
+		this.arrivalWatcher = arrivalWatcher;
 	}
 
 	MailMessage fetchMessage(final Predicate<MailMessage> condition, final boolean deleteAfterFetch) {
-		Folder folder = openFolder();
+		StoreConnectionPool.Connection connection = connectionPool.borrow(mailAccount, sessionProperties, folderName);
+		boolean success = false;
 		try {
-			return fetchMessage(folder, condition, deleteAfterFetch);
+			MailMessage message = fetchMessage(connection.getFolder(), condition, deleteAfterFetch);
+			success = true;
+			return message;
 		} finally {
-			closeFolder(folder);
+			connectionPool.release(connection, success);
 		}
 	}
 
 	private MailMessage fetchMessage(final Folder folder, final Predicate<MailMessage> condition, final boolean deleteAfterFetch) {
 		try {
 			log.info("Fetching e-mail messages...");
-			List<Message> messages = asList(folder.getMessages());
+			List<Message> messages = fetchNewMessages(folder);
 			List<MailMessage> mailMessages = FluentIterable.from(messages).transform(MessageFunctions.toMailMessage()).toList();
 
 			for (MailMessage message : mailMessages) {
@@ -93,26 +99,18 @@ class StoreManager {
 				mailArchiver.archiveMessage(message);
 
 				// add messages to cache
-				String messageId = getOnlyElement(message.getHeaders().get("Message-ID"));
-				mailMessageCache.put(mailAccount.getAccountId(), messageId, message);
+				mailMessageCache.put(mailAccount.getAccountId(), message);
 			}
 
+			// UIDs are cached in the messages, so they must be read before messages are expunged
+			updateLastUid(folder, messages);
 			if (deleteAfterFetch) {
 				doDeleteMessages(folder, messages);
 			}
 
-			List<MailMessage> result = newArrayList();
-
-			// Iterate over the cache, which include messages just fetched now and those already cached by previous fetches
-			for (Iterator<MailMessage> it = mailMessageCache.row(mailAccount.getAccountId()).values().iterator(); it.hasNext();) {
-				MailMessage message = it.next();
-				if (condition.apply(message)) {
-					// message matching the condition are removed from the cache
-					// and added to the result
-					it.remove();
-					result.add(message);
-				}
-			}
+			// Look up the cache, which includes messages just fetched now and those already cached by previous fetches.
+			// Messages matching the condition are removed from the cache.
+			List<MailMessage> result = mailMessageCache.removeMatching(mailAccount.getAccountId(), condition);
 
 			switch (result.size()) {
 				case 0:
@@ -127,16 +125,76 @@ class StoreManager {
 		}
 	}
 
+	/**
+	 * Returns the messages which have not been fetched by the current script yet. Only new
+	 * messages are fetched from folders supporting UIDs (IMAP), whereas all messages are fetched
+	 * from other folders (POP3). Envelopes and UIDs of the messages are prefetched in a single
+	 * request.
+	 */
+	private List<Message> fetchNewMessages(final Folder folder) throws MessagingException {
+		FetchProfile fetchProfile = new FetchProfile();
+		fetchProfile.add(FetchProfile.Item.ENVELOPE);
+		fetchProfile.add(FetchProfile.Item.CONTENT_INFO);
+
+		if (!(folder instanceof UIDFolder)) {
+			Message[] messages = folder.getMessages();
+			folder.fetch(messages, fetchProfile);
+			return asList(messages);
+		}
+
+		UIDFolder uidFolder = (UIDFolder) folder;
+		long lastUid = fetchedUids.getLastUid(mailAccount.getAccountId(), folderName, uidFolder.getUIDValidity());
+		Message[] messages = uidFolder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+		fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+		folder.fetch(messages, fetchProfile);
+
+		// the result of a UID range ending with '*' always includes the last message,
+		// even if its UID is lower than the start of the range
+		List<Message> result = newArrayList();
+		for (Message message : messages) {
+			if (message != null && uidFolder.getUID(message) > lastUid) {
+				result.add(message);
+			}
+		}
+		log.debug("Fetched {} new message(s) with UIDs greater than {}", result.size(), lastUid);
+		return result;
+	}
+
+	private void updateLastUid(final Folder folder, final List<Message> messages) throws MessagingException {
+		if (!(folder instanceof UIDFolder) || messages.isEmpty()) {
+			return;
+		}
+
+		UIDFolder uidFolder = (UIDFolder) folder;
+		long uidValidity = uidFolder.getUIDValidity();
+		long lastUid = fetchedUids.getLastUid(mailAccount.getAccountId(), folderName, uidValidity);
+		for (Message message : messages) {
+			lastUid = Math.max(lastUid, uidFolder.getUID(message));
+		}
+		fetchedUids.setLastUid(mailAccount.getAccountId(), folderName, uidValidity, lastUid);
+	}
+
+	/**
+	 * Starts watching the folder for new messages. The returned watch must be closed after use.
+	 * 
+	 * @return the watch
+	 */
+	MailArrivalWatcher.Watch watchForNewMessages() {
+		return arrivalWatcher.watch(mailAccount, sessionProperties, folderName);
+	}
+
 	void deleteAllMessages() {
 		deleteMessages(Predicates.<Message>alwaysTrue());
 	}
 
 	void deleteMessages(final Predicate<Message> predicate) {
-		Folder folder = openFolder();
+		StoreConnectionPool.Connection connection = connectionPool.borrow(mailAccount, sessionProperties, folderName);
+		boolean success = false;
 		try {
-			deleteMessages(folder, predicate);
+			deleteMessages(connection.getFolder(), predicate);
+			success = true;
 		} finally {
-			closeFolder(folder);
+			connectionPool.release(connection, success);
 		}
 	}
 
@@ -165,64 +223,4 @@ class StoreManager {
 			throw new MailException("Error deleting e-mail message");
 		}
 	}
-
-	private Folder openFolder() {
-		Folder folder = null;
-		try {
-			folder = openStore().getDefaultFolder();
-		} catch (MessagingException e) {
-			throw new MailException("Could not open default folder", e);
-		}
-
-		String[] subFolderNames = getSubFolderNames(folderName);
-		for (String subFolderName : subFolderNames) {
-			try {
-				log.debug("Opening folder " + subFolderName);
-				folder = folder.getFolder(subFolderName);
-			} catch (MessagingException e) {
-				throw new MailException("Could not open folder " + subFolderName, e);
-			}
-		}
-		try {
-			folder.open(Folder.READ_WRITE);
-		} catch (MessagingException ex) {
-			throw new MailException("Error while opening INBOX for read-write-access", ex);
-		}
-		return folder;
-	}
-
-	private void closeFolder(final Folder folder) {
-		if (folder != null && folder.isOpen()) {
-			Store store = folder.getStore();
-			try {
-				folder.close(true);
-			} catch (MessagingException ex) {
-				log.error("Could not close folder: " + folder.getName(), ex);
-			}
-			try {
-				store.close();
-			} catch (MessagingException ex) {
-				log.error("Could not close mail store", ex);
-			}
-		}
-	}
-
-	private Store openStore() {
-		try {
-			Session session = Session.getInstance(sessionProperties, mailAccount.getAuthenticator());
-			Store store = session.getStore();
-			store.connect();
-			log.debug("Successfully connected to email store for account {}", mailAccount.getAccountId());
-			return store;
-		} catch (MessagingException ex) {
-			throw new MailException("Error getting store", ex);
-		}
-	}
-
-	private String[] getSubFolderNames(final String folder) {
-		if (folder == null || folder.length() == 0 || folder.indexOf(FOLDER_SEP) < 0) {
-			return new String[] { folder };
-		}
-		return folder.split(FOLDER_SEP);
-	}
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.apache.commons.io.IOUtils.copy;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mgmtp.jfunk.common.exception.JFunkException;
+
+/**
+ * Zips up and deletes module archive directories in the background, so test threads can continue
+ * with the next module while the archive of the previous one is written.
+ * <p>
+ * Archives are processed in parallel by a bounded number of threads. If more archives are waiting
+ * than can be queued, the submitting thread processes its archive itself, which throttles test
+ * threads producing archives faster than they can be written. {@link #flush()} waits until all
+ * submitted archives have been written. It is called at the end of each test run, since the
+ * background threads are daemon threads.
+ * </p>
+ * 
+ * @since 3.1.0
+ */
+@Singleton
+public class ArchiveWriter {
+
+	private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	private static final int QUEUE_CAPACITY = 2 * THREAD_COUNT;
+
+	/**
+	 * Files with these extensions are already compressed, so they are stored without further
+	 * compression.
+	 */
+	private static final Set<String> COMPRESSED_EXTENSIONS = ImmutableSet.of("png", "jpg", "jpeg", "gif", "zip", "gz", "jar");
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+			new ThreadFactoryBuilder().setNameFormat("archive-writer-%d").setDaemon(true).build(),
+			new ThreadPoolExecutor.CallerRunsPolicy());
+
+	private final Object lock = new Object();
+	private int pendingCount; // guarded by lock
+
+	/**
+	 * Zips up the specified directory and deletes it afterwards. Nothing happens if the directory is
+	 * empty. If the zip file cannot be written, the directory is kept.
+	 * 
+	 * @param dir
+	 *            the directory, which must not be modified anymore
+	 * @param zipFile
+	 *            the zip file to create
+	 */
+	public void zipAndDelete(final File dir, final File zipFile) {
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				zip(dir, zipFile);
+				deleteQuietly(dir);
+			}
+		});
+	}
+
+	/**
+	 * Deletes the specified directory.
+	 * 
+	 * @param dir
+	 *            the directory
+	 */
+	public void delete(final File dir) {
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				deleteQuietly(dir);
+			}
+		});
+	}
+
+	/**
+	 * Waits until all archives submitted so far have been written.
+	 */
+	public void flush() {
+		synchronized (lock) {
+			if (pendingCount > 0) {
+				log.info("Waiting for {} archive(s) to be written...", pendingCount);
+			}
+			while (pendingCount > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					log.warn("Interrupted while waiting for archives to be written");
+					return;
+				}
+			}
+		}
+	}
+
+	private void submit(final Runnable task) {
+		synchronized (lock) {
+			pendingCount++;
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} catch (RuntimeException ex) {
+					log.error(ex.getMessage(), ex);
+				} finally {
+					synchronized (lock) {
+						if (--pendingCount == 0) {
+							lock.notifyAll();
+						}
+					}
+				}
+			}
+		});
+	}
+
+	private void zip(final File dir, final File zipFile) {
+		File[] files = dir.listFiles();
+		if (files == null || files.length == 0) {
+			return;
+		}
+
+		log.info("Creating zip file: {}", zipFile);
+
+		ZipOutputStream zipOut = null;
+		boolean success = false;
+		try {
+			zipOut = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
+			for (File file : files) {
+				zip("", file, zipOut);
+			}
+			// close explicitly, so errors writing the remaining buffered data are not ignored
+			zipOut.close();
+			success = true;
+		} catch (IOException ex) {
+			throw new JFunkException("Error creating archive zip: " + zipFile, ex);
+		} finally {
+			closeQuietly(zipOut);
+			if (!success) {
+				// remove the incomplete zip file
+				deleteQuietly(zipFile);
+			}
+		}
+	}
+
+	private void zip(final String prefix, final File file, final ZipOutputStream zipOut) throws IOException {
+		if (file.isDirectory()) {
+			String recursePrefix = prefix + file.getName() + '/';
+			File[] children = file.listFiles();
+			if (children != null) {
+				for (File child : children) {
+					zip(recursePrefix, child, zipOut);
+				}
+			}
+		} else {
+			String extension = FilenameUtils.getExtension(file.getName()).toLowerCase(Locale.ENGLISH);
+			zipOut.setLevel(COMPRESSED_EXTENSIONS.contains(extension) ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+
+			FileInputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				zipOut.putNextEntry(new ZipEntry(prefix + file.getName()));
+				copy(in, zipOut);
+			} finally {
+				closeQuietly(in);
+				zipOut.closeEntry();
+			}
+		}
+	}
+}
@@ -34,6 +34,7 @@ import com.mgmtp.jfunk.core.reporting.ReportData;
 import com.mgmtp.jfunk.core.reporting.Reported;
 import com.mgmtp.jfunk.core.reporting.Reporter;
 import com.mgmtp.jfunk.core.step.base.Step;
+import com.mgmtp.jfunk.data.source.SharedRowCursor;
 
 /**
  * @author rnaegele
@@ -46,16 +47,19 @@ class InternalEventHandler {
 	private final Provider<ScriptContext> scriptContextProvider;
 	private final Provider<Deque<ReportData>> reportDataStackProvider;
 	private final Set<Reporter> globalReporters;
+	private final ArchiveWriter archiveWriter;
 
 	@Inject
 	InternalEventHandler(final Provider<ModuleArchiver> moduleArchiverProvider,
 			final Provider<ScriptContext> scriptContextProvider,
 			final Provider<Deque<ReportData>> reportDataStackProvider,
-			final Set<Reporter> globalReporters) {
+			final Set<Reporter> globalReporters,
+			final ArchiveWriter archiveWriter) {
 		this.moduleArchiverProvider = moduleArchiverProvider;
 		this.scriptContextProvider = scriptContextProvider;
 		this.reportDataStackProvider = reportDataStackProvider;
 		this.globalReporters = globalReporters;
+		this.archiveWriter = archiveWriter;
 	}
 
 	@Subscribe
@@ -140,6 +144,12 @@ class InternalEventHandler {
 	@Subscribe
 	@AllowConcurrentEvents
 	public void handleAfterRun(@SuppressWarnings("unused") final AfterRunEvent event) {
+		// archives are written by daemon threads, so they must be complete before the run ends
+		archiveWriter.flush();
+
+		// the next run consumes partitioned data sources from the start
+		SharedRowCursor.clear();
+
 		for (Reporter report : globalReporters) {
 			createReport(report);
 		}
@@ -19,12 +19,9 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static org.apache.commons.io.FileUtils.copyDirectory;
 import static org.apache.commons.io.FileUtils.copyFileToDirectory;
-import static org.apache.commons.io.FileUtils.deleteQuietly;
 import static org.apache.commons.io.IOUtils.closeQuietly;
-import static org.apache.commons.io.IOUtils.copy;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -34,8 +31,6 @@ import java.text.Format;
 import java.util.Date;
 import java.util.Locale;
 import java.util.Map.Entry;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import javax.inject.Inject;
 
@@ -44,6 +39,7 @@ import org.apache.commons.lang3.time.FastDateFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ch.qos.logback.classic.AsyncAppender;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -71,6 +67,8 @@ import com.mgmtp.jfunk.data.source.DataSource;
  * </li>
  * <li>{@link JFunkConstants#ARCHIVING_MODE_NONE NONE} - no archiving happens at all</li>
  * </ul>
+ * Archives are zipped up and deleted in the background by the {@link ArchiveWriter}. The module log
+ * is written asynchronously; log events are routed to it by the {@link ModuleLogAppender}.
  * 
  * @author rnaegele
  */
@@ -78,6 +76,7 @@ import com.mgmtp.jfunk.data.source.DataSource;
 public class ModuleArchiver {
 	private static final Format FORMAT = FastDateFormat.getInstance("yyyyMMdd_HHmmss,SSS", Locale.GERMANY);
 	private static final String DIR_PATTERN = "%s_%s_[%s]";
+	private static final int MODULE_LOG_QUEUE_SIZE = 1024;
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -89,9 +88,10 @@ public class ModuleArchiver {
 
 	private File moduleArchiveDir;
 
-	private FileAppender<ILoggingEvent> moduleAppender;
+	private AsyncAppender moduleAppender;
 	private final MathRandom random;
 	private final ArchivingMode archivingMode;
+	private final ArchiveWriter archiveWriter;
 
 	/**
 	 * Creates a new instance.
@@ -102,16 +102,19 @@ public class ModuleArchiver {
 	 *            the dats source
 	 * @param archiveDir
 	 *            the archive directory
+	 * @param archiveWriter
+	 *            writes archives in the background
 	 */
 	@Inject
 	ModuleArchiver(final Configuration configuration, final DataSource dataSource, @ArchiveDir final File archiveDir,
-			final Charset charset, final MathRandom random, final ArchivingMode archivingMode) {
+			final Charset charset, final MathRandom random, final ArchivingMode archivingMode, final ArchiveWriter archiveWriter) {
 		this.configuration = configuration;
 		this.dataSource = dataSource;
 		this.archiveDir = archiveDir;
 		this.charset = charset;
 		this.random = random;
 		this.archivingMode = archivingMode;
+		this.archiveWriter = archiveWriter;
 	}
 
 	/**
@@ -143,32 +146,31 @@ public class ModuleArchiver {
 	}
 
 	private void addModuleAppender() {
-		final Thread thread = Thread.currentThread();
-
-		moduleAppender = new FileAppender<ILoggingEvent>() {
-			@Override
-			protected void subAppend(final ILoggingEvent event) {
-				if (thread.equals(Thread.currentThread())) {
-					super.subAppend(event);
-				}
-			}
-		};
-
 		LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
-		moduleAppender.setContext(loggerContext);
-		moduleAppender.setFile(new File(moduleArchiveDir, "module.log").getPath());
 
 		PatternLayoutEncoder encoder = new PatternLayoutEncoder();
 		encoder.setContext(loggerContext);
 		encoder.setPattern("%date{yyyy-MM-dd HH:mm:ss} [%thread] %-5level %logger{35} - %msg%n");
+		// the file is flushed when the appender is stopped
+		encoder.setImmediateFlush(false);
 		encoder.start();
 
-		moduleAppender.setEncoder(encoder);
+		FileAppender<ILoggingEvent> fileAppender = new FileAppender<ILoggingEvent>();
+		fileAppender.setContext(loggerContext);
+		fileAppender.setFile(new File(moduleArchiveDir, "module.log").getPath());
+		fileAppender.setEncoder(encoder);
+		fileAppender.start();
+
+		// writes the module log in the background; events are never discarded
+		moduleAppender = new AsyncAppender();
+		moduleAppender.setContext(loggerContext);
+		moduleAppender.setName("module-log-" + Thread.currentThread().getName());
+		moduleAppender.setQueueSize(MODULE_LOG_QUEUE_SIZE);
+		moduleAppender.setDiscardingThreshold(0);
+		moduleAppender.addAppender(fileAppender);
 		moduleAppender.start();
 
-		// attach the rolling file appender to the logger of your choice
-		ch.qos.logback.classic.Logger logbackLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
-		logbackLogger.addAppender(moduleAppender);
+		ModuleLogAppender.register(moduleAppender);
 	}
 
 	void finishArchiving(final TestModule testModule, final Throwable throwable) {
@@ -182,34 +184,37 @@ public class ModuleArchiver {
 				return;
 			}
 
-			Configuration configClone = configuration.clone();
-			configClone.put(JFunkConstants.CURRENT_MODULE_NAME, testModule.getName());
-			configClone.put(JFunkConstants.CURRENT_MODULE_RESULT, success ? JFunkConstants.OK : JFunkConstants.ERROR);
-			configClone.put(JFunkConstants.TESTMODULE_CLASS, testModule.getClass().getName());
-			configClone.put(JFunkConstants.RANDOM_SEED, String.valueOf(random.getSeed()));
+			// the archived properties are put into an overlay, so the configuration need not be copied
+			Configuration archivedConfig = new Configuration(configuration, charset);
+			archivedConfig.put(JFunkConstants.CURRENT_MODULE_NAME, testModule.getName());
+			archivedConfig.put(JFunkConstants.CURRENT_MODULE_RESULT, success ? JFunkConstants.OK : JFunkConstants.ERROR);
+			archivedConfig.put(JFunkConstants.TESTMODULE_CLASS, testModule.getClass().getName());
+			archivedConfig.put(JFunkConstants.RANDOM_SEED, String.valueOf(random.getSeed()));
 
-			saveDataSets(configClone);
-			saveConfiguration(configClone);
+			saveDataSets(archivedConfig);
+			saveConfiguration(archivedConfig);
 			saveStackTrace(throwable);
 
 			log.info("Finished archiving: (module={}, moduleArchiveDir={})", testModule, moduleArchiveDir);
 		} finally {
 			if (moduleAppender != null) {
-				LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+				ModuleLogAppender.unregister();
+				// writes all pending events and closes the file
 				moduleAppender.stop();
-				loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).detachAppender(moduleAppender);
+				moduleAppender = null;
 			}
 
 			if (archivingMode == ArchivingMode.error && success) {
-				deleteQuietly(moduleArchiveDir);
+				archiveWriter.delete(moduleArchiveDir);
 			} else {
 				String archiveType = configuration.get(JFunkConstants.ARCHIVE_TYPE, "zip");
 				if ("dir".equals(archiveType)) {
 					File dest = new File(moduleArchiveDir.getParent(), moduleArchiveDir.getName() + (success ? "_ok" : "_error"));
 					moduleArchiveDir.renameTo(dest);
 				} else {
-					zipUpArchive(success);
-					deleteQuietly(moduleArchiveDir);
+					File zipFile = new File(moduleArchiveDir.getParentFile(), moduleArchiveDir.getName()
+							+ (success ? "_ok.zip" : "_error.zip"));
+					archiveWriter.zipAndDelete(moduleArchiveDir, zipFile);
 				}
 			}
 		}
@@ -336,49 +341,6 @@ public class ModuleArchiver {
 		}
 	}
 
-	private void zipUpArchive(final boolean success) {
-		File[] files = moduleArchiveDir.listFiles();
-		if (files.length == 0) {
-			return;
-		}
-
-		File zipFile = new File(moduleArchiveDir.getParentFile(), moduleArchiveDir.getName()
-				+ (success ? "_ok.zip" : "_error.zip"));
-		log.info("Creating zip file: {}" + zipFile);
-
-		ZipOutputStream zipOut = null;
-		try {
-			zipOut = new ZipOutputStream(new FileOutputStream(zipFile));
-			for (File file : files) {
-				zip("", file, zipOut);
-			}
-		} catch (IOException ex) {
-			throw new JFunkException("Error creating archive zip: " + zipFile, ex);
-		} finally {
-			closeQuietly(zipOut);
-		}
-	}
-
-	private void zip(final String prefix, final File file, final ZipOutputStream zipOut) throws IOException {
-		if (file.isDirectory()) {
-			String recursePrefix = prefix + file.getName() + '/';
-			for (File child : file.listFiles()) {
-				zip(recursePrefix, child, zipOut);
-			}
-		} else {
-			FileInputStream in = null;
-			try {
-				in = new FileInputStream(file);
-				zipOut.putNextEntry(new ZipEntry(prefix + file.getName()));
-				copy(in, zipOut);
-			} finally {
-				closeQuietly(in);
-				zipOut.flush();
-				zipOut.closeEntry();
-			}
-		}
-	}
-
 	public static enum ArchivingMode {
 		all, error, none;
 	}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Routes log events to the module log of the current thread. A single instance is attached to the
+ * root logger. Module logs are registered per thread, so the cost of a log event does not depend on
+ * the number of modules running in parallel. Events of threads without a module log are ignored.
+ * <p>
+ * Modules may be nested, e. g. if a module runs another module. Events are then written to the
+ * logs of all modules running in the current thread.
+ * </p>
+ *
+ * @see ModuleArchiver
+ */
+final class ModuleLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+	static final String NAME = "jfunk-module-log";
+
+	private static final ThreadLocal<Deque<Appender<ILoggingEvent>>> MODULE_APPENDERS = new ThreadLocal<Deque<Appender<ILoggingEvent>>>();
+
+	private ModuleLogAppender() {
+		// only created by install()
+	}
+
+	/**
+	 * Registers the specified appender for the current thread on top of the appenders of enclosing
+	 * modules. The routing appender is attached to the root logger if necessary, e. g. after the
+	 * logging system has been reconfigured.
+	 *
+	 * @param appender
+	 *            the started appender writing the module log
+	 */
+	static void register(final Appender<ILoggingEvent> appender) {
+		install();
+		Deque<Appender<ILoggingEvent>> appenders = MODULE_APPENDERS.get();
+		if (appenders == null) {
+			appenders = new ArrayDeque<Appender<ILoggingEvent>>(2);
+			MODULE_APPENDERS.set(appenders);
+		}
+		appenders.push(appender);
+	}
+
+	/**
+	 * Unregisters the appender registered last for the current thread. The appenders of enclosing
+	 * modules remain registered. The appender is not stopped.
+	 */
+	static void unregister() {
+		Deque<Appender<ILoggingEvent>> appenders = MODULE_APPENDERS.get();
+		if (appenders == null) {
+			return;
+		}
+		appenders.poll();
+		if (appenders.isEmpty()) {
+			MODULE_APPENDERS.remove();
+		}
+	}
+
+	private static synchronized void install() {
+		LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+		ch.qos.logback.classic.Logger rootLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+		Appender<ILoggingEvent> appender = rootLogger.getAppender(NAME);
+		if (appender != null && appender.isStarted()) {
+			return;
+		}
+		if (appender != null) {
+			rootLogger.detachAppender(appender);
+		}
+
+		ModuleLogAppender routingAppender = new ModuleLogAppender();
+		routingAppender.setContext(loggerContext);
+		routingAppender.setName(NAME);
+		routingAppender.start();
+		rootLogger.addAppender(routingAppender);
+	}
+
+	@Override
+	protected void append(final ILoggingEvent event) {
+		Deque<Appender<ILoggingEvent>> appenders = MODULE_APPENDERS.get();
+		if (appenders != null) {
+			for (Appender<ILoggingEvent> appender : appenders) {
+				appender.doAppend(event);
+			}
+		}
+	}
+}
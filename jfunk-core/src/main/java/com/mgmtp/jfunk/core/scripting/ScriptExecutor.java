@@ -16,25 +16,35 @@
 package com.mgmtp.jfunk.core.scripting;
 
 import static com.google.common.base.Preconditions.checkState;
-import static org.apache.commons.io.IOUtils.closeQuietly;
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovySystem;
 import groovy.lang.MetaProperty;
+import groovy.lang.Script;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
 import java.nio.charset.Charset;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
 
 import org.apache.log4j.Logger;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.EventBus;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.config.ThreadScope;
@@ -44,11 +54,16 @@ import com.mgmtp.jfunk.core.reporting.SimpleReporter;
 import com.mgmtp.jfunk.core.scripting.groovy.Commands;
 
 /**
- * Executes Groovy scripts.
+ * Executes Groovy scripts. Scripts are compiled only once and the compiled classes are shared by
+ * all threads. A script is compiled again if its content has changed. Each execution gets its own
+ * script instance and {@link Binding}, which is posted to the {@link EventBus} before the script
+ * runs, so variables may be added.
  * 
  */
 @Singleton
 public class ScriptExecutor {
+	private static final String CODE_BASE = "/groovy/script";
+
 	private final Logger log = Logger.getLogger(ScriptContext.class);
 
 	private final Provider<ScriptContext> scriptContextProvider;
@@ -56,6 +71,10 @@ public class ScriptExecutor {
 	private final ThreadScope scriptScope;
 	private final Charset charset;
 
+	private final GroovyClassLoader classLoader = new GroovyClassLoader(Thread.currentThread().getContextClassLoader());
+	private final ConcurrentMap<String, CompiledScript> compiledScripts = Maps.newConcurrentMap();
+	private final List<String> commandNames;
+
 	/**
 	 * Creates a new instance.
 	 * 
@@ -74,6 +93,7 @@ public class ScriptExecutor {
 		this.eventBus = eventBus;
 		this.scriptScope = scriptScope;
 		this.charset = charset;
+		this.commandNames = findCommandNames();
 	}
 
 	/**
@@ -82,41 +102,43 @@ public class ScriptExecutor {
 	 * @param script
 	 *            the script file
 	 * @param scriptProperties
-	 *            properties that are set to the script engine's binding and thus will be available
-	 *            as variables in the Groovy script
+	 *            properties that are set to the script's binding and thus will be available as
+	 *            variables in the Groovy script
 	 * @return the execution result, {@code true} if successful, {@code false} code
 	 */
 	public boolean executeScript(final File script, final Properties scriptProperties) {
 		checkState(script.exists(), "Script file does not exist: %s", script);
 		checkState(script.canRead(), "Script file is not readable: %s", script);
 
-		Reader reader = null;
 		boolean success = false;
 
 		try {
 			scriptScope.enterScope();
 
-			reader = Files.newReader(script, charset);
+			Class<?> scriptClass = getScriptClass(script);
 
-			ScriptEngine scriptEngine = new ScriptEngineManager().getEngineByExtension("groovy");
 			ScriptContext ctx = scriptContextProvider.get();
 			ctx.setScript(script);
 			ctx.load(JFunkConstants.SCRIPT_PROPERTIES, false);
 			ctx.registerReporter(new SimpleReporter());
-			initGroovyCommands(scriptEngine, ctx);
-			initScriptProperties(scriptEngine, scriptProperties);
-			eventBus.post(scriptEngine);
+
+			Binding binding = new Binding();
+			initGroovyCommands(binding, ctx);
+			initScriptProperties(binding, scriptProperties);
+			eventBus.post(binding);
 			eventBus.post(new BeforeScriptEvent(script.getAbsolutePath()));
-			scriptEngine.eval(reader);
+			Script scriptInstance = InvokerHelper.createScript(scriptClass, binding);
+			scriptInstance.run();
 			success = true;
 		} catch (IOException ex) {
 			log.error("Error loading script: " + script, ex);
-		} catch (ScriptException ex) {
+		} catch (CompilationFailedException ex) {
+			log.error("Error compiling script: " + script, ex);
+		} catch (Exception ex) {
 			// Look up the cause hierarchy if we find a ModuleExecutionException.
 			// We only need to log exceptions other than ModuleExecutionException because they
 			// have already been logged and we don't want to pollute the log file any further.
-			// In fact, other exception cannot normally happen.
-			Throwable th = ex.getCause();
+			Throwable th = ex;
 			while (!(th instanceof ModuleExecutionException)) {
 				if (th == null) {
 					// log original exception
@@ -131,29 +153,87 @@ public class ScriptExecutor {
 				eventBus.post(new AfterScriptEvent(script.getAbsolutePath(), success));
 			} finally {
 				scriptScope.exitScope();
-				closeQuietly(reader);
 			}
 		}
 
 		return success;
 	}
 
-	private void initGroovyCommands(final ScriptEngine scriptEngine, final ScriptContext scriptContext) {
-		Commands commands = new Commands(scriptContext);
+	/**
+	 * Returns the compiled class of the specified script. The script is compiled if it has not been
+	 * compiled before or if its content has changed. Modification time and size are checked first,
+	 * so unchanged scripts are not read again.
+	 */
+	private Class<?> getScriptClass(final File script) throws IOException {
+		String path = script.getCanonicalPath();
+		long lastModified = script.lastModified();
+		long length = script.length();
+
+		CompiledScript compiled = compiledScripts.get(path);
+		if (compiled != null && compiled.lastModified == lastModified && compiled.length == length) {
+			return compiled.scriptClass;
+		}
 
-		for (MetaProperty mp : commands.getMetaClass().getProperties()) {
-			String propertyType = mp.getType().getCanonicalName();
-			String propertyName = mp.getName();
+		// parallel threads usually start with the same script, which only needs to be compiled once
+		synchronized (compiledScripts) {
+			compiled = compiledScripts.get(path);
+			if (compiled != null && compiled.lastModified == lastModified && compiled.length == length) {
+				return compiled.scriptClass;
+			}
 
-			if (propertyType.equals(groovy.lang.Closure.class.getCanonicalName())) {
-				scriptEngine.put(propertyName, commands.getProperty(propertyName));
+			String text = Files.toString(script, charset);
+			HashCode hash = Hashing.md5().hashString(text, Charsets.UTF_8);
+			Class<?> scriptClass;
+			if (compiled != null && compiled.hash.equals(hash)) {
+				scriptClass = compiled.scriptClass;
+			} else {
+				log.info("Compiling script: " + script);
+				scriptClass = classLoader.parseClass(new GroovyCodeSource(text, script.getName(), CODE_BASE),
+						false);
 			}
+			compiledScripts.put(path, new CompiledScript(lastModified, length, hash, scriptClass));
+			return scriptClass;
 		}
 	}
 
-	private void initScriptProperties(final ScriptEngine se, final Properties properties) {
+	/**
+	 * Determines the names of the closure properties of {@link Commands}, which are bound as
+	 * commands in scripts.
+	 */
+	private static List<String> findCommandNames() {
+		ImmutableList.Builder<String> builder = ImmutableList.builder();
+		for (MetaProperty mp : GroovySystem.getMetaClassRegistry().getMetaClass(Commands.class).getProperties()) {
+			if (Closure.class.equals(mp.getType())) {
+				builder.add(mp.getName());
+			}
+		}
+		return builder.build();
+	}
+
+	private void initGroovyCommands(final Binding binding, final ScriptContext scriptContext) {
+		Commands commands = new Commands(scriptContext);
+		for (String commandName : commandNames) {
+			binding.setVariable(commandName, commands.getProperty(commandName));
+		}
+	}
+
+	private void initScriptProperties(final Binding binding, final Properties properties) {
 		for (String name : properties.stringPropertyNames()) {
-			se.put(name, properties.getProperty(name));
+			binding.setVariable(name, properties.getProperty(name));
+		}
+	}
+
+	private static final class CompiledScript {
+		private final long lastModified;
+		private final long length;
+		private final HashCode hash;
+		private final Class<?> scriptClass;
+
+		CompiledScript(final long lastModified, final long length, final HashCode hash, final Class<?> scriptClass) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.hash = hash;
+			this.scriptClass = scriptClass;
 		}
 	}
-}
\ No newline at end of file
+}
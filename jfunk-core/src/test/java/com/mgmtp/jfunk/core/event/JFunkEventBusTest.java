@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.event;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.testng.annotations.Test;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Unit test for {@link JFunkEventBus}.
+ * 
+ * @since 3.1.0
+ */
+public class JFunkEventBusTest {
+
+	@Test
+	public void testInlineHandler() {
+		JFunkEventBus eventBus = new JFunkEventBus();
+		InlineHandler handler = new InlineHandler();
+		eventBus.register(handler);
+
+		eventBus.post(new BeforeRunEvent());
+		eventBus.post("ignored");
+
+		assertThat(handler.threads).containsOnly(Thread.currentThread());
+		List<JFunkEventBus.Stats> stats = eventBus.getStats();
+		assertThat(stats).hasSize(1);
+		assertThat(stats.get(0).isAsync()).isFalse();
+		assertThat(stats.get(0).getEventCount()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testAsyncHandlerPreservesOrder() {
+		JFunkEventBus eventBus = new JFunkEventBus();
+		AsyncHandler handler = new AsyncHandler();
+		eventBus.register(handler);
+
+		for (int i = 0; i < 100; ++i) {
+			eventBus.post(Integer.valueOf(i));
+		}
+		eventBus.post(new AfterRunEvent());
+
+		// posting the AfterRunEvent waits for all pending events
+		assertThat(handler.events).hasSize(101);
+		for (int i = 0; i < 100; ++i) {
+			assertThat(handler.events.get(i)).isEqualTo(Integer.valueOf(i));
+		}
+		assertThat(handler.events.get(100)).isInstanceOf(AfterRunEvent.class);
+		assertThat(handler.threads).doesNotContain(Thread.currentThread());
+
+		JFunkEventBus.Stats stats = eventBus.getStats().get(0);
+		assertThat(stats.isAsync()).isTrue();
+		assertThat(stats.getEventCount()).isEqualTo(101L);
+		assertThat(stats.getPendingCount()).isEqualTo(0);
+	}
+
+	static class InlineHandler {
+		final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+
+		@Subscribe
+		public void handleEvent(@SuppressWarnings("unused") final RunEvent event) {
+			threads.add(Thread.currentThread());
+		}
+	}
+
+	@AsyncEventHandler(queueCapacity = 10)
+	static class AsyncHandler {
+		final List<Object> events = new CopyOnWriteArrayList<Object>();
+		final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+
+		@Subscribe
+		public void handleNumber(final Integer number) throws InterruptedException {
+			Thread.sleep(1L);
+			events.add(number);
+			threads.add(Thread.currentThread());
+		}
+
+		@Subscribe
+		public void handleEvent(final AfterRunEvent event) {
+			events.add(event);
+			threads.add(Thread.currentThread());
+		}
+	}
+}
@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -256,4 +257,43 @@ public class MailAccountManagerTest {
 			eventBus.unregister(purger);
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void reservationsShouldBeCounted() throws InterruptedException {
+		init(1);
+		for (int i = 0; i < ACCOUNTS_PER_POOL; ++i) {
+			manager.reserveMailAccount("key_" + i);
+		}
+
+		Thread th = new Thread() {
+			@Override
+			public void run() {
+				manager.reserveMailAccount("other_key");
+			}
+		};
+		th.start();
+		awaitWaiting(th);
+		// make sure the wait lasts at least a millisecond
+		Thread.sleep(10L);
+		manager.releaseMailAccountForThread("key_0");
+		th.join();
+
+		MailAccountManager.ReservationStats stats = manager.getReservationStats();
+		assertThat(stats.getReservationCount()).isEqualTo(ACCOUNTS_PER_POOL + 1);
+		assertThat(stats.getWaitingReservationCount()).isEqualTo(1L);
+		assertThat(stats.getMaxWaitMillis()).isGreaterThan(0L);
+	}
+
+	/**
+	 * Waits until the specified thread waits for a mail account, but no longer than ten seconds.
+	 */
+	private static void awaitWaiting(final Thread th) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+		while (th.getState() != Thread.State.WAITING && th.getState() != Thread.State.TIMED_WAITING) {
+			if (System.nanoTime() - deadline > 0L) {
+				throw new AssertionError("Thread " + th.getName() + " did not start waiting");
+			}
+			Thread.sleep(1L);
+		}
+	}
+}
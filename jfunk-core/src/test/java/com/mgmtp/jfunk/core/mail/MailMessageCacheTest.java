@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for {@link MailMessageCache}.
+ * 
+ * @since 3.1.0
+ */
+public class MailMessageCacheTest {
+
+	private static final String ACCOUNT_ID = "account";
+
+	@Test
+	public void testRemoveMatchingHeader() throws MessagingException {
+		MailMessageCache cache = new MailMessageCache();
+		cache.put(ACCOUNT_ID, createMessage("1", "first", "a"));
+		cache.put(ACCOUNT_ID, createMessage("2", "second", "b"));
+
+		List<MailMessage> result = cache.removeMatching(ACCOUNT_ID, MessagePredicates.forHeader("X-Test", "b"));
+		assertThat(result).hasSize(1);
+		assertThat(result.get(0).getSubject()).isEqualTo("second");
+		assertThat(cache.size(ACCOUNT_ID)).isEqualTo(1);
+
+		// the index must be maintained for messages added later
+		cache.put(ACCOUNT_ID, createMessage("3", "third", "b"));
+		result = cache.removeMatching(ACCOUNT_ID, MessagePredicates.forHeader("X-Test", "b"));
+		assertThat(result).hasSize(1);
+		assertThat(result.get(0).getSubject()).isEqualTo("third");
+
+		assertThat(cache.removeMatching(ACCOUNT_ID, MessagePredicates.forHeader("X-Test", "b"))).isEmpty();
+		assertThat(cache.stats().hitCount()).isEqualTo(2L);
+		assertThat(cache.stats().missCount()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testRemoveMatchingSubject() throws MessagingException {
+		MailMessageCache cache = new MailMessageCache();
+		cache.put(ACCOUNT_ID, createMessage("1", "first", "a"));
+		cache.put(ACCOUNT_ID, createMessage("2", "second", "a"));
+		cache.put("other", createMessage("3", "first", "a"));
+
+		List<MailMessage> result = cache.removeMatching(ACCOUNT_ID, MessagePredicates.forSubject("f.*"));
+		assertThat(result).hasSize(1);
+		assertThat(cache.size(ACCOUNT_ID)).isEqualTo(1);
+		assertThat(cache.size("other")).isEqualTo(1);
+	}
+
+	@Test
+	public void testEviction() throws MessagingException {
+		MailMessageCache cache = new MailMessageCache(2, Long.MAX_VALUE);
+		cache.put(ACCOUNT_ID, createMessage("1", "first", "a"));
+		cache.put(ACCOUNT_ID, createMessage("2", "second", "a"));
+		cache.put(ACCOUNT_ID, createMessage("3", "third", "a"));
+
+		assertThat(cache.size(ACCOUNT_ID)).isEqualTo(2);
+		assertThat(cache.stats().evictionCount()).isEqualTo(1L);
+		assertThat(cache.removeMatching(ACCOUNT_ID, MessagePredicates.forSubject("first"))).isEmpty();
+	}
+
+	@Test
+	public void testEvictionBySize() throws MessagingException {
+		MailMessageCache cache = new MailMessageCache(10, 1L);
+		cache.put(ACCOUNT_ID, createMessage("1", "first", "a"));
+		cache.put(ACCOUNT_ID, createMessage("2", "second", "a"));
+
+		// the message added last is kept even if it exceeds the limit
+		assertThat(cache.size(ACCOUNT_ID)).isEqualTo(1);
+		assertThat(cache.removeMatching(ACCOUNT_ID, MessagePredicates.forSubject("second"))).hasSize(1);
+	}
+
+	private MailMessage createMessage(final String id, final String subject, final String testHeader) throws MessagingException {
+		MimeMessage message = new MimeMessage(Session.getInstance(new Properties())) {
+			@Override
+			protected void updateMessageID() throws MessagingException {
+				setHeader("Message-ID", "<" + id + "@example.com>");
+			}
+		};
+		message.setFrom(new InternetAddress("sender@example.com"));
+		message.setSubject(subject);
+		message.setHeader("X-Test", testHeader);
+		message.setText("text " + id);
+		message.saveChanges();
+		return MailMessage.fromMessage(message);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Unit test for {@link ArchiveWriter}.
+ *
+ */
+public class ArchiveWriterTest {
+
+	private File tempDir;
+	private File moduleDir;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDir();
+		moduleDir = new File(tempDir, "module");
+		moduleDir.mkdir();
+		Files.write("test", new File(moduleDir, "module.log"), Charsets.UTF_8);
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void testZipAndDelete() {
+		File zipFile = new File(tempDir, "module.zip");
+
+		ArchiveWriter archiveWriter = new ArchiveWriter();
+		archiveWriter.zipAndDelete(moduleDir, zipFile);
+		archiveWriter.flush();
+
+		assertTrue(zipFile.isFile());
+		assertFalse(moduleDir.exists());
+	}
+
+	@Test
+	public void testDirectoryKeptIfZipFails() {
+		// a directory cannot be opened as zip file
+		File zipFile = new File(tempDir, "module.zip");
+		zipFile.mkdir();
+
+		ArchiveWriter archiveWriter = new ArchiveWriter();
+		archiveWriter.zipAndDelete(moduleDir, zipFile);
+		archiveWriter.flush();
+
+		assertTrue(new File(moduleDir, "module.log").isFile());
+	}
+}
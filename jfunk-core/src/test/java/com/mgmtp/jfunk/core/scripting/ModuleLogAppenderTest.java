@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit test for {@link ModuleLogAppender}.
+ * 
+ */
+public class ModuleLogAppenderTest {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	@Test
+	public void testNestedModules() {
+		ListAppender<ILoggingEvent> outer = createAppender();
+		ListAppender<ILoggingEvent> inner = createAppender();
+
+		log.info("before");
+		ModuleLogAppender.register(outer);
+		log.info("outer");
+		ModuleLogAppender.register(inner);
+		log.info("inner");
+		ModuleLogAppender.unregister();
+		log.info("outer again");
+		ModuleLogAppender.unregister();
+		log.info("after");
+
+		assertThat(messages(outer)).containsExactly("outer", "inner", "outer again");
+		assertThat(messages(inner)).containsExactly("inner");
+	}
+
+	private static ListAppender<ILoggingEvent> createAppender() {
+		ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+		appender.start();
+		return appender;
+	}
+
+	private static List<String> messages(final ListAppender<ILoggingEvent> appender) {
+		return Lists.transform(appender.list, new Function<ILoggingEvent, String>() {
+			@Override
+			public String apply(final ILoggingEvent event) {
+				return event.getMessage();
+			}
+		});
+	}
+}
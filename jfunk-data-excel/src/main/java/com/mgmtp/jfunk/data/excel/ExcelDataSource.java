@@ -26,6 +26,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.inject.Inject;
 
@@ -40,7 +42,11 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 
 import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.mgmtp.jfunk.common.config.ScriptScoped;
 import com.mgmtp.jfunk.common.exception.JFunkException;
 import com.mgmtp.jfunk.common.util.Configuration;
@@ -49,18 +55,34 @@ import com.mgmtp.jfunk.data.DefaultDataSet;
 import com.mgmtp.jfunk.data.excel.ExcelDataSource.ExcelFile.DataOrientation;
 import com.mgmtp.jfunk.data.source.BaseDataSource;
 import com.mgmtp.jfunk.data.source.DataSource;
+import com.mgmtp.jfunk.data.source.SharedRowCursor;
 
 /**
  * {@link DataSource} implementation for reading test data from Excel files.
+ * <p>
+ * If property {@code dataSource.<name>.streaming} is set to {@code true}, .xlsx files are read
+ * using a {@link StreamingExcelFile}, which only parses sheets when they are needed.
+ * </p>
+ * <p>
+ * If property {@code dataSource.<name>.partitioned} is set to {@code true}, each Excel file is
+ * loaded only once per process and shared by all script threads. A {@link SharedRowCursor} per file
+ * and data set key makes sure that each data set is served to exactly one thread.
+ * </p>
  * 
  * @author rnaegele
  */
 @ScriptScoped
 public class ExcelDataSource extends BaseDataSource {
 
+	// Excel files shared by all threads in partitioned mode
+	private static final Cache<String, ExcelFile> SHARED_FILES = CacheBuilder.newBuilder().softValues().build();
+
 	// multiple Excel files may be specified
 	private List<ExcelFile> excelFiles;
 
+	private Boolean streaming;
+	private Boolean partitioned;
+
 	// data set indices for each data set key
 	private final Map<String, MutableInt> dataSetIndices = newHashMap();
 
@@ -96,23 +118,72 @@ public class ExcelDataSource extends BaseDataSource {
 				String doString = configuration.get(baseKey + ".dataOrientation", "rowbased");
 				DataOrientation dataOrientation = DataOrientation.valueOf(doString);
 
-				log.info("Opening Excel file: {}", path);
-				ExcelFile file = new ExcelFile(new File(path), dataOrientation, dataFormatter);
-
-				try {
-					file.load();
-				} catch (InvalidFormatException ex) {
-					throw new JFunkException(ex.getMessage(), ex);
-				} catch (IOException ex) {
-					throw new JFunkException(ex.getMessage(), ex);
-				}
-
+				ExcelFile file = isPartitioned()
+						? getSharedExcelFile(new File(path), dataOrientation)
+						: loadExcelFile(new File(path), dataOrientation);
 				excelFiles.add(file);
 			}
 		}
 		return excelFiles;
 	}
 
+	private ExcelFile loadExcelFile(final File file, final DataOrientation dataOrientation) {
+		log.info("Opening Excel file: {}", file);
+		ExcelFile excelFile = isStreaming() && file.getName().endsWith(".xlsx")
+				? new StreamingExcelFile(file, dataOrientation, dataFormatter)
+				: new ExcelFile(file, dataOrientation, dataFormatter);
+
+		try {
+			excelFile.load();
+		} catch (InvalidFormatException ex) {
+			throw new JFunkException(ex.getMessage(), ex);
+		} catch (IOException ex) {
+			throw new JFunkException(ex.getMessage(), ex);
+		}
+		return excelFile;
+	}
+
+	private ExcelFile getSharedExcelFile(final File file, final DataOrientation dataOrientation) {
+		try {
+			String cacheKey = file.getCanonicalPath() + ":" + file.lastModified() + ":" + dataOrientation + ":"
+					+ isStreaming();
+			return SHARED_FILES.get(cacheKey, new Callable<ExcelFile>() {
+				@Override
+				public ExcelFile call() {
+					return loadExcelFile(file, dataOrientation);
+				}
+			});
+		} catch (IOException ex) {
+			throw new JFunkException(ex.getMessage(), ex);
+		} catch (ExecutionException ex) {
+			throw new JFunkException(ex.getCause().getMessage(), ex.getCause());
+		} catch (UncheckedExecutionException ex) {
+			throw Throwables.propagate(ex.getCause());
+		}
+	}
+
+	protected boolean isStreaming() {
+		if (streaming == null) {
+			streaming = configuration.getBoolean(String.format("dataSource.%s.streaming", getName()), false);
+		}
+		return streaming;
+	}
+
+	protected boolean isPartitioned() {
+		if (partitioned == null) {
+			partitioned = configuration.getBoolean(String.format("dataSource.%s.partitioned", getName()), false);
+		}
+		return partitioned;
+	}
+
+	private SharedRowCursor getSharedCursor(final ExcelFile excelFile, final String dataSetKey) {
+		try {
+			return SharedRowCursor.forFile(getName() + "." + dataSetKey, excelFile.getFile());
+		} catch (IOException ex) {
+			throw new JFunkException(ex.getMessage(), ex);
+		}
+	}
+
 	/**
 	 * Goes through all configured Excel files until data for the specified key is found. All sheets
 	 * of a file a check before the next file is considered.
@@ -120,10 +191,14 @@ public class ExcelDataSource extends BaseDataSource {
 	@Override
 	protected DataSet getNextDataSetImpl(final String dataSetKey) {
 		for (ExcelFile excelFile : getExcelFiles()) {
-			Map<String, List<Map<String, String>>> data = excelFile.getData();
-			List<Map<String, String>> dataList = data.get(dataSetKey);
+			List<Map<String, String>> dataList = excelFile.getDataList(dataSetKey);
 
 			if (dataList != null) {
+				if (isPartitioned()) {
+					int index = getSharedCursor(excelFile, dataSetKey).claim(dataList.size());
+					return index < 0 ? null : new DefaultDataSet(dataList.get(index));
+				}
+
 				MutableInt counter = dataSetIndices.get(dataSetKey);
 				if (counter == null) {
 					counter = new MutableInt(0);
@@ -151,10 +226,13 @@ public class ExcelDataSource extends BaseDataSource {
 	@Override
 	public boolean hasMoreData(final String dataSetKey) {
 		for (ExcelFile excelFile : getExcelFiles()) {
-			Map<String, List<Map<String, String>>> data = excelFile.getData();
-			List<Map<String, String>> dataList = data.get(dataSetKey);
+			List<Map<String, String>> dataList = excelFile.getDataList(dataSetKey);
 
 			if (dataList != null) {
+				if (isPartitioned()) {
+					return getSharedCursor(excelFile, dataSetKey).hasMore(dataList.size());
+				}
+
 				MutableInt counter = dataSetIndices.get(dataSetKey);
 				int size = dataList.size();
 				return counter == null && size > 0 || size > counter.getValue();
@@ -173,9 +251,9 @@ public class ExcelDataSource extends BaseDataSource {
 	 */
 	public static class ExcelFile {
 
-		private final File file;
-		private final DataOrientation dataOrientation;
-		private final DataFormatter dataFormatter;
+		protected final File file;
+		protected final DataOrientation dataOrientation;
+		protected final DataFormatter dataFormatter;
 
 		// lists of data maps by data set key
 		private Map<String, List<Map<String, String>>> data;
@@ -186,7 +264,7 @@ public class ExcelDataSource extends BaseDataSource {
 			this.dataFormatter = dataFormatter;
 		}
 
-		public final void load() throws IOException, InvalidFormatException {
+		public void load() throws IOException, InvalidFormatException {
 			FileInputStream fis = null;
 			Workbook excelWorkbook;
 			try {
@@ -295,6 +373,23 @@ public class ExcelDataSource extends BaseDataSource {
 			return data;
 		}
 
+		/**
+		 * @param dataSetKey
+		 *            the data set key, i. e. the sheet name
+		 * @return the list of data maps for the specified key, or {@code null} if the file does
+		 *         not contain data for the key
+		 */
+		public List<Map<String, String>> getDataList(final String dataSetKey) {
+			return data.get(dataSetKey);
+		}
+
+		/**
+		 * @return the file
+		 */
+		public File getFile() {
+			return file;
+		}
+
 		public static enum DataOrientation {
 			rowbased,
 			columnbased
@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.excel;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.mgmtp.jfunk.common.exception.JFunkException;
+import com.mgmtp.jfunk.data.excel.ExcelDataSource.ExcelFile;
+
+/**
+ * {@link ExcelFile} implementation for .xlsx files that reads sheets with a SAX parser instead of
+ * loading the whole workbook into memory. A sheet is only parsed when data for the data set key of
+ * the same name is requested for the first time. Only raw cell contents are kept in memory, cell
+ * values are formatted when a data set is requested.
+ * <p>
+ * Unlike {@link ExcelFile}, formulas are not evaluated. The results cached in the file are used
+ * instead.
+ * </p>
+ *
+ */
+@ThreadSafe
+public class StreamingExcelFile extends ExcelFile {
+
+	private static final byte TYPE_NUMBER = 0;
+	private static final byte TYPE_SHARED_STRING = 1;
+	private static final byte TYPE_BOOLEAN = 2;
+	private static final byte TYPE_TEXT = 3;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	// null values mark sheets that have not been parsed yet
+	private final Map<String, List<Map<String, String>>> sheets = newHashMap();
+
+	private ReadOnlySharedStringsTable sharedStrings;
+	private StylesTable styles;
+
+	public StreamingExcelFile(final File file, final DataOrientation dataOrientation, final DataFormatter dataFormatter) {
+		super(file, dataOrientation, dataFormatter);
+	}
+
+	/**
+	 * Reads shared strings, styles, and sheet names. Sheets are not parsed here.
+	 */
+	@Override
+	public synchronized void load() throws IOException, InvalidFormatException {
+		OPCPackage pkg = OPCPackage.open(file.getPath(), PackageAccess.READ);
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			sharedStrings = new ReadOnlySharedStringsTable(pkg);
+			styles = reader.getStylesTable();
+
+			sheets.clear();
+			for (XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData(); it.hasNext();) {
+				closeQuietly(it.next());
+				sheets.put(it.getSheetName(), null);
+			}
+		} catch (SAXException ex) {
+			throw new InvalidFormatException(ex.getMessage());
+		} catch (OpenXML4JException ex) {
+			throw new InvalidFormatException(ex.getMessage());
+		} finally {
+			// read-only packages must not be closed
+			pkg.revert();
+		}
+	}
+
+	@Override
+	public synchronized List<Map<String, String>> getDataList(final String dataSetKey) {
+		if (!sheets.containsKey(dataSetKey)) {
+			return null;
+		}
+		List<Map<String, String>> dataList = sheets.get(dataSetKey);
+		if (dataList == null) {
+			try {
+				dataList = parseSheet(dataSetKey);
+			} catch (IOException ex) {
+				throw new JFunkException("Error reading sheet '" + dataSetKey + "' from Excel file: " + file, ex);
+			} catch (InvalidFormatException ex) {
+				throw new JFunkException("Error reading sheet '" + dataSetKey + "' from Excel file: " + file, ex);
+			}
+			sheets.put(dataSetKey, dataList);
+		}
+		return dataList.isEmpty() ? null : dataList;
+	}
+
+	/**
+	 * Parses all sheets that have not been parsed yet.
+	 */
+	@Override
+	public synchronized Map<String, List<Map<String, String>>> getData() {
+		Map<String, List<Map<String, String>>> result = newHashMap();
+		for (String sheetName : newArrayList(sheets.keySet())) {
+			List<Map<String, String>> dataList = getDataList(sheetName);
+			if (dataList != null) {
+				result.put(sheetName, dataList);
+			}
+		}
+		return result;
+	}
+
+	private List<Map<String, String>> parseSheet(final String sheetName) throws IOException, InvalidFormatException {
+		log.info("Reading sheet '{}' from Excel file: {}", sheetName, file);
+
+		OPCPackage pkg = OPCPackage.open(file.getPath(), PackageAccess.READ);
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			for (XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData(); it.hasNext();) {
+				InputStream is = it.next();
+				try {
+					if (sheetName.equals(it.getSheetName())) {
+						SheetHandler handler = new SheetHandler();
+						XMLReader xmlReader = createXmlReader();
+						xmlReader.setContentHandler(handler);
+						xmlReader.parse(new InputSource(is));
+						return handler.createDataList();
+					}
+				} finally {
+					closeQuietly(is);
+				}
+			}
+			return new RawSheet(new RawRow[0]).createDataList();
+		} catch (SAXException ex) {
+			throw new InvalidFormatException(ex.getMessage());
+		} catch (OpenXML4JException ex) {
+			throw new InvalidFormatException(ex.getMessage());
+		} finally {
+			pkg.revert();
+		}
+	}
+
+	private static XMLReader createXmlReader() throws SAXException {
+		try {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			// sheet parts never contain DTDs, so reject them altogether to prevent XXE
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+			factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+			return factory.newSAXParser().getXMLReader();
+		} catch (ParserConfigurationException ex) {
+			throw new SAXException(ex);
+		}
+	}
+
+	private String formatCell(final RawRow row, final int cellIndex) {
+		if (row == null || cellIndex >= row.values.length || row.values[cellIndex] == null) {
+			// blank cell
+			return "";
+		}
+		String value = row.values[cellIndex];
+		switch (row.types[cellIndex]) {
+			case TYPE_SHARED_STRING:
+				return sharedStrings.getEntryAt(Integer.parseInt(value));
+			case TYPE_BOOLEAN:
+				return "1".equals(value) ? "TRUE" : "FALSE";
+			case TYPE_NUMBER:
+				int formatIndex = 0;
+				String formatString = null;
+				if (styles != null) {
+					XSSFCellStyle style = styles.getStyleAt(row.styles[cellIndex]);
+					formatIndex = style.getDataFormat();
+					formatString = style.getDataFormatString();
+				}
+				if (formatString == null) {
+					formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+				}
+				return dataFormatter.formatRawCellContents(Double.parseDouble(value), formatIndex, formatString);
+			default:
+				return value;
+		}
+	}
+
+	/**
+	 * Raw cell contents of a row. The arrays are indexed by column.
+	 */
+	static final class RawRow {
+		final String[] values;
+		final byte[] types;
+		final int[] styles;
+
+		RawRow(final String[] values, final byte[] types, final int[] styles) {
+			this.values = values;
+			this.types = types;
+			this.styles = styles;
+		}
+
+		int getCellCount() {
+			return values.length;
+		}
+	}
+
+	/**
+	 * Raw cell contents of a sheet. Data maps are created from it on demand.
+	 */
+	final class RawSheet {
+		private final RawRow[] rows;
+		private final String[] headers;
+		private final int dataCount;
+
+		RawSheet(final RawRow[] rows) {
+			this.rows = rows;
+
+			if (rows.length < 2) {
+				// sheet has no data, we need at least two rows,
+				// i. e. a header row and at least one data row
+				headers = new String[0];
+				dataCount = 0;
+			} else if (dataOrientation == DataOrientation.rowbased) {
+				RawRow headerRow = rows[0];
+				int cellCount = headerRow == null ? 0 : headerRow.getCellCount();
+				headers = new String[cellCount];
+				for (int i = 0; i < cellCount; ++i) {
+					headers[i] = trimToNull(formatCell(headerRow, i));
+				}
+				dataCount = rows.length - 1;
+			} else {
+				headers = new String[rows.length];
+				int maxCellCount = 0;
+				for (int i = 0; i < rows.length; ++i) {
+					headers[i] = trimToNull(formatCell(rows[i], 0));
+					if (rows[i] != null) {
+						maxCellCount = Math.max(maxCellCount, rows[i].getCellCount());
+					}
+				}
+				dataCount = Math.max(0, maxCellCount - 1);
+			}
+		}
+
+		List<Map<String, String>> createDataList() {
+			return new AbstractList<Map<String, String>>() {
+				@Override
+				public Map<String, String> get(final int index) {
+					if (index < 0 || index >= dataCount) {
+						throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + dataCount);
+					}
+					synchronized (StreamingExcelFile.this) {
+						// DataFormatter is not thread-safe
+						return dataOrientation == DataOrientation.rowbased ? createRowMap(index + 1) : createColumnMap(index + 1);
+					}
+				}
+
+				@Override
+				public int size() {
+					return dataCount;
+				}
+			};
+		}
+
+		private Map<String, String> createRowMap(final int rowIndex) {
+			RawRow row = rows[rowIndex];
+			int cellCount = row == null ? 0 : Math.min(row.getCellCount(), headers.length);
+			Map<String, String> dataMap = newHashMapWithExpectedSize(cellCount);
+			for (int cellIndex = 0; cellIndex < cellCount; ++cellIndex) {
+				String key = headers[cellIndex];
+				if (key != null) {
+					dataMap.put(key, formatCell(row, cellIndex));
+				}
+			}
+			return dataMap;
+		}
+
+		private Map<String, String> createColumnMap(final int cellIndex) {
+			Map<String, String> dataMap = newHashMapWithExpectedSize(rows.length);
+			for (int rowIndex = 0; rowIndex < rows.length; ++rowIndex) {
+				RawRow row = rows[rowIndex];
+				String key = headers[rowIndex];
+				if (key != null && row != null && cellIndex < row.getCellCount()) {
+					dataMap.put(key, formatCell(row, cellIndex));
+				}
+			}
+			return dataMap;
+		}
+	}
+
+	/**
+	 * SAX handler collecting the raw cell contents of a sheet.
+	 */
+	final class SheetHandler extends DefaultHandler {
+		private final List<RawRow> rows = newArrayList();
+
+		private final List<String> values = newArrayList();
+		private final List<Byte> types = newArrayList();
+		private final List<Integer> styleIndices = newArrayList();
+
+		private final StringBuilder text = new StringBuilder();
+		private boolean collectText;
+
+		private int rowIndex = -1;
+		private int cellIndex;
+		private byte cellType;
+		private int cellStyle;
+		private String cellValue;
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+			if ("row".equals(localName)) {
+				String ref = attributes.getValue("r");
+				rowIndex = ref != null ? Integer.parseInt(ref) - 1 : rowIndex + 1;
+				cellIndex = -1;
+				values.clear();
+				types.clear();
+				styleIndices.clear();
+			} else if ("c".equals(localName)) {
+				String ref = attributes.getValue("r");
+				cellIndex = ref != null ? columnIndex(ref) : cellIndex + 1;
+				cellType = toCellType(attributes.getValue("t"));
+				String style = attributes.getValue("s");
+				cellStyle = style != null ? Integer.parseInt(style) : 0;
+				cellValue = null;
+			} else if ("v".equals(localName) || "t".equals(localName)) {
+				// "t" holds the text of inline strings
+				collectText = true;
+				text.setLength(0);
+			}
+		}
+
+		@Override
+		public void characters(final char[] ch, final int start, final int length) {
+			if (collectText) {
+				text.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(final String uri, final String localName, final String qName) {
+			if ("v".equals(localName) || "t".equals(localName)) {
+				collectText = false;
+				cellValue = cellValue == null ? text.toString() : cellValue + text;
+			} else if ("c".equals(localName)) {
+				while (values.size() <= cellIndex) {
+					values.add(null);
+					types.add(TYPE_TEXT);
+					styleIndices.add(0);
+				}
+				values.set(cellIndex, cellValue);
+				types.set(cellIndex, cellType);
+				styleIndices.set(cellIndex, cellStyle);
+			} else if ("row".equals(localName)) {
+				int cellCount = values.size();
+				byte[] typeArray = new byte[cellCount];
+				int[] styleArray = new int[cellCount];
+				for (int i = 0; i < cellCount; ++i) {
+					typeArray[i] = types.get(i);
+					styleArray[i] = styleIndices.get(i);
+				}
+				while (rows.size() <= rowIndex) {
+					rows.add(null);
+				}
+				rows.set(rowIndex, new RawRow(values.toArray(new String[cellCount]), typeArray, styleArray));
+			}
+		}
+
+		List<Map<String, String>> createDataList() {
+			return new RawSheet(rows.toArray(new RawRow[rows.size()])).createDataList();
+		}
+
+		private byte toCellType(final String type) {
+			if (type == null || "n".equals(type)) {
+				return TYPE_NUMBER;
+			}
+			if ("s".equals(type)) {
+				return TYPE_SHARED_STRING;
+			}
+			if ("b".equals(type)) {
+				return TYPE_BOOLEAN;
+			}
+			// inline strings, formula strings, and errors are used as is
+			return TYPE_TEXT;
+		}
+
+		private int columnIndex(final String cellRef) {
+			int result = 0;
+			for (int i = 0; i < cellRef.length(); ++i) {
+				char c = cellRef.charAt(i);
+				if (c < 'A' || c > 'Z') {
+					break;
+				}
+				result = result * 26 + c - 'A' + 1;
+			}
+			return result - 1;
+		}
+	}
+}
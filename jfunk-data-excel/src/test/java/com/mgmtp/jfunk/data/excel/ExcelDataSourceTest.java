@@ -70,6 +70,16 @@ public class ExcelDataSourceTest {
 		assertThat(actualData).isEqualTo(expectedData);
 	}
 
+	private void testStreamingExcelFile(final String path, final DataOrientation dataOrientation)
+			throws InvalidFormatException, IOException {
+		ExcelFile excelFile = new StreamingExcelFile(new File(path), dataOrientation, new DataFormatter());
+		excelFile.load();
+		assertThat(excelFile.getDataList("sheet_1")).isEqualTo(expectedData.get("sheet_1"));
+		assertThat(excelFile.getDataList("unknown")).isNull();
+		Map<String, List<Map<String, String>>> actualData = excelFile.getData();
+		assertThat(actualData).isEqualTo(expectedData);
+	}
+
 	private void testGetNextDataSet(final String path, final DataOrientation dataOrientation) {
 		ExcelDataSource ds = createDataSource(path, dataOrientation);
 
@@ -107,6 +117,16 @@ public class ExcelDataSourceTest {
 		testExcelFile("src/test/resources/columnbased.xlsx", DataOrientation.columnbased);
 	}
 
+	@Test
+	public void testRowBasedStreamingExcelFile() throws InvalidFormatException, IOException {
+		testStreamingExcelFile("src/test/resources/rowbased.xlsx", DataOrientation.rowbased);
+	}
+
+	@Test
+	public void testColBasedStreamingExcelFile() throws InvalidFormatException, IOException {
+		testStreamingExcelFile("src/test/resources/columnbased.xlsx", DataOrientation.columnbased);
+	}
+
 	@Test
 	public void testGetNextDataSetRowBased() {
 		testGetNextDataSet("src/test/resources/rowbased.xlsx", DataOrientation.rowbased);
@@ -15,32 +15,19 @@
  */
 package com.mgmtp.jfunk.data.generator;
 
-import static org.apache.commons.io.FileUtils.toFile;
-import static org.apache.commons.io.FilenameUtils.removeExtension;
-import static org.apache.commons.io.IOUtils.closeQuietly;
-
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URI;
 import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
-import org.jdom.input.SAXBuilder;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
 
-import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.inject.Injector;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.util.Configuration;
-import com.mgmtp.jfunk.common.util.ResourceLoader;
 import com.mgmtp.jfunk.data.generator.constraint.Constraint;
 import com.mgmtp.jfunk.data.generator.constraint.ConstraintFactory;
 import com.mgmtp.jfunk.data.generator.control.ControlFactory;
@@ -48,15 +35,15 @@ import com.mgmtp.jfunk.data.generator.data.IndexedFields;
 import com.mgmtp.jfunk.data.generator.exception.IdNotFoundException;
 import com.mgmtp.jfunk.data.generator.field.FieldFactory;
 import com.mgmtp.jfunk.data.generator.util.CharacterSet;
-import com.mgmtp.jfunk.data.generator.util.XMLTags;
 
 /**
  * The jFunk data generator provides an easy way to generate data which can then be used to fill web
  * forms. The data generation is performed on-the-fly during the test execution. This class is the
  * starting point for generating data. The method {@link #parseXml(IndexedFields)} reads a XML based
- * configuration file and initializes all constraint- and field objects. Constraint objects can be
- * obtained using {@link #getConstraint(String)}. All available constraints can be found in the
- * subpackage {@code constraint}.
+ * configuration file and initializes all constraint- and field objects. The parsed file is shared
+ * process-wide (see {@link GeneratorModel}), while constraint objects are created per generator.
+ * Constraint objects can be obtained using {@link #getConstraint(String)}. All available
+ * constraints can be found in the subpackage {@code constraint}.
  * 
  */
 public class Generator {
@@ -96,42 +83,15 @@ public class Generator {
 			LOGGER.info("No generator configuration file found");
 			return;
 		}
-		SAXBuilder builder = new SAXBuilder();
-		builder.setValidation(true);
-		builder.setIgnoringElementContentWhitespace(false);
-		builder.setFeature("http://apache.org/xml/features/validation/schema/normalized-value", false);
-		builder.setEntityResolver(new EntityResolver() {
-			@Override
-			public InputSource resolveEntity(final String publicId, final String systemId) throws IOException {
-				String resolvedSystemId = configuration.processPropertyValue(systemId);
-				URI uri = URI.create(resolvedSystemId);
-				File file = uri.isAbsolute() ? toFile(uri.toURL()) : new File(uri.toString());
-				return new InputSource(ResourceLoader.getBufferedReader(file, Charsets.UTF_8.name()));
-			}
-		});
-
-		InputStream in = ResourceLoader.getConfigInputStream(generatorFile);
-		Document doc = null;
-		try {
-			String systemId = ResourceLoader.getConfigDir() + '/' + removeExtension(generatorFile) + ".dtd";
-			doc = builder.build(in, systemId);
-			Element root = doc.getRootElement();
-
-			Element charsetsElement = root.getChild(XMLTags.CHARSETS);
-			@SuppressWarnings("unchecked")
-			List<Element> charsetElements = charsetsElement.getChildren(XMLTags.CHARSET);
-			for (Element element : charsetElements) {
-				CharacterSet.initCharacterSet(element);
-			}
-
-			@SuppressWarnings("unchecked")
-			List<Element> constraintElements = root.getChild(XMLTags.CONSTRAINTS).getChildren(XMLTags.CONSTRAINT);
-			constraints = Lists.newArrayListWithExpectedSize(constraintElements.size());
-			for (Element element : constraintElements) {
-				constraints.add(constraintFactory.createModel(random, element));
-			}
-		} finally {
-			closeQuietly(in);
+		GeneratorModel model = GeneratorModel.forFile(generatorFile, configuration);
+		for (CharacterSet characterSet : model.getCharacterSets()) {
+			CharacterSet.registerCharacterSet(characterSet);
+		}
+
+		List<Element> constraintElements = model.getConstraintElements();
+		constraints = Lists.newArrayListWithExpectedSize(constraintElements.size());
+		for (Element element : constraintElements) {
+			constraints.add(constraintFactory.createModel(random, element));
 		}
 
 		LOGGER.info("Generator was successfully initialized");
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator;
+
+import static org.apache.commons.io.FileUtils.toFile;
+import static org.apache.commons.io.FilenameUtils.removeExtension;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.log4j.Logger;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.common.util.ResourceLoader;
+import com.mgmtp.jfunk.data.generator.util.CharacterSet;
+import com.mgmtp.jfunk.data.generator.util.XMLTags;
+
+/**
+ * The parsed and validated generator configuration file. Parsing the file against its DTD is
+ * expensive, so models are cached process-wide by the file's path and modification time and shared
+ * by all {@link Generator} instances. A file is only parsed again if it or its DTD changes. Since
+ * system ids of entities may contain configuration properties, a model also remembers the files its
+ * entities were resolved to and is only reused if they resolve to the same, unmodified files.
+ * <p>
+ * A model holds the immutable parts of the configuration only, i. e. the {@link CharacterSet
+ * character sets} and the constraint elements. Constraints carry per-script state and are created
+ * from the shared elements by each generator. The elements must therefore be treated as read-only.
+ * </p>
+ *
+ */
+@ThreadSafe
+public final class GeneratorModel {
+
+	private static final Logger LOG = Logger.getLogger(GeneratorModel.class);
+
+	private static final Cache<String, GeneratorModel> MODELS = CacheBuilder.newBuilder().softValues().build();
+
+	private final List<CharacterSet> characterSets;
+	private final List<Element> constraintElements;
+	private final Map<String, String> entityVersions;
+
+	private GeneratorModel(final Document doc, final Map<String, String> entityVersions) throws IOException {
+		this.entityVersions = ImmutableMap.copyOf(entityVersions);
+		Element root = doc.getRootElement();
+
+		@SuppressWarnings("unchecked")
+		List<Element> charsetElements = root.getChild(XMLTags.CHARSETS).getChildren(XMLTags.CHARSET);
+		ImmutableList.Builder<CharacterSet> charsetBuilder = ImmutableList.builder();
+		for (Element element : charsetElements) {
+			charsetBuilder.add(CharacterSet.parseCharacterSet(element));
+		}
+		characterSets = charsetBuilder.build();
+
+		@SuppressWarnings("unchecked")
+		List<Element> elements = root.getChild(XMLTags.CONSTRAINTS).getChildren(XMLTags.CONSTRAINT);
+		constraintElements = ImmutableList.copyOf(elements);
+	}
+
+	/**
+	 * Returns the model for the specified generator configuration file. The file is only parsed if
+	 * it has not been parsed before, if it or its DTD was modified since or if its entities resolve
+	 * to different or modified files with the specified configuration.
+	 *
+	 * @param generatorFile
+	 *            the generator configuration file, relative to the config directory
+	 * @param configuration
+	 *            the configuration used to resolve the system ids of the DTD and the entities
+	 * @return the model
+	 */
+	public static GeneratorModel forFile(final String generatorFile, final Configuration configuration) throws IOException,
+			JDOMException {
+		final String dtdFile = removeExtension(generatorFile) + ".dtd";
+		String key = versionKey(ResourceLoader.getConfigFile(generatorFile)) + '|'
+				+ versionKey(ResourceLoader.getConfigFile(dtdFile));
+		GeneratorModel model;
+		try {
+			model = MODELS.get(key, new Callable<GeneratorModel>() {
+				@Override
+				public GeneratorModel call() throws IOException, JDOMException {
+					return load(generatorFile, dtdFile, configuration);
+				}
+			});
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof JDOMException) {
+				throw (JDOMException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		if (!model.isUpToDate(configuration)) {
+			model = load(generatorFile, dtdFile, configuration);
+			MODELS.put(key, model);
+		}
+		return model;
+	}
+
+	private static GeneratorModel load(final String generatorFile, final String dtdFile, final Configuration configuration)
+			throws IOException, JDOMException {
+		Map<String, String> entityVersions = Maps.newLinkedHashMap();
+		Document doc = parse(generatorFile, ResourceLoader.getConfigDir() + '/' + dtdFile, configuration, entityVersions);
+		return new GeneratorModel(doc, entityVersions);
+	}
+
+	/**
+	 * Checks whether the entities of this model resolve to the same, unmodified files with the
+	 * specified configuration.
+	 */
+	private boolean isUpToDate(final Configuration configuration) throws IOException {
+		for (Map.Entry<String, String> entry : entityVersions.entrySet()) {
+			if (!entry.getValue().equals(versionKey(resolveEntityFile(entry.getKey(), configuration)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Discards all cached models, so configuration files are parsed again on next access.
+	 */
+	public static void clearCache() {
+		MODELS.invalidateAll();
+	}
+
+	/**
+	 * Creates a key which identifies the current version of a file. Files which are not found in
+	 * the file system, e. g. because they are loaded from the classpath, are expected not to
+	 * change.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the path of the file and its modification time, if any
+	 */
+	public static String versionKey(final File file) {
+		try {
+			return file.getCanonicalPath() + '@' + file.lastModified();
+		} catch (IOException ex) {
+			return file.getAbsolutePath() + '@' + file.lastModified();
+		}
+	}
+
+	private static File resolveEntityFile(final String entitySystemId, final Configuration configuration) throws IOException {
+		String resolvedSystemId = configuration.processPropertyValue(entitySystemId);
+		URI uri = URI.create(resolvedSystemId);
+		return uri.isAbsolute() ? toFile(uri.toURL()) : new File(uri.toString());
+	}
+
+	private static Document parse(final String generatorFile, final String systemId, final Configuration configuration,
+			final Map<String, String> entityVersions) throws IOException, JDOMException {
+		LOG.info("Parsing generator configuration file " + generatorFile);
+
+		SAXBuilder builder = new SAXBuilder();
+		builder.setValidation(true);
+		builder.setIgnoringElementContentWhitespace(false);
+		builder.setFeature("http://apache.org/xml/features/validation/schema/normalized-value", false);
+		builder.setEntityResolver(new EntityResolver() {
+			@Override
+			public InputSource resolveEntity(final String publicId, final String entitySystemId) throws IOException {
+				File file = resolveEntityFile(entitySystemId, configuration);
+				entityVersions.put(entitySystemId, versionKey(file));
+				return new InputSource(ResourceLoader.getBufferedReader(file, Charsets.UTF_8.name()));
+			}
+		});
+
+		InputStream in = ResourceLoader.getConfigInputStream(generatorFile);
+		try {
+			return builder.build(in, systemId);
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * @return the character sets defined in the configuration file
+	 */
+	public List<CharacterSet> getCharacterSets() {
+		return characterSets;
+	}
+
+	/**
+	 * @return the read-only constraint elements defined in the configuration file
+	 */
+	public List<Element> getConstraintElements() {
+		return constraintElements;
+	}
+}
@@ -22,11 +22,13 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 import org.jdom.Attribute;
 import org.jdom.Element;
 
+import com.google.common.collect.Maps;
 import com.google.inject.Injector;
 import com.mgmtp.jfunk.common.exception.JFunkException;
 import com.mgmtp.jfunk.common.random.MathRandom;
@@ -43,6 +45,12 @@ import com.mgmtp.jfunk.data.generator.util.XMLTags;
  */
 public final class ConstraintFactory {
 
+	/**
+	 * Constraint constructors by class attribute. Generators are created per script from the
+	 * same configuration, so the reflective lookup is done only once per class.
+	 */
+	private static final ConcurrentMap<String, Constructor<? extends Constraint>> CONSTRUCTORS = Maps.newConcurrentMap();
+
 	private final Map<String, Constraint> map;
 	private final Generator generator;
 	private static final Logger LOG = Logger.getLogger(ConstraintFactory.class);
@@ -66,8 +74,15 @@ public final class ConstraintFactory {
 		Class<? extends Constraint> classObject = null;
 		Constraint object = null;
 		try {
-			classObject = getClassObject(element);
-			Constructor<? extends Constraint> constructor = getConstructor(classObject);
+			String className = element.getAttributeValue(XMLTags.CLASS);
+			Constructor<? extends Constraint> constructor = CONSTRUCTORS.get(className);
+			if (constructor == null) {
+				classObject = getClassObject(className);
+				constructor = getConstructor(classObject);
+				CONSTRUCTORS.putIfAbsent(className, constructor);
+			} else {
+				classObject = constructor.getDeclaringClass();
+			}
 			object = getObject(random, element, constructor);
 		} catch (InvocationTargetException ex) {
 			throw new JFunkException("Could not initialise object of class " + classObject, ex.getCause());
@@ -126,12 +141,12 @@ public final class ConstraintFactory {
 	}
 
 	/**
-	 * This method returns the class object of which a new instance shall be generated. To achieve
-	 * this the class attribute of the passed element will be used to determine the class name
+	 * This method returns the class object of which a new instance shall be generated. The class name
+	 * is taken from the class attribute of the element.
 	 */
-	private Class<? extends Constraint> getClassObject(final Element element) throws ClassNotFoundException {
-		String className = element.getAttributeValue(XMLTags.CLASS);
-		className = className.indexOf('.') > 0 ? className : getClass().getPackage().getName() + '.' + className;
+	private Class<? extends Constraint> getClassObject(final String classAttribute) throws ClassNotFoundException {
+		String className = classAttribute.indexOf('.') > 0 ? classAttribute : getClass().getPackage().getName() + '.'
+				+ classAttribute;
 		return Class.forName(className).asSubclass(Constraint.class);
 
 	}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.constraint;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Compact set of strings which stores 64 bit fingerprints of its elements in an open addressing
+ * hash table, i. e. it needs 8 to 16 bytes per element independent of the length of the strings.
+ * <p>
+ * Two different strings are only considered equal if their fingerprints collide. Thus,
+ * {@link #add(String)} never accepts a string which was added before, but in very rare cases it
+ * may reject a string which was not. This is sufficient for values that are only required to be
+ * unique and can be generated again.
+ * </p>
+ * 
+ */
+final class FingerprintSet {
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Fingerprints; 0 denotes an empty slot
+	 */
+	private long[] table = new long[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * Adds a string to the set.
+	 * 
+	 * @param value
+	 *            the string
+	 * @return {@code true} if the string was added, {@code false} if it (or a string with the same
+	 *         fingerprint) is already contained
+	 */
+	boolean add(final String value) {
+		long fingerprint = HASH_FUNCTION.hashString(value, Charsets.UTF_8).asLong();
+		if (fingerprint == 0L) {
+			fingerprint = 1L;
+		}
+		if (2 * (size + 1) > table.length) {
+			resize();
+		}
+		if (!insert(table, fingerprint)) {
+			return false;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * @return the number of strings in the set
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all strings and releases the memory of the set.
+	 */
+	void clear() {
+		table = new long[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	private void resize() {
+		long[] newTable = new long[table.length * 2];
+		for (long fingerprint : table) {
+			if (fingerprint != 0L) {
+				insert(newTable, fingerprint);
+			}
+		}
+		table = newTable;
+	}
+
+	private static boolean insert(final long[] table, final long fingerprint) {
+		int mask = table.length - 1;
+		// linear probing starting at a slot derived from the fingerprint
+		for (int i = (int) (fingerprint >>> 32) & mask;; i = i + 1 & mask) {
+			long current = table[i];
+			if (current == 0L) {
+				table[i] = fingerprint;
+				return true;
+			}
+			if (current == fingerprint) {
+				return false;
+			}
+		}
+	}
+}
@@ -15,14 +15,17 @@
  */
 package com.mgmtp.jfunk.data.generator.constraint;
 
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Map;
 
 import org.jdom.Element;
 
+import com.google.common.collect.Maps;
+
 import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.common.random.RandomPermutation;
 import com.mgmtp.jfunk.data.generator.Generator;
 import com.mgmtp.jfunk.data.generator.control.FieldCase;
+import com.mgmtp.jfunk.data.generator.field.Field;
 
 /**
  * A constraint that takes care that the values of the embedded field object are always unique.
@@ -41,40 +44,89 @@ import com.mgmtp.jfunk.data.generator.control.FieldCase;
  * 
  * There can be 26 different values for c1, more runs would result in an exception being thrown as
  * the values would not be unique anymore.
+ * </p>
+ * <p>
+ * If the field can enumerate its values (see {@link Field#countValues()}) and there are at most
+ * {@value #MAX_ENUMERATED_VALUES} of them, values without forbidden characters are drawn without
+ * replacement in random order. Only values matching the size of the current case are drawn (see
+ * {@link Field#isValueFor(String, FieldCase)}), so e. g. minimum and maximum length cases are
+ * respected. Otherwise values are generated until a new one is found, which
+ * rarely takes more than one attempt for large value spaces. Values already returned are kept as
+ * fingerprints, so memory consumption is small even for many values.
+ * </p>
  * 
  */
 public class UniqueValues extends FieldContainer {
 
-	private final Set<String> set;
+	/**
+	 * The maximum number of values of a field which are enumerated instead of generated.
+	 */
+	public static final long MAX_ENUMERATED_VALUES = 1L << 20;
+
+	private static final int MAX_ATTEMPTS = 10000;
+
+	private final FingerprintSet set;
+	private RandomPermutation permutation;
+	// the position in the permutation up to which values have been drawn, per case size
+	private final Map<Integer, Long> positions = Maps.newHashMap();
 
 	public UniqueValues(final MathRandom random, final Element element, final Generator generator) {
 		super(random, element, generator);
-		set = new TreeSet<String>();
+		set = new FingerprintSet();
 	}
 
 	/**
-	 * Calls initValuesImpl on the super class. If the returned value is already in the list of
-	 * values initValuesImpl is called again. This happens up to 10000 times. If a new value is
-	 * found it is stored in the set.
+	 * Returns a value that was not returned before. For small value spaces the next value of the
+	 * requested size is enumerated, otherwise initValuesImpl is called on the super class up to
+	 * 10000 times until a new value is found.
 	 */
 	@Override
 	protected String initValuesImpl(final FieldCase ca) {
 		if (ca == FieldCase.NULL || ca == FieldCase.BLANK) {
 			return null;
 		}
-		String s = super.initValuesImpl(ca);
-		int counter = 10000;
-		while (set.contains(s) && counter > 0) {
-			s = super.initValuesImpl(ca);
-			counter--;
+		FieldCase c = control.getNext(ca);
+		if (c != FieldCase.NULL && c != FieldCase.BLANK && !c.isNegative() && !c.isBad()) {
+			long count = field.countValues();
+			if (count > 0 && count <= MAX_ENUMERATED_VALUES) {
+				String value = nextEnumeratedValue(count, c);
+				if (value != null) {
+					return value;
+				}
+				// all values of this size have been used, but the field may adjust the size
+			}
 		}
-		if (counter == 0) {
-			throw new IllegalStateException("Could not generate unique value");
+		String s = field.getString(c);
+		int counter = MAX_ATTEMPTS;
+		while (!set.add(s)) {
+			if (--counter == 0) {
+				throw new IllegalStateException("Could not generate unique value");
+			}
+			s = super.initValuesImpl(ca);
 		}
-		set.add(s);
 		return s;
 	}
 
+	private String nextEnumeratedValue(final long count, final FieldCase c) {
+		if (permutation == null || permutation.size() != count) {
+			permutation = new RandomPermutation(random, count);
+			positions.clear();
+		}
+		Long start = positions.get(c.getSize());
+		long position = start == null ? 0L : start;
+		try {
+			while (position < count) {
+				String s = field.getValue(permutation.get(position++));
+				if (field.isValueFor(s, c) && set.add(s)) {
+					return s;
+				}
+			}
+			return null;
+		} finally {
+			positions.put(c.getSize(), position);
+		}
+	}
+
 	/**
 	 * Calls resetCase on the super class and erases all entries in the value set.
 	 */
@@ -82,5 +134,7 @@ public class UniqueValues extends FieldContainer {
 	public void resetCase() {
 		super.resetCase();
 		set.clear();
+		permutation = null;
+		positions.clear();
 	}
 }
\ No newline at end of file
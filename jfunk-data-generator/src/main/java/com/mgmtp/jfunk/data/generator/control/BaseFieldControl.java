@@ -58,7 +58,7 @@ public abstract class BaseFieldControl implements FieldControl {
 		if (caseStack == null || caseStack.isEmpty()) {
 			caseStack = createCases();
 			if (shuffle) {
-				Collections.shuffle(caseStack);
+				Collections.shuffle(caseStack, random.getRandom());
 			}
 		}
 		return caseStack;
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.data;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.common.config.ScriptScoped;
+import com.mgmtp.jfunk.common.config.ThreadScope;
+import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.data.DataSet;
+import com.mgmtp.jfunk.data.generator.Generator;
+import com.mgmtp.jfunk.data.generator.GeneratorConstants;
+import com.mgmtp.jfunk.data.source.CsvDataSetWriter;
+
+/**
+ * Generates large numbers of data sets in parallel, e. g. in order to prepare load tests. Data sets
+ * are generated in chunks of {@value #CHUNK_SIZE}. Each chunk is generated by its own
+ * {@link Generator} with its own {@link MathRandom}, whose seed is derived from the configured seed
+ * (see {@link JFunkConstants#RANDOM_SEED}) and the index of the chunk. Thus, the generated data
+ * only depends on the seed and not on the number of threads.
+ * <p>
+ * Generated data sets may be written to a CSV file (see {@link #generateCsv(String, int, File)}),
+ * which can be replayed by configuring it for a {@code CsvDataSource}, e. g.
+ * {@code dataSource.csv.<key>=<file>}.
+ * </p>
+ * <p>
+ * Fixed values are not supported. The generator threads enter the {@link ScriptScoped script
+ * scope} sharing the caller's {@link Configuration}, which must not be modified while data sets are
+ * generated.
+ * </p>
+ *
+ */
+public class BatchGenerator {
+
+	public static final Logger LOG = Logger.getLogger(BatchGenerator.class);
+
+	/**
+	 * The number of data sets generated by one generator.
+	 */
+	public static final int CHUNK_SIZE = 64;
+
+	/**
+	 * Seconds after which idle generator threads terminate, so threads of abandoned iterators do
+	 * not stay around.
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 10L;
+
+	private final Configuration configuration;
+	private final FormDataFactory formDataFactory;
+	private final Injector injector;
+	private final ThreadScope scriptScope;
+
+	@Inject
+	public BatchGenerator(final Configuration configuration, final FormDataFactory formDataFactory, final Injector injector,
+			final ThreadScope scriptScope) {
+		this.configuration = configuration;
+		this.formDataFactory = formDataFactory;
+		this.injector = injector;
+		this.scriptScope = scriptScope;
+	}
+
+	/**
+	 * Generates data sets using as many threads as processors are available.
+	 *
+	 * @see #generate(String, int, int)
+	 */
+	public Iterator<DataSet> generate(final String key, final int count) {
+		return generate(key, count, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Generates data sets in parallel. Chunks are generated ahead of the returned iterator, the
+	 * number of chunks generated but not yet consumed is limited to twice the number of threads.
+	 * The threads terminate when the iterator is exhausted or, if it is abandoned, after being idle
+	 * for {@value #KEEP_ALIVE_SECONDS} seconds.
+	 *
+	 * @param key
+	 *            the data set key, i. e. the prefix of the constraint ids
+	 * @param count
+	 *            the number of data sets to generate
+	 * @param threads
+	 *            the number of threads to generate data sets with
+	 * @return an iterator over the data sets in a reproducible order
+	 */
+	public Iterator<DataSet> generate(final String key, final int count, final int threads) {
+		checkArgument(count >= 0, "count must not be negative");
+		checkArgument(threads > 0, "threads must be positive");
+
+		String seedString = configuration.get(JFunkConstants.RANDOM_SEED, false);
+		long baseSeed = seedString == null ? MathRandom.nextSeed() : Long.parseLong(seedString);
+		LOG.info("Generating " + count + " data sets for key " + key + " with base seed " + baseSeed);
+
+		String indexedFieldsFile = configuration.get(GeneratorConstants.INDEXED_FIELDS_FILE);
+		IndexedFields indexedFields;
+		try {
+			indexedFields = indexedFieldsFile != null ? GeneratorDataSource.getIndexedFields(indexedFieldsFile) : new IndexedFields();
+		} catch (Exception ex) {
+			throw new IllegalStateException("Error initializing generator.", ex);
+		}
+
+		return new BatchIterator(key, count, threads, baseSeed, indexedFields);
+	}
+
+	/**
+	 * Generates data sets in parallel and writes them to a CSV file.
+	 *
+	 * @param key
+	 *            the data set key, i. e. the prefix of the constraint ids
+	 * @param count
+	 *            the number of data sets to generate
+	 * @param file
+	 *            the CSV file
+	 * @return the number of data sets written
+	 * @see CsvDataSetWriter
+	 */
+	public int generateCsv(final String key, final int count, final File file) throws IOException {
+		return CsvDataSetWriter.write(generate(key, count), file);
+	}
+
+	private List<DataSet> generateChunk(final String key, final long seed, final int size, final IndexedFields indexedFields)
+			throws Exception {
+		// constraints and fields use the random generator of the current thread's state
+		GeneratorState.currentState().initMathRandom(seed);
+
+		boolean ignoreOptionalConstraints = configuration.getBoolean(JFunkConstants.IGNORE_CONSTRAINT_OPTIONAL);
+		Generator generator = new Generator(new MathRandom(seed), ignoreOptionalConstraints, configuration, injector);
+		generator.parseXml(indexedFields);
+		generator.setTestmode(StringUtils.isNotEmpty(configuration.get(JFunkConstants.TESTMERKER)));
+
+		Map<String, Map<String, String>> fixedValues = Collections.emptyMap();
+		List<DataSet> result = Lists.newArrayListWithCapacity(size);
+		for (int i = 0; i < size; ++i) {
+			result.add(GeneratorDataSource.generateDataSet(generator, formDataFactory, key, fixedValues));
+		}
+		return result;
+	}
+
+	private final class BatchIterator extends AbstractIterator<DataSet> {
+		private final String key;
+		private final int count;
+		private final long baseSeed;
+		private final IndexedFields indexedFields;
+		private final ThreadPoolExecutor executor;
+		private final Queue<Future<List<DataSet>>> pending = new LinkedList<Future<List<DataSet>>>();
+		private final int chunkCount;
+		private int nextChunk;
+		private Iterator<DataSet> current = Collections.<DataSet>emptyList().iterator();
+
+		BatchIterator(final String key, final int count, final int threads, final long baseSeed, final IndexedFields indexedFields) {
+			this.key = key;
+			this.count = count;
+			this.baseSeed = baseSeed;
+			this.indexedFields = indexedFields;
+			this.chunkCount = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+			this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactoryBuilder().setNameFormat("batch-generator-%d").setDaemon(true).build());
+			executor.allowCoreThreadTimeOut(true);
+
+			for (int i = 0; i < 2 * threads; ++i) {
+				submitNextChunk();
+			}
+		}
+
+		private void submitNextChunk() {
+			if (nextChunk == chunkCount) {
+				return;
+			}
+			final long seed = MathRandom.deriveSeed(baseSeed, nextChunk);
+			final int size = Math.min(CHUNK_SIZE, count - nextChunk * CHUNK_SIZE);
+			pending.add(executor.submit(new Callable<List<DataSet>>() {
+				@Override
+				public List<DataSet> call() throws Exception {
+					// form data and constraints look up the script scoped configuration
+					scriptScope.enterScope(ImmutableMap.<Key<?>, Object>of(Key.get(Configuration.class), configuration));
+					try {
+						return generateChunk(key, seed, size, indexedFields);
+					} finally {
+						scriptScope.exitScope();
+					}
+				}
+			}));
+			nextChunk++;
+		}
+
+		@Override
+		protected DataSet computeNext() {
+			while (!current.hasNext()) {
+				Future<List<DataSet>> future = pending.poll();
+				if (future == null) {
+					executor.shutdown();
+					return endOfData();
+				}
+				submitNextChunk();
+				try {
+					current = Uninterruptibles.getUninterruptibly(future).iterator();
+				} catch (ExecutionException ex) {
+					executor.shutdownNow();
+					throw new IllegalStateException("Error generating data sets for key " + key, ex.getCause());
+				}
+			}
+			return current.next();
+		}
+	}
+}
@@ -15,11 +15,16 @@
  */
 package com.mgmtp.jfunk.data.generator.data;
 
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.inject.Provider;
 
@@ -27,8 +32,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.jdom.Document;
 import org.jdom.Element;
+import org.jdom.JDOMException;
 import org.jdom.input.SAXBuilder;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.mgmtp.jfunk.common.JFunkConstants;
@@ -39,6 +47,7 @@ import com.mgmtp.jfunk.data.DataSet;
 import com.mgmtp.jfunk.data.DefaultDataSet;
 import com.mgmtp.jfunk.data.generator.Generator;
 import com.mgmtp.jfunk.data.generator.GeneratorConstants;
+import com.mgmtp.jfunk.data.generator.GeneratorModel;
 import com.mgmtp.jfunk.data.generator.constraint.Constraint;
 import com.mgmtp.jfunk.data.generator.constraint.base.BaseConstraint;
 import com.mgmtp.jfunk.data.source.BaseDataSource;
@@ -53,6 +62,8 @@ public final class GeneratorDataSource extends BaseDataSource {
 
 	public static final Logger LOG = Logger.getLogger(GeneratorDataSource.class);
 
+	private static final Cache<String, IndexedFields> INDEXED_FIELDS = CacheBuilder.newBuilder().softValues().build();
+
 	private Generator generator;
 	private final FormDataFactory formDataFactory;
 	private final Provider<Generator> generatorProvider;
@@ -67,12 +78,22 @@ public final class GeneratorDataSource extends BaseDataSource {
 
 	@Override
 	protected DataSet getNextDataSetImpl(final String key) {
+		Generator gen = getGenerator();
+		gen.setTestmode(StringUtils.isNotEmpty(configuration.get(JFunkConstants.TESTMERKER)));
+		getFormDataKeys(); // Makes sure fixed values are loaded
+		return generateDataSet(gen, formDataFactory, key, fixedValues);
+	}
+
+	/**
+	 * Generates a new data set for the specified key using the specified generator.
+	 */
+	static DataSet generateDataSet(final Generator gen, final FormDataFactory formDataFactory, final String key,
+			final Map<String, Map<String, String>> fixedValues) {
 		try {
 			/*
 			 * Reset the value callback in the constraints so we don't remember some old value from
 			 * a previous run. If we do want a fixed value it is handled in the DataSet.
 			 */
-			Generator gen = getGenerator();
 			Collection<String> ids = gen.getConstraintIds();
 			int counter = 0;
 			for (String id : ids) {
@@ -89,8 +110,6 @@ public final class GeneratorDataSource extends BaseDataSource {
 				LOG.warn("The constraint " + key
 						+ ".all did not contain any subconstraints so no data will be generated. Please check your generator configuration.");
 			}
-			gen.setTestmode(StringUtils.isNotEmpty(configuration.get(JFunkConstants.TESTMERKER)));
-			getFormDataKeys(); // Makes sure fixed values are loaded
 			FormData data = formDataFactory.create(key, gen, fixedValues);
 
 			DataSet ds = new DefaultDataSet();
@@ -116,7 +135,7 @@ public final class GeneratorDataSource extends BaseDataSource {
 	 * Check DataSet for indexed entries and remove all keys without index if indexed entries with
 	 * the same name exist.
 	 */
-	private void cleanUp(final DataSet ds) {
+	private static void cleanUp(final DataSet ds) {
 		Set<String> indexedKeys = Sets.newHashSet();
 		for (String key : ds.getDataView().keySet()) {
 			// Search for indexed entries
@@ -163,33 +182,7 @@ public final class GeneratorDataSource extends BaseDataSource {
 			generator = generatorProvider.get();
 
 			try {
-				// Load configuration for indexed fields
-				SAXBuilder builder = new SAXBuilder();
-				IndexedFields indexedFields = new IndexedFields();
-
-				if (indexedFieldsFile != null) {
-					Document doc = builder.build(ResourceLoader.getConfigInputStream(indexedFieldsFile));
-
-					@SuppressWarnings("unchecked")
-					List<Element> elements = doc.getRootElement().getChildren("field-set");
-					for (Element fieldSetElem : elements) {
-						String id = fieldSetElem.getAttributeValue("id");
-						String dataKey = fieldSetElem.getAttributeValue("dataKey");
-						String dependsOn = fieldSetElem.getAttributeValue("dependsOn", "");
-						FieldSet fieldSet = new FieldSet(id, dataKey, dependsOn);
-						indexedFields.addFieldSet(fieldSet);
-
-						@SuppressWarnings("unchecked")
-						List<Element> fieldElems = fieldSetElem.getChildren("field");
-						for (Element fieldElem : fieldElems) {
-							String fieldId = fieldElem.getAttributeValue("id");
-							boolean unique = Boolean.parseBoolean(fieldElem.getAttributeValue("unique"));
-							String className = fieldElem.getAttributeValue("class", "");
-							Field field = new Field(fieldId, unique, className);
-							fieldSet.addField(field);
-						}
-					}
-				}
+				IndexedFields indexedFields = indexedFieldsFile != null ? getIndexedFields(indexedFieldsFile) : new IndexedFields();
 				generator.parseXml(indexedFields);
 			} catch (Exception ex) {
 				throw new IllegalStateException("Error initializing generator.", ex);
@@ -198,6 +191,65 @@ public final class GeneratorDataSource extends BaseDataSource {
 		return generator;
 	}
 
+	/**
+	 * Returns the indexed fields from the specified file. Indexed fields are not modified after
+	 * loading, so they are cached process-wide by file path and modification time.
+	 */
+	static IndexedFields getIndexedFields(final String indexedFieldsFile) throws IOException, JDOMException {
+		String key = GeneratorModel.versionKey(ResourceLoader.getConfigFile(indexedFieldsFile));
+		try {
+			return INDEXED_FIELDS.get(key, new Callable<IndexedFields>() {
+				@Override
+				public IndexedFields call() throws IOException, JDOMException {
+					return loadIndexedFields(indexedFieldsFile);
+				}
+			});
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof JDOMException) {
+				throw (JDOMException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private static IndexedFields loadIndexedFields(final String indexedFieldsFile) throws IOException, JDOMException {
+		// Load configuration for indexed fields
+		SAXBuilder builder = new SAXBuilder();
+		IndexedFields indexedFields = new IndexedFields();
+
+		InputStream in = ResourceLoader.getConfigInputStream(indexedFieldsFile);
+		try {
+			Document doc = builder.build(in);
+
+			@SuppressWarnings("unchecked")
+			List<Element> elements = doc.getRootElement().getChildren("field-set");
+			for (Element fieldSetElem : elements) {
+				String id = fieldSetElem.getAttributeValue("id");
+				String dataKey = fieldSetElem.getAttributeValue("dataKey");
+				String dependsOn = fieldSetElem.getAttributeValue("dependsOn", "");
+				FieldSet fieldSet = new FieldSet(id, dataKey, dependsOn);
+				indexedFields.addFieldSet(fieldSet);
+
+				@SuppressWarnings("unchecked")
+				List<Element> fieldElems = fieldSetElem.getChildren("field");
+				for (Element fieldElem : fieldElems) {
+					String fieldId = fieldElem.getAttributeValue("id");
+					boolean unique = Boolean.parseBoolean(fieldElem.getAttributeValue("unique"));
+					String className = fieldElem.getAttributeValue("class", "");
+					Field field = new Field(fieldId, unique, className);
+					fieldSet.addField(field);
+				}
+			}
+		} finally {
+			closeQuietly(in);
+		}
+		return indexedFields;
+	}
+
 	@Override
 	public void doReset() {
 		dataSetKeys.clear();
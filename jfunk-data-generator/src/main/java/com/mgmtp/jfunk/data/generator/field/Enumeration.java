@@ -99,6 +99,27 @@ public final class Enumeration extends Field {
 		return values.get(index % values.size());
 	}
 
+	/**
+	 * @return the number of configured values
+	 */
+	@Override
+	public long countValues() {
+		return values.size();
+	}
+
+	@Override
+	public String getValue(final long index) {
+		return values.get((int) index);
+	}
+
+	/**
+	 * @return {@code true} if the value is the one selected by the case
+	 */
+	@Override
+	public boolean isValueFor(final String value, final FieldCase c) {
+		return value.equals(getString(c));
+	}
+
 	/**
 	 * @return a range object [0,number of possible values - 1]
 	 */
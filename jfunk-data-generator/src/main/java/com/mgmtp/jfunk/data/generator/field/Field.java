@@ -64,4 +64,42 @@ public abstract class Field {
 	 *         can not be established.
 	 */
 	public abstract int getMaxLength();
+
+	/**
+	 * Returns the number of distinct values this field can generate for cases without forbidden
+	 * characters, if it is known and the values can be enumerated using {@link #getValue(long)}.
+	 * This implementation returns -1.
+	 * 
+	 * @return the number of values or -1 if they cannot be enumerated
+	 */
+	public long countValues() {
+		return -1;
+	}
+
+	/**
+	 * Returns the value with the specified index. This implementation always throws an
+	 * {@link UnsupportedOperationException}.
+	 * 
+	 * @param index
+	 *            the index, from 0 to {@link #countValues()} - 1
+	 * @return the value
+	 */
+	public String getValue(final long index) {
+		throw new UnsupportedOperationException("Values of " + getClass().getSimpleName() + " cannot be enumerated");
+	}
+
+	/**
+	 * Checks whether the specified value, as returned by {@link #getValue(long)}, is one of the
+	 * values this field generates for the specified case. This implementation checks whether the
+	 * length of the value equals the size of the case.
+	 * 
+	 * @param value
+	 *            the value
+	 * @param c
+	 *            a case without forbidden characters
+	 * @return {@code true} if the value may be generated for the case
+	 */
+	public boolean isValueFor(final String value, final FieldCase c) {
+		return value.length() == c.getSize();
+	}
 }
\ No newline at end of file
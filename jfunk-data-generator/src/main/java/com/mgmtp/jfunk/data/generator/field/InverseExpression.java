@@ -81,6 +81,21 @@ public final class InverseExpression extends Field {
 		this.range = range;
 	}
 
+	/**
+	 * @return the number of values matching the expression or -1 if there are too many or if an
+	 *         additional expression has to be matched
+	 */
+	@Override
+	public long countValues() {
+		return expression2 == null ? exp.countValues() : -1;
+	}
+
+	@Override
+	public String getValue(final long index) {
+		// HtmlUnit cannot handle multiple blanks correctly so we do not generate those
+		return exp.getValue(index).replaceAll("\\s+", " ");
+	}
+
 	@Override
 	public String getString(final FieldCase c) {
 		if (c == FieldCase.NULL) {
@@ -15,16 +15,17 @@
  */
 package com.mgmtp.jfunk.data.generator.util;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
+import com.google.common.primitives.Chars;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.random.RandomCollection;
-import com.mgmtp.jfunk.common.random.Randomizable;
 
 /**
  * Helper class dividing a given CharacterSet into allowed and forbidden characters using a one
@@ -36,9 +37,9 @@ import com.mgmtp.jfunk.common.random.Randomizable;
 class CharacterField {
 
 	protected Logger log = Logger.getLogger(getClass());
-	private final Randomizable<Character> allowed;
-	private final Randomizable<Character> forbidden;
-	private final boolean canBad;
+	private final RandomCharacters allowed;
+	private final RandomCharacters forbidden;
+	private final String expression;
 
 	/**
 	 * Initializes the new instance using the regular expression. Every character of the
@@ -46,53 +47,62 @@ class CharacterField {
 	 * every other is part of the forbidden characters.
 	 */
 	public CharacterField(final MathRandom random, final String expression, final CharacterSet set) {
-		Pattern pattern = Pattern.compile(expression);
-		// First: collect all allowed characters in the CharacterSet
-		Collection<Character> forbiddenChars = new ArrayList<Character>(256);
-		for (int i = 0; i < set.getForbiddenCharacterCount(); i++) {
-			Character character = set.getForbiddenChar(i);
-			if (set.isAllowed(character)) {
-				// Characters that are also within the allowed range are only excluded from the local expression
-				Matcher m = pattern.matcher(character.toString());
-				if (!m.matches()) {
-					forbiddenChars.add(character);
-				}
-			} else {
-				// If the character is  marked as forbidden globally, it is also a forbidden character for this field.
-				forbiddenChars.add(character);
-			}
-		}
-		Collection<Character> allowedChars = new ArrayList<Character>(256);
-		for (int i = 0; i < set.getCharacterCount(); i++) {
-			Character character = set.getCharacter(i);
-			Matcher m = pattern.matcher(character.toString());
-			if (m.matches()) {
-				allowedChars.add(character);
-			}
-		}
-		if (allowedChars.isEmpty()) {
-			log.warn("No character allowed for expression " + expression);
-		}
-		canBad = !forbiddenChars.isEmpty();
-		allowed = new RandomCollection<Character>(random, allowedChars);
-		forbidden = new RandomCollection<Character>(random, forbiddenChars);
+		this(random, new Partition(expression, Pattern.compile(expression), set));
+	}
+
+	/**
+	 * Initializes the new instance using a pre-computed partition of a CharacterSet.
+	 */
+	CharacterField(final MathRandom random, final Partition partition) {
+		this.expression = partition.expression;
+		allowed = new RandomCharacters(random, partition.allowedChars);
+		forbidden = new RandomCharacters(random, partition.forbiddenChars);
 	}
 
 	/**
 	 * Provides a random allowed character
 	 * 
-	 * @return a random allowed character or null if none is allowed
+	 * @return a random allowed character
+	 * @throws IllegalStateException
+	 *             if no character is allowed
 	 */
-	public Character getAllowedCharacter() {
+	public char getAllowedCharacter() {
+		if (allowed.size() == 0) {
+			throw new IllegalStateException("No character allowed for expression " + expression);
+		}
 		return allowed.get();
 	}
 
+	/**
+	 * @return the number of allowed characters
+	 */
+	public int getAllowedCharacterCount() {
+		return allowed.size();
+	}
+
+	/**
+	 * Provides the allowed character with the specified index. The order of the characters is the
+	 * order of the CharacterSet.
+	 * 
+	 * @param index
+	 *            the index, from 0 to {@link #getAllowedCharacterCount()} - 1
+	 * @return the allowed character
+	 */
+	public char getAllowedCharacter(final int index) {
+		return allowed.get(index);
+	}
+
 	/**
 	 * Provides a random forbidden character
 	 * 
-	 * @return a random forbidden character or null if all are allowed
+	 * @return a random forbidden character
+	 * @throws IllegalStateException
+	 *             if all characters are allowed, see {@link #canBad()}
 	 */
-	public Character getForbiddenCharacter() {
+	public char getForbiddenCharacter() {
+		if (!canBad()) {
+			throw new IllegalStateException("No character forbidden for expression " + expression);
+		}
 		return forbidden.get();
 	}
 
@@ -102,6 +112,100 @@ class CharacterField {
 	 * @return true if there is at least one forbidden character
 	 */
 	public boolean canBad() {
-		return canBad;
+		return forbidden.size() > 0;
+	}
+
+	/**
+	 * The division of a CharacterSet into allowed and forbidden characters for a regular
+	 * expression. Partitions are immutable and may be shared by fields with different random
+	 * generators, see {@link ExpressionTemplate}.
+	 */
+	static final class Partition {
+		private static final Logger LOG = Logger.getLogger(Partition.class);
+
+		private final String expression;
+		private final char[] allowedChars;
+		private final char[] forbiddenChars;
+
+		Partition(final String expression, final Pattern pattern, final CharacterSet set) {
+			this.expression = expression;
+			Matcher m = pattern.matcher("");
+			// First: collect all allowed characters in the CharacterSet
+			char[] forbidden = new char[set.getForbiddenCharacterCount()];
+			int forbiddenCount = 0;
+			for (int i = 0; i < set.getForbiddenCharacterCount(); i++) {
+				char character = set.getForbiddenChar(i);
+				if (set.isAllowed(character)) {
+					// Characters that are also within the allowed range are only excluded from the local expression
+					if (!m.reset(String.valueOf(character)).matches()) {
+						forbidden[forbiddenCount++] = character;
+					}
+				} else {
+					// If the character is  marked as forbidden globally, it is also a forbidden character for this field.
+					forbidden[forbiddenCount++] = character;
+				}
+			}
+			char[] allowed = new char[set.getCharacterCount()];
+			int allowedCount = 0;
+			for (int i = 0; i < set.getCharacterCount(); i++) {
+				char character = set.getCharacter(i);
+				if (m.reset(String.valueOf(character)).matches()) {
+					allowed[allowedCount++] = character;
+				}
+			}
+			if (allowedCount == 0) {
+				LOG.warn("No character allowed for expression " + expression);
+			}
+			allowedChars = Arrays.copyOf(allowed, allowedCount);
+			forbiddenChars = Arrays.copyOf(forbidden, forbiddenCount);
+		}
+	}
+
+	/**
+	 * Primitive version of {@link RandomCollection} for characters. All characters are returned
+	 * once in random order first, afterwards they are returned uniformly distributed. Getting a
+	 * character does not allocate.
+	 */
+	private static final class RandomCharacters {
+		private final MathRandom random;
+		private final char[] originalElements;
+		private final char[] priorityElements;
+		private int priorityIndex;
+		private final char[] currentElements;
+		private int currentSize;
+
+		RandomCharacters(final MathRandom random, final char[] elements) {
+			this.random = random;
+			this.originalElements = elements;
+			List<Character> shuffled = Chars.asList(elements.clone());
+			Collections.shuffle(shuffled, random.getRandom());
+			this.priorityElements = Chars.toArray(shuffled);
+			this.currentElements = new char[2 * elements.length];
+			System.arraycopy(elements, 0, currentElements, 0, elements.length);
+			this.currentSize = elements.length;
+		}
+
+		int size() {
+			return originalElements.length;
+		}
+
+		char get(final int index) {
+			return originalElements[index];
+		}
+
+		char get() {
+			if (priorityIndex < priorityElements.length) {
+				return priorityElements[priorityIndex++];
+			}
+			if (currentSize <= originalElements.length) {
+				System.arraycopy(originalElements, 0, currentElements, currentSize, originalElements.length);
+				currentSize += originalElements.length;
+			}
+			int index = random.getInt(currentSize - 1);
+			char result = currentElements[index];
+			System.arraycopy(currentElements, index + 1, currentElements, index, currentSize - index - 1);
+			currentSize--;
+			return result;
+		}
 	}
 }
\ No newline at end of file
@@ -18,21 +18,32 @@ package com.mgmtp.jfunk.data.generator.util;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.jdom.Element;
 
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
 
 /**
  * This class represents all characters supported by a given encoding. It can be limited further
  * using a regular expression, so only characters matching the expression will be retained.
+ * <p>
+ * Membership is stored in bit sets and the characters in {@code char} arrays, so lookups do not
+ * allocate. These tables are computed only once per combination of encoding and expressions and
+ * shared by all instances and threads. The mapping of ids to character sets is kept per thread.
+ * </p>
  * 
  */
 public class CharacterSet {
@@ -46,18 +57,17 @@ public class CharacterSet {
 		}
 	};
 
-	private String characterSetId;
-	private final Map<Character, Boolean> map = new HashMap<Character, Boolean>();
-	private char[] characters;
-	private char[] forbiddenCharacters;
-
 	/**
-	 * Used only internally to initialize an empty instance.
-	 * 
-	 * @see #getInverse()
+	 * Compiled tables by encoding, good expression and bad expression.
 	 */
-	private CharacterSet() {
-		// Used only internally to initialize an empty instance.
+	private static final ConcurrentMap<List<String>, Tables> TABLES = Maps.newConcurrentMap();
+
+	private final String characterSetId;
+	private final Tables tables;
+
+	private CharacterSet(final Tables tables, final String characterSetId) {
+		this.tables = tables;
+		this.characterSetId = characterSetId;
 	}
 
 	/**
@@ -69,57 +79,49 @@ public class CharacterSet {
 	 */
 	CharacterSet(final String encoding, final String goodExpression, final String badExpression, final String characterSetId)
 			throws UnsupportedEncodingException {
-		this.characterSetId = characterSetId;
-		Charset charset = Charset.forName(encoding);
-		CharsetEncoder encoder = charset.newEncoder();
-		int bytesPerChar = (int) (encoder.maxBytesPerChar() + 0.5);
-		if (bytesPerChar > 1) {
-			throw new IllegalArgumentException("this characterset class can currently handle only one byte charsets!");
-		}
-		characters = new char[256];
-		for (int i = 0; i < characters.length; i++) {
-			String s = new String(new byte[] { (byte) i }, encoding);
-			characters[i] = s.charAt(0);
-		}
-		forbiddenCharacters = new char[0];
-		if (goodExpression != null && goodExpression.length() > 0 && badExpression != null && badExpression.length() > 0) {
-			ArrayList<Character> list = new ArrayList<Character>(characters.length);
-			ArrayList<Character> exList = new ArrayList<Character>(characters.length);
-			Pattern goodPattern = Pattern.compile(goodExpression);
-			Pattern badPattern = Pattern.compile(badExpression);
-			for (char character : characters) {
-				Matcher goodM = goodPattern.matcher(Character.toString(character));
-				Matcher badM = badPattern.matcher(Character.toString(character));
-				if (goodM.matches()) {
-					map.put(character, Boolean.TRUE);
-					list.add(character);
-				} else {
-					map.put(character, Boolean.FALSE);
-				}
-				if (badM.matches()) {
-					exList.add(character);
-				}
-			}
-			characters = new char[list.size()];
-			for (int i = 0; i < characters.length; i++) {
-				characters[i] = list.get(i);
-			}
-			forbiddenCharacters = new char[exList.size()];
-			for (int i = 0; i < forbiddenCharacters.length; i++) {
-				forbiddenCharacters[i] = exList.get(i);
+		this(getTables(encoding, goodExpression, badExpression), characterSetId);
+	}
+
+	private static Tables getTables(final String encoding, final String goodExpression, final String badExpression)
+			throws UnsupportedEncodingException {
+		List<String> key = Arrays.asList(encoding, goodExpression, badExpression);
+		Tables tables = TABLES.get(key);
+		if (tables == null) {
+			tables = new Tables(encoding, goodExpression, badExpression);
+			Tables existing = TABLES.putIfAbsent(key, tables);
+			if (existing != null) {
+				tables = existing;
 			}
 		}
+		return tables;
 	}
 
 	public static void initCharacterSet(final Element characterSetElement) throws UnsupportedEncodingException {
+		registerCharacterSet(parseCharacterSet(characterSetElement));
+	}
+
+	/**
+	 * Creates a new CharacterSet from the given element without registering it for the current
+	 * thread. Instances are not modified after creation, so they may be shared across threads.
+	 * 
+	 * @see #registerCharacterSet(CharacterSet)
+	 */
+	public static CharacterSet parseCharacterSet(final Element characterSetElement) throws UnsupportedEncodingException {
 		String characterSetId = characterSetElement.getAttributeValue(XMLTags.ID);
 		String encoding = characterSetElement.getChildText(XMLTags.ENCODING);
 		String goodExpression = characterSetElement.getChildText(XMLTags.GOOD_EXPRESSION);
 		String badExpression = characterSetElement.getChildText(XMLTags.BAD_EXPRESSION);
+		return new CharacterSet(encoding, goodExpression, badExpression, characterSetId);
+	}
 
-		CharacterSet cs = new CharacterSet(encoding, goodExpression, badExpression, characterSetId);
-		characterSets.get().put(characterSetId, cs);
-		LOG.info("Added " + cs);
+	/**
+	 * Makes the given CharacterSet available to the current thread under its id.
+	 */
+	public static void registerCharacterSet(final CharacterSet characterSet) {
+		characterSets.get().put(characterSet.characterSetId, characterSet);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Added " + characterSet);
+		}
 	}
 
 	/**
@@ -130,10 +132,7 @@ public class CharacterSet {
 	 *         this instance
 	 */
 	public CharacterSet getInverse() {
-		CharacterSet n = new CharacterSet();
-		n.forbiddenCharacters = characters;
-		n.characters = forbiddenCharacters;
-		return n;
+		return new CharacterSet(tables.inverse(), characterSetId);
 	}
 
 	/**
@@ -142,11 +141,11 @@ public class CharacterSet {
 	 * @return the number of characters this CharacterSet contains
 	 */
 	public int getCharacterCount() {
-		return characters.length;
+		return tables.characters.length;
 	}
 
 	public int getForbiddenCharacterCount() {
-		return forbiddenCharacters.length;
+		return tables.forbiddenCharacters.length;
 	}
 
 	/**
@@ -155,7 +154,7 @@ public class CharacterSet {
 	 * @return the forbidden character at index position
 	 */
 	public char getForbiddenChar(final int index) {
-		return forbiddenCharacters[index];
+		return tables.forbiddenCharacters[index];
 	}
 
 	/**
@@ -164,19 +163,28 @@ public class CharacterSet {
 	 * @return the character at index position
 	 */
 	public char getCharacter(final int index) {
-		if (index > characters.length) {
-			throw new IndexOutOfBoundsException(index + "@" + characters.length + " does not fit");
+		if (index >= tables.characters.length) {
+			throw new IndexOutOfBoundsException(index + "@" + tables.characters.length + " does not fit");
 		}
-		return characters[index];
+		return tables.characters[index];
 	}
 
+	/**
+	 * @return all characters of the encoding, allowed or not
+	 */
 	public Set<Character> getCharacters() {
-		return Collections.unmodifiableSet(map.keySet());
+		Set<Character> result = Sets.newHashSetWithExpectedSize(tables.known.cardinality());
+		for (int i = tables.known.nextSetBit(0); i >= 0; i = tables.known.nextSetBit(i + 1)) {
+			result.add((char) i);
+		}
+		return Collections.unmodifiableSet(result);
 	}
 
 	@Override
 	public String toString() {
-		StringBuffer buf = new StringBuffer(characters.length * 4 + 33);
+		char[] characters = tables.characters;
+		char[] forbiddenCharacters = tables.forbiddenCharacters;
+		StringBuilder buf = new StringBuilder(characters.length * 4 + 33);
 
 		buf.append("CharacterSet [id=");
 		buf.append(characterSetId);
@@ -204,11 +212,10 @@ public class CharacterSet {
 	}
 
 	public boolean isAllowed(final char ch) {
-		Boolean allowed = map.get(ch);
-		if (allowed == null) {
+		if (!tables.known.get(ch)) {
 			throw new IllegalArgumentException("The character" + ch + " is not part of the CharacterSet.");
 		}
-		return allowed;
+		return tables.allowed.get(ch);
 	}
 
 	/**
@@ -232,8 +239,80 @@ public class CharacterSet {
 			return characterSets.get().get(characterSetId);
 		}
 		CharacterSet cs = new CharacterSet(encoding, goodExpression, badExpression, characterSetId);
-		characterSets.get().put(characterSetId, cs);
-		LOG.info("Added " + cs);
+		registerCharacterSet(cs);
 		return cs;
 	}
+
+	/**
+	 * The immutable lookup tables of a character set.
+	 */
+	private static final class Tables {
+		/**
+		 * All characters of the encoding.
+		 */
+		private final BitSet known;
+		private final BitSet allowed;
+		private final char[] characters;
+		private final char[] forbiddenCharacters;
+
+		private Tables(final BitSet known, final BitSet allowed, final char[] characters, final char[] forbiddenCharacters) {
+			this.known = known;
+			this.allowed = allowed;
+			this.characters = characters;
+			this.forbiddenCharacters = forbiddenCharacters;
+		}
+
+		Tables(final String encoding, final String goodExpression, final String badExpression) throws UnsupportedEncodingException {
+			Charset charset = Charset.forName(encoding);
+			CharsetEncoder encoder = charset.newEncoder();
+			int bytesPerChar = (int) (encoder.maxBytesPerChar() + 0.5);
+			if (bytesPerChar > 1) {
+				throw new IllegalArgumentException("this characterset class can currently handle only one byte charsets!");
+			}
+			byte[] bytes = new byte[256];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = (byte) i;
+			}
+			char[] allCharacters = new String(bytes, encoding).toCharArray();
+
+			known = new BitSet(Character.MAX_VALUE + 1);
+			allowed = new BitSet(Character.MAX_VALUE + 1);
+			for (char character : allCharacters) {
+				known.set(character);
+			}
+
+			if (goodExpression != null && goodExpression.length() > 0 && badExpression != null && badExpression.length() > 0) {
+				Matcher goodMatcher = Pattern.compile(goodExpression).matcher("");
+				Matcher badMatcher = Pattern.compile(badExpression).matcher("");
+				char[] good = new char[allCharacters.length];
+				char[] bad = new char[allCharacters.length];
+				int goodCount = 0;
+				int badCount = 0;
+				for (char character : allCharacters) {
+					String s = String.valueOf(character);
+					if (goodMatcher.reset(s).matches()) {
+						allowed.set(character);
+						good[goodCount++] = character;
+					}
+					if (badMatcher.reset(s).matches()) {
+						bad[badCount++] = character;
+					}
+				}
+				characters = Arrays.copyOf(good, goodCount);
+				forbiddenCharacters = Arrays.copyOf(bad, badCount);
+			} else {
+				allowed.or(known);
+				characters = allCharacters;
+				forbiddenCharacters = new char[0];
+			}
+		}
+
+		Tables inverse() {
+			BitSet inverseAllowed = new BitSet(Character.MAX_VALUE + 1);
+			for (char character : forbiddenCharacters) {
+				inverseAllowed.set(character);
+			}
+			return new Tables(known, inverseAllowed, forbiddenCharacters, characters);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.util;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.common.util.Range;
+
+/**
+ * Pre-parsed form of the expression of a {@link GeneratingExpression}. An expression is parsed only
+ * once into a tree of sequences, alternations, and character expressions with their ranges.
+ * Templates are immutable and shared process-wide.
+ * <p>
+ * Alternations are written as {@code a|b} or {@code (a|b)} and are resolved by
+ * {@link #choose(MathRandom)}. A quantifier following a group applies to the last character
+ * expression of the chosen alternative, e. g. {@code (ab|cd)?} is equivalent to either {@code ab?}
+ * or {@code cd?}.
+ * </p>
+ *
+ */
+@ThreadSafe
+final class ExpressionTemplate {
+
+	private static final int MAX_CACHED_TEMPLATES = 10000;
+
+	private static final LoadingCache<String, ExpressionTemplate> TEMPLATES = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHED_TEMPLATES)
+			.build(new CacheLoader<String, ExpressionTemplate>() {
+				@Override
+				public ExpressionTemplate load(final String expression) {
+					return new ExpressionTemplate(expression);
+				}
+			});
+
+	private final String expression;
+	private final Alternation root;
+
+	private int pos;
+
+	private ExpressionTemplate(final String expression) {
+		this.expression = expression;
+		this.root = parseAlternation(false);
+	}
+
+	/**
+	 * Returns the template for the specified expression. Templates are cached, so repeated calls
+	 * with equal expressions do not parse the expression again.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return the template
+	 * @throws IllegalArgumentException
+	 *             if the expression is not valid
+	 */
+	static ExpressionTemplate compile(final String expression) {
+		try {
+			return TEMPLATES.getUnchecked(expression);
+		} catch (RuntimeException ex) {
+			if (ex.getCause() instanceof IllegalArgumentException) {
+				throw (IllegalArgumentException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Resolves all alternations by randomly choosing one of their alternatives.
+	 *
+	 * @param random
+	 *            the random generator used to choose alternatives
+	 * @return the character expressions of the chosen alternatives
+	 */
+	List<Leaf> choose(final MathRandom random) {
+		List<Leaf> leaves = Lists.newArrayList();
+		root.choose(random, leaves);
+		return leaves;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	/*
+	 * The parser is only used during construction, so the position needs no synchronization.
+	 */
+	private Alternation parseAlternation(final boolean group) {
+		List<Sequence> alternatives = Lists.newArrayList();
+		List<Item> items = Lists.newArrayList();
+		while (true) {
+			if (pos == expression.length()) {
+				if (group) {
+					throw new IllegalArgumentException("the given regular expression was not valid; missing )");
+				}
+				break;
+			}
+			char c = expression.charAt(pos);
+			if (c == '|') {
+				pos++;
+				alternatives.add(new Sequence(items));
+				items = Lists.newArrayList();
+			} else if (c == ')') {
+				if (!group) {
+					throw new IllegalArgumentException("the given regular expression was not valid; missing (");
+				}
+				pos++;
+				break;
+			} else if (c == '(') {
+				pos++;
+				Alternation alternation = parseAlternation(true);
+				Range quantifier = null;
+				if (pos < expression.length() && isQuantifier(expression.charAt(pos))) {
+					quantifier = parseRange();
+				}
+				items.add(new Group(alternation, quantifier));
+			} else {
+				String characterExpression = parseCharacterExpression();
+				items.add(new Leaf(characterExpression, parseRange()));
+			}
+		}
+		alternatives.add(new Sequence(items));
+		return new Alternation(alternatives);
+	}
+
+	private String parseCharacterExpression() {
+		int start = pos;
+		char c = expression.charAt(pos++);
+		if ('[' == c) {
+			int openBraces = 1;
+			while (pos < expression.length() && openBraces > 0) {
+				c = expression.charAt(pos++);
+				if ('[' == c) {
+					openBraces++;
+				} else if (']' == c) {
+					openBraces--;
+				}
+			}
+			if (openBraces > 0) {
+				throw new IllegalArgumentException("the given regular expression was not valid; missing ]");
+			}
+		} else if ('\\' == c) {
+			if (pos == expression.length()) {
+				throw new IllegalArgumentException("the given regular expression was not valid; trailing \\");
+			}
+			c = expression.charAt(pos++);
+			if ('p' == c && pos < expression.length() && expression.charAt(pos) == '{') {
+				// read \p{...} class definition
+				int end = expression.indexOf('}', pos);
+				if (end == -1) {
+					throw new IllegalArgumentException("the given regular expression was not valid; missing }");
+				}
+				pos = end + 1;
+			}
+		}
+		return expression.substring(start, pos);
+	}
+
+	private static boolean isQuantifier(final char c) {
+		return c == '{' || c == '?' || c == '+' || c == '*';
+	}
+
+	private Range parseRange() {
+		if (pos == expression.length()) {
+			return new Range(1, 1);
+		}
+		char c = expression.charAt(pos);
+		int min = -1;
+		int max = -1;
+		if ('{' == c) {
+			int end = expression.indexOf('}', pos);
+			String content = expression.substring(pos + 1, end == -1 ? expression.length() : end);
+			pos = end == -1 ? expression.length() : end + 1;
+			int comma = content.indexOf(',');
+			if (comma != -1) {
+				try {
+					min = Integer.parseInt(content.substring(0, comma));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("if giving number of occurrences with {n,m} you must specify a value for n", e);
+				}
+				content = content.substring(comma + 1);
+			}
+			if (content.length() > 0) {
+				max = Integer.parseInt(content);
+			}
+			if (min == -1) {
+				min = max;
+			}
+		} else if ('?' == c) {
+			pos++;
+			min = 0;
+			max = 1;
+		} else if ('+' == c) {
+			pos++;
+			min = 1;
+		} else if ('*' == c) {
+			pos++;
+			min = 0;
+		} else {
+			min = 1;
+			max = 1;
+		}
+		return new Range(min, max);
+	}
+
+	private interface Item {
+		void choose(MathRandom random, List<Leaf> leaves);
+	}
+
+	/**
+	 * A character expression together with the range of its number of occurrences. The partitions
+	 * of character sets into allowed and forbidden characters are computed once per character set
+	 * and shared by leaves with the same character expression and a different range.
+	 */
+	static final class Leaf implements Item {
+		private final String characterExpression;
+		private final Pattern pattern;
+		private final Range range;
+		private final ConcurrentMap<CharacterSet, CharacterField.Partition> partitions;
+
+		Leaf(final String characterExpression, final Range range) {
+			this.characterExpression = characterExpression;
+			this.pattern = Pattern.compile(characterExpression);
+			this.range = range;
+			this.partitions = new MapMaker().weakKeys().makeMap();
+		}
+
+		private Leaf(final Leaf leaf, final Range range) {
+			this.characterExpression = leaf.characterExpression;
+			this.pattern = leaf.pattern;
+			this.range = range;
+			this.partitions = leaf.partitions;
+		}
+
+		Range getRange() {
+			return range;
+		}
+
+		CharacterField.Partition getPartition(final CharacterSet set) {
+			CharacterField.Partition partition = partitions.get(set);
+			if (partition == null) {
+				partition = new CharacterField.Partition(characterExpression, pattern, set);
+				partitions.put(set, partition);
+			}
+			return partition;
+		}
+
+		@Override
+		public void choose(final MathRandom random, final List<Leaf> leaves) {
+			leaves.add(this);
+		}
+	}
+
+	private static final class Sequence {
+		private final List<Item> items;
+
+		Sequence(final List<Item> items) {
+			this.items = ImmutableList.copyOf(items);
+		}
+
+		void choose(final MathRandom random, final List<Leaf> leaves) {
+			for (Item item : items) {
+				item.choose(random, leaves);
+			}
+		}
+	}
+
+	private static final class Alternation {
+		private final List<Sequence> alternatives;
+
+		Alternation(final List<Sequence> alternatives) {
+			this.alternatives = ImmutableList.copyOf(alternatives);
+		}
+
+		void choose(final MathRandom random, final List<Leaf> leaves) {
+			// the first alternative is chosen with probability 1/2, the second one with 1/4, and so on
+			int last = alternatives.size() - 1;
+			int index = 0;
+			while (index < last && !random.getBoolean()) {
+				index++;
+			}
+			alternatives.get(index).choose(random, leaves);
+		}
+	}
+
+	private static final class Group implements Item {
+		private final Alternation alternation;
+		private final Range quantifier;
+		// the quantified copies of the last leaves of the alternatives, created once per leaf
+		private final ConcurrentMap<Leaf, Leaf> quantifiedLeaves = new MapMaker().makeMap();
+
+		Group(final Alternation alternation, final Range quantifier) {
+			this.alternation = alternation;
+			this.quantifier = quantifier;
+		}
+
+		@Override
+		public void choose(final MathRandom random, final List<Leaf> leaves) {
+			int start = leaves.size();
+			alternation.choose(random, leaves);
+			if (quantifier != null && leaves.size() > start) {
+				int last = leaves.size() - 1;
+				leaves.set(last, quantify(leaves.get(last)));
+			}
+		}
+
+		private Leaf quantify(final Leaf leaf) {
+			Leaf quantifiedLeaf = quantifiedLeaves.get(leaf);
+			if (quantifiedLeaf == null) {
+				quantifiedLeaf = new Leaf(leaf, quantifier);
+				Leaf existing = quantifiedLeaves.putIfAbsent(leaf, quantifiedLeaf);
+				if (existing != null) {
+					quantifiedLeaf = existing;
+				}
+			}
+			return quantifiedLeaf;
+		}
+	}
+}
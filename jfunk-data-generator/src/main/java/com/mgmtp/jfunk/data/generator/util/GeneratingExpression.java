@@ -19,11 +19,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.text.StrBuilder;
 import org.apache.log4j.Logger;
 
+import com.google.common.math.LongMath;
 import com.mgmtp.jfunk.common.random.Choice;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.util.Range;
@@ -34,15 +33,18 @@ import com.mgmtp.jfunk.common.util.Range;
  * in which numbers. Thereby the regular expression is limited to character classes and set
  * operators. An expression with the form [A-Z]{3,5}-?[0-9]{3,} generates character string with the
  * form ABC-123, DEFZL123456789 etc.
+ * <p>
+ * Expressions are parsed only once and shared as {@link ExpressionTemplate templates}, so creating
+ * many instances for the same expression is cheap. Alternations are resolved when an instance is
+ * created.
+ * </p>
  * 
  */
 public class GeneratingExpression {
 
-	private static final Pattern UNESCAPED_PIPE_PATTERN = Pattern.compile("(?<!\\\\)\\|");
-
 	private final Logger log = Logger.getLogger(getClass());
 
-	private final StringBuffer buf = new StringBuffer();
+	private final StringBuilder buf = new StringBuilder();
 	private final List<Node> nodes;
 	private Range range;
 	private final Choice choice;
@@ -58,14 +60,12 @@ public class GeneratingExpression {
 	 */
 	public GeneratingExpression(final MathRandom random, final String expression, final CharacterSet set) throws IOException {
 		this.random = random;
-		String exp = chooseAlternations(expression);
-		CharacterPushbackReader in = new CharacterPushbackReader(exp);
-		nodes = new ArrayList<Node>();
+		List<ExpressionTemplate.Leaf> leaves = ExpressionTemplate.compile(expression).choose(random);
+		nodes = new ArrayList<Node>(leaves.size());
 		choice = new Choice(random);
-		while (in.ready()) {
-			String characterExpression = parseNextCharacterExpression(in);
-			Range r = parseNextNumberExpression(in);
-			Node node = new Node(characterExpression, r, set, random);
+		for (ExpressionTemplate.Leaf leaf : leaves) {
+			Range r = leaf.getRange();
+			Node node = new Node(r, new CharacterField(random, leaf.getPartition(set)), random);
 			if (range == null) {
 				range = r;
 			} else {
@@ -75,70 +75,6 @@ public class GeneratingExpression {
 		}
 	}
 
-	/**
-	 * Resolves alternations by randomly choosing one at a time and adapting the pattern accordingly
-	 * 
-	 * @param expression
-	 *            the pattern
-	 * @return the reduced pattern
-	 */
-	private String chooseAlternations(final String expression) {
-		StrBuilder sb = new StrBuilder(expression);
-
-		int i = 0;
-		// Loop until an unescaped pipe symbol appears.
-		while (UNESCAPED_PIPE_PATTERN.matcher(sb.toString()).find()) {
-			for (; i < sb.length(); ++i) {
-				if (sb.charAt(i) == '|') {
-					if (sb.charAt(i - 1) == '\\') {
-						// escapet
-						continue;
-					}
-
-					int start = i;
-					// Backtrack until an opening bracket is found
-					// to limit the context of alternatives.
-					for (int closingCount = 0; start >= 0; --start) {
-						char c = sb.charAt(start);
-						if (c == '(') {
-							if (closingCount == 0) {
-								break;
-							}
-							--closingCount;
-						} else if (c == ')') {
-							++closingCount;
-						}
-					}
-
-					if (start >= 0) {
-						// If an opening brace was found
-						// search for a closing bracket.
-						int end = i;
-						for (int openingCount = 0; end < sb.length(); ++end) {
-							char c = sb.charAt(end);
-							if (c == '(') {
-								++openingCount;
-							} else if (c == ')') {
-								if (openingCount == 0) {
-									break;
-								}
-								--openingCount;
-							}
-						}
-						String alternative = random.getBoolean() ? sb.substring(start + 1, i) : sb.substring(i + 1, end);
-						sb.replace(start, end + 1, alternative);
-						i = start + alternative.length();
-						break;
-					}
-					String alternative = random.getBoolean() ? sb.substring(0, i) : sb.substring(i + 1);
-					sb.replace(0, sb.length() + 1, alternative);
-					break;
-				}
-			}
-		}
-		return sb.toString();
-	}
-
 	/**
 	 * Replaces randomly selected characters in the given string with forbidden characters according
 	 * to the given expression.
@@ -192,8 +128,8 @@ public class GeneratingExpression {
 		} else if (bad == -1) {
 			bad = 1 + random.getInt(input.length() - 1);
 		}
-		Collections.shuffle(l);
-		StringBuffer base = new StringBuffer(input);
+		Collections.shuffle(l, random.getRandom());
+		StringBuilder base = new StringBuilder(input);
 		int j = 0;
 		for (i = 0; i < bad; i++) {
 			int index = l.remove(0);
@@ -237,6 +173,55 @@ public class GeneratingExpression {
 		return ranges;
 	}
 
+	/**
+	 * Returns the number of distinct strings of allowed characters this expression can generate
+	 * with the alternatives chosen for this instance.
+	 * 
+	 * @return the number of values or -1 if it exceeds {@link Long#MAX_VALUE}
+	 */
+	public long countValues() {
+		long count = 1;
+		for (Node node : nodes) {
+			long nodeCount = node.countValues();
+			if (nodeCount < 0) {
+				return -1;
+			}
+			try {
+				count = LongMath.checkedMultiply(count, nodeCount);
+			} catch (ArithmeticException ex) {
+				return -1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the string of allowed characters with the specified index. Together with
+	 * {@link #countValues()} this allows for enumerating all values of small expressions. Nodes
+	 * which can generate the same strings, e. g. {@code a?a?}, result in equal values for different
+	 * indices.
+	 * 
+	 * @param index
+	 *            the index, from 0 to {@link #countValues()} - 1
+	 * @return the string
+	 */
+	public String getValue(final long index) {
+		char[][] parts = new char[nodes.size()][];
+		long remaining = index;
+		for (int i = parts.length - 1; i >= 0; i--) {
+			long nodeCount = nodes.get(i).countValues();
+			parts[i] = nodes.get(i).getValue(remaining % nodeCount);
+			remaining /= nodeCount;
+		}
+		buf.setLength(0);
+		for (char[] part : parts) {
+			buf.append(part);
+		}
+		String value = buf.toString();
+		buf.setLength(0);
+		return value;
+	}
+
 	/**
 	 * Generates a string containing subject to the parameter value only allowed or one half of
 	 * forbidden characters.
@@ -324,86 +309,4 @@ public class GeneratingExpression {
 		// build buffer
 		return generate(lengths, bad);
 	}
-
-	private String parseNextCharacterExpression(final CharacterPushbackReader in) throws IOException {
-		StringBuffer sb = new StringBuffer();
-		char c = in.readChar();
-		sb.append(c);
-		if ('[' == c) {
-			int openBraces = 1;
-			while (in.ready() && openBraces > 0) {
-				c = in.readChar();
-				sb.append(c);
-				if ('[' == c) {
-					openBraces++;
-				} else if (']' == c) {
-					openBraces--;
-				}
-			}
-			if (openBraces > 0) {
-				throw new IllegalArgumentException("the given regular expression was not valid; missing ]");
-			}
-		} else if ('\\' == c) {
-			c = in.readChar();
-			sb.append(c);
-			if ('p' == c) {
-				// read \p{...} class definition
-				c = in.readChar();
-				sb.append(c);
-				if ('{' == c) {
-					while (in.ready() && c != '}') {
-						c = in.readChar();
-						sb.append(c);
-					}
-					if (c != '}') {
-						throw new IllegalArgumentException("the given regular expression was not valid; missing }");
-					}
-				}
-			}
-		}
-		return sb.toString();
-	}
-
-	private Range parseNextNumberExpression(final CharacterPushbackReader in) throws IOException {
-		char c = in.readChar();
-		int[] ar = new int[2];
-		ar[0] = -1;
-		ar[1] = -1;
-		if ('{' == c) {
-			StringBuffer sb = new StringBuffer();
-			c = in.readChar();
-			// after { now so min number is coming
-			while (c != '}' && in.ready()) {
-				if (',' == c) {
-					try {
-						ar[0] = Integer.parseInt(sb.toString());
-					} catch (NumberFormatException e) {
-						throw new IllegalArgumentException("if giving number of occurrences with {n,m} you must specify a value for n", e);
-					}
-					sb.setLength(0);
-				} else {
-					sb.append(c);
-				}
-				c = in.readChar();
-			}
-			if (sb.length() > 0) {
-				ar[1] = Integer.parseInt(sb.toString());
-			}
-			if (ar[0] == -1) {
-				ar[0] = ar[1];
-			}
-		} else if ('?' == c) {
-			ar[0] = 0;
-			ar[1] = 1;
-		} else if ('+' == c) {
-			ar[0] = 1;
-		} else if ('*' == c) {
-			ar[0] = 0;
-		} else {
-			ar[0] = 1;
-			ar[1] = 1;
-			in.unread(c);
-		}
-		return new Range(ar[0], ar[1]);
-	}
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
+import com.google.common.math.LongMath;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.util.Range;
 
@@ -38,10 +39,15 @@ public class Node {
 	private final Range range;
 	private final CharacterField field;
 	private final MathRandom rnd;
+	private long valueCount = -2;
 
 	public Node(final String expression, final Range r, final CharacterSet set, final MathRandom random) {
+		this(r, new CharacterField(random, expression, set), random);
+	}
+
+	Node(final Range r, final CharacterField field, final MathRandom random) {
 		range = r;
-		field = new CharacterField(random, expression, set);
+		this.field = field;
 		rnd = random;
 	}
 
@@ -59,6 +65,54 @@ public class Node {
 		return range;
 	}
 
+	/**
+	 * Returns the number of distinct strings of allowed characters this node can generate, i. e.
+	 * the sum of the number of strings for all lengths in the range of this node.
+	 * 
+	 * @return the number of values or -1 if it exceeds {@link Long#MAX_VALUE}
+	 */
+	public long countValues() {
+		if (valueCount == -2) {
+			int base = field.getAllowedCharacterCount();
+			long count = 0;
+			try {
+				for (int length = range.getMin(); length <= range.getMax(); length++) {
+					count = LongMath.checkedAdd(count, LongMath.checkedPow(base, length));
+				}
+			} catch (ArithmeticException ex) {
+				count = -1;
+			}
+			valueCount = count;
+		}
+		return valueCount;
+	}
+
+	/**
+	 * Returns the string of allowed characters with the specified index. Strings are ordered by
+	 * length first and by the order of the characters in the CharacterSet second.
+	 * 
+	 * @param index
+	 *            the index, from 0 to {@link #countValues()} - 1
+	 * @return the characters of the string
+	 */
+	public char[] getValue(final long index) {
+		int base = field.getAllowedCharacterCount();
+		long remaining = index;
+		for (int length = range.getMin(); length <= range.getMax(); length++) {
+			long count = LongMath.pow(base, length);
+			if (remaining < count) {
+				char[] chars = new char[length];
+				for (int i = length - 1; i >= 0; i--) {
+					chars[i] = field.getAllowedCharacter((int) (remaining % base));
+					remaining /= base;
+				}
+				return chars;
+			}
+			remaining -= count;
+		}
+		throw new IndexOutOfBoundsException("index (" + index + ") must be less than the number of values");
+	}
+
 	/**
 	 * Returns size characters in an array. If bad is set to true at least half of all the
 	 * characters will be set to a forbidden character.
@@ -102,14 +156,14 @@ public class Node {
 			for (int i = 0; i < chars.length; i++) {
 				l.add(i);
 			}
-			Collections.shuffle(l);
+			Collections.shuffle(l, rnd.getRandom());
 			for (int i = 0; i < toBeReplaced; i++) {
 				int index = l.remove(0);
-				Character currentBad = field.getForbiddenCharacter();
-				if (currentBad == null) {
+				if (!canBad()) {
 					log.warn("This node does not allow negative characters");
 					break;
 				}
+				char currentBad = field.getForbiddenCharacter();
 				// The first and the last character as a forbidden character is not a space!
 				// this would usually shorten the length
 				if (index == 0 || index == chars.length - 1) {
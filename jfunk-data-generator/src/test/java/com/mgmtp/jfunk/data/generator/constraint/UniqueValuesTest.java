@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.constraint;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Set;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.inject.Guice;
+import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.data.generator.Generator;
+import com.mgmtp.jfunk.data.generator.GeneratorConstants;
+import com.mgmtp.jfunk.data.generator.control.FieldCase;
+import com.mgmtp.jfunk.data.generator.data.GeneratorState;
+import com.mgmtp.jfunk.data.generator.data.IndexedFields;
+
+/**
+ * Unit test for {@link UniqueValues}.
+ * 
+ */
+public class UniqueValuesTest {
+
+	private Constraint constraint;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		System.setProperty("config.dir", "src/test/resources/generator");
+		GeneratorState.currentState().initMathRandom(42L);
+
+		Configuration config = new Configuration(Charsets.UTF_8);
+		config.put(GeneratorConstants.GENERATOR_CONFIG_FILE, "generator.xml");
+		Generator generator = new Generator(new MathRandom(42L), false, config, Guice.createInjector());
+		generator.parseXml(new IndexedFields());
+
+		// [a-z]{1,3}
+		constraint = generator.getConstraint("unique.letters");
+	}
+
+	@Test
+	public void testMinCase() {
+		Set<String> values = Sets.newHashSet();
+		for (int i = 0; i < 26; ++i) {
+			String value = nextValue(FieldCase.MIN);
+			assertEquals(value.length(), 1, value);
+			assertTrue(values.add(value), value);
+		}
+		try {
+			nextValue(FieldCase.MIN);
+			fail("all values of length 1 have been used");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMaxCase() {
+		Set<String> values = Sets.newHashSet();
+		for (int i = 0; i < 1000; ++i) {
+			String value = nextValue(FieldCase.MAX);
+			assertEquals(value.length(), 3, value);
+			assertTrue(values.add(value), value);
+		}
+	}
+
+	@Test
+	public void testExplicitSize() {
+		Set<String> values = Sets.newHashSet();
+		for (int i = 0; i < 26 * 26; ++i) {
+			String value = nextValue(new FieldCase(2));
+			assertEquals(value.length(), 2, value);
+			assertTrue(values.add(value), value);
+		}
+	}
+
+	@Test
+	public void testCasesOfControl() {
+		Set<String> values = Sets.newHashSet();
+		for (int i = 0; i < 1000; ++i) {
+			String value = nextValue(null);
+			assertTrue(value.matches("[a-z]{1,3}"), value);
+			assertTrue(values.add(value), value);
+		}
+	}
+
+	private String nextValue(final FieldCase ca) {
+		constraint.resetValues();
+		return constraint.initValues(ca);
+	}
+}
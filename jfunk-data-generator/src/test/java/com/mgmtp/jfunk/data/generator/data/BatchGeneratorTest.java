@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.data;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provides;
+import com.google.inject.TypeLiteral;
+import com.google.inject.multibindings.MapBinder;
+import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.common.config.ScriptScoped;
+import com.mgmtp.jfunk.common.config.ThreadScope;
+import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.common.util.Disposable;
+import com.mgmtp.jfunk.data.DataSet;
+import com.mgmtp.jfunk.data.generator.GeneratorConstants;
+import com.mgmtp.jfunk.data.generator.config.GeneratorModule;
+
+/**
+ * Unit test for {@link BatchGenerator}.
+ * 
+ */
+public class BatchGeneratorTest {
+
+	private static final String KEY = "batch";
+
+	private final ThreadScope scriptScope = new ThreadScope();
+	private Injector injector;
+	private String previousConfigDir;
+
+	@BeforeClass
+	public void setUp() {
+		previousConfigDir = System.getProperty("config.dir");
+		System.setProperty("config.dir", "src/test/resources/generator");
+		scriptScope.enterScope();
+
+		injector = Guice.createInjector(new GeneratorModule(), new AbstractModule() {
+			@Override
+			protected void configure() {
+				bindScope(ScriptScoped.class, scriptScope);
+				bind(ThreadScope.class).toInstance(scriptScope);
+				bind(EventBus.class).toInstance(new EventBus());
+				MapBinder.newMapBinder(binder(), new TypeLiteral<Key<?>>() {
+					//
+				}, new TypeLiteral<Disposable<?>>() {
+					//
+				});
+			}
+
+			@Provides
+			@ScriptScoped
+			Configuration provideConfiguration() {
+				Configuration config = new Configuration(Charsets.UTF_8);
+				config.put(GeneratorConstants.GENERATOR_CONFIG_FILE, "generator.xml");
+				config.put(JFunkConstants.RANDOM_SEED, "42");
+				return config;
+			}
+
+			@Provides
+			MathRandom provideMathRandom() {
+				return new MathRandom(42L);
+			}
+		});
+	}
+
+	@AfterClass
+	public void tearDown() {
+		scriptScope.exitScope();
+		if (previousConfigDir != null) {
+			System.setProperty("config.dir", previousConfigDir);
+		} else {
+			System.clearProperty("config.dir");
+		}
+	}
+
+	@Test
+	public void testMultipleChunks() {
+		BatchGenerator batchGenerator = injector.getInstance(BatchGenerator.class);
+		int count = 3 * BatchGenerator.CHUNK_SIZE + 5;
+
+		List<DataSet> dataSets = Lists.newArrayList(batchGenerator.generate(KEY, count, 3));
+		assertEquals(dataSets.size(), count);
+		for (DataSet dataSet : dataSets) {
+			String name = dataSet.getValue("name");
+			assertTrue(name.matches("[A-Z][a-z]{0,19}"), name);
+			assertTrue(dataSet.getValue("color").matches("red|green|blue"), dataSet.getValue("color"));
+		}
+
+		// the generated data only depends on the seed, not on the number of threads
+		List<DataSet> singleThreaded = Lists.newArrayList(batchGenerator.generate(KEY, count, 1));
+		assertEquals(singleThreaded.size(), count);
+		for (int i = 0; i < count; ++i) {
+			assertEquals(singleThreaded.get(i).getDataView(), dataSets.get(i).getDataView());
+		}
+	}
+}
@@ -15,7 +15,11 @@
  */
 package com.mgmtp.jfunk.data.generator.util;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 import java.io.UnsupportedEncodingException;
 
@@ -69,6 +73,47 @@ public class CharacterSetTest {
 		assertBadChars(charSet);
 	}
 
+	@Test
+	public void testWithoutExpressions() throws UnsupportedEncodingException {
+		CharacterSet charSet = new CharacterSet("ISO-8859-15", null, null, "Latin-9");
+		assertEquals(charSet.getCharacterCount(), 256);
+		assertEquals(charSet.getForbiddenCharacterCount(), 0);
+		assertTrue(charSet.isAllowed('\u20AC'));
+	}
+
+	@Test
+	public void testInverse() throws UnsupportedEncodingException {
+		CharacterSet charSet = new CharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "Latin-1");
+		CharacterSet inverse = charSet.getInverse();
+		assertEquals(inverse.getCharacterCount(), charSet.getForbiddenCharacterCount());
+		assertEquals(inverse.getForbiddenCharacterCount(), charSet.getCharacterCount());
+		// currency sign is forbidden
+		assertFalse(charSet.isAllowed('\u00A4'));
+		assertTrue(inverse.isAllowed('\u00A4'));
+	}
+
+	@Test
+	public void testSharedInstanceIsRegisteredPerThread() throws Exception {
+		final CharacterSet charSet = new CharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "shared");
+		CharacterSet.registerCharacterSet(charSet);
+		assertSame(CharacterSet.getCharacterSet("shared"), charSet);
+
+		final CharacterSet[] otherThreadCharSets = new CharacterSet[2];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				otherThreadCharSets[0] = CharacterSet.getCharacterSet("shared");
+				CharacterSet.registerCharacterSet(charSet);
+				otherThreadCharSets[1] = CharacterSet.getCharacterSet("shared");
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertNull(otherThreadCharSets[0]);
+		assertSame(otherThreadCharSets[1], charSet);
+	}
+
 	private void assertBadChars(final CharacterSet charSet) {
 		for (char ch : BAD_CHARS) {
 			assertFalse(charSet.getCharacters().contains(ch) && charSet.isAllowed(ch));
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+import com.mgmtp.jfunk.common.random.MathRandom;
+
+/**
+ * Unit test for {@link GeneratingExpression}
+ * 
+ */
+public class GeneratingExpressionTest {
+
+	private final MathRandom random = new MathRandom(42L);
+	private CharacterSet charSet;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		charSet = new CharacterSet("ISO-8859-1", "[a-zA-Z0-9 \\-]", "[\\p{Punct}]", "test");
+	}
+
+	@Test
+	public void testRange() throws IOException {
+		GeneratingExpression expression = new GeneratingExpression(random, "[A-Z]{3,5}-?[0-9]{3,}", charSet);
+		assertEquals(expression.getRanges().length, 3);
+		assertEquals(expression.getRange().getMin(), 6);
+		for (int i = 0; i < 100; ++i) {
+			assertTrue(expression.generate(0).matches("[A-Z]{3,5}-?[0-9]{3,}"));
+		}
+	}
+
+	@Test
+	public void testAlternations() throws IOException {
+		for (int i = 0; i < 100; ++i) {
+			GeneratingExpression expression = new GeneratingExpression(random, "((a|b)c|d)e|f", charSet);
+			String value = expression.generate(0);
+			assertTrue(value.matches("ace|bce|de|f"), value);
+			assertEquals(expression.getRange().getMin(), value.length());
+		}
+	}
+
+	@Test
+	public void testQuantifiedGroup() throws IOException {
+		for (int i = 0; i < 100; ++i) {
+			GeneratingExpression expression = new GeneratingExpression(random, "(ab|cd){3}x", charSet);
+			assertTrue(expression.generate(0).matches("(abbb|cddd)x"));
+		}
+	}
+
+	@Test
+	public void testForbiddenCharacters() throws IOException {
+		GeneratingExpression expression = new GeneratingExpression(random, "[a-z]{5}", charSet);
+		for (int i = 0; i < 100; ++i) {
+			assertTrue(expression.generate(-2).matches("[^a-z]{5}"));
+		}
+	}
+
+	@Test
+	public void testEnumeration() throws IOException {
+		GeneratingExpression expression = new GeneratingExpression(random, "[a-c]{1,2}[0-9]", charSet);
+		assertEquals(expression.countValues(), (3 + 9) * 10);
+		Set<String> values = Sets.newHashSet();
+		for (int i = 0; i < expression.countValues(); ++i) {
+			String value = expression.getValue(i);
+			assertTrue(value.matches("[a-c]{1,2}[0-9]"), value);
+			values.add(value);
+		}
+		assertEquals(values.size(), 120);
+		assertEquals(new GeneratingExpression(random, "[a-z]+", charSet).countValues(), -1L);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testMissingParenthesis() throws IOException {
+		new GeneratingExpression(random, "(ab|cd", charSet);
+	}
+}
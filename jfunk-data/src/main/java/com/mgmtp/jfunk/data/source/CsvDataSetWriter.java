@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.source;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.mgmtp.jfunk.data.DataSet;
+
+/**
+ * Writes data sets to CSV files which can be read by {@link CsvDataSource}. The header line
+ * contains the union of the keys of all data sets in alphabetical order. Values are always quoted,
+ * missing values are written as empty strings. The file is written using the platform's default
+ * encoding, which is also used by {@link CsvDataSource}.
+ * <p>
+ * Since the header line depends on all data sets, their values are collected in memory before the
+ * file is written.
+ * </p>
+ *
+ */
+public final class CsvDataSetWriter {
+
+	private CsvDataSetWriter() {
+		// don't allow instantiation
+	}
+
+	/**
+	 * Writes the specified data sets to a CSV file.
+	 *
+	 * @param dataSets
+	 *            the data sets
+	 * @param file
+	 *            the CSV file; an existing file is overwritten
+	 * @return the number of data sets written
+	 * @throws IllegalArgumentException
+	 *             if a value contains a line break, which cannot be read by {@link CsvDataSource}
+	 */
+	public static int write(final Iterator<? extends DataSet> dataSets, final File file) throws IOException {
+		Set<String> headers = Sets.newTreeSet();
+		List<Map<String, String>> rows = Lists.newArrayList();
+		while (dataSets.hasNext()) {
+			Map<String, String> row = dataSets.next().getDataView();
+			headers.addAll(row.keySet());
+			rows.add(row);
+		}
+
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new FileWriter(file));
+			writeLine(writer, headers);
+			List<String> values = Lists.newArrayListWithCapacity(headers.size());
+			for (Map<String, String> row : rows) {
+				values.clear();
+				for (String header : headers) {
+					values.add(row.get(header));
+				}
+				writeLine(writer, values);
+			}
+			writer.close();
+		} finally {
+			IOUtils.closeQuietly(writer);
+		}
+		return rows.size();
+	}
+
+	private static void writeLine(final Writer writer, final Iterable<String> values) throws IOException {
+		boolean first = true;
+		for (String value : values) {
+			if (!first) {
+				writer.write(';');
+			}
+			first = false;
+			writer.write(quote(value));
+		}
+		writer.write('\n');
+	}
+
+	private static String quote(final String value) {
+		if (value == null) {
+			return "\"\"";
+		}
+		if (StringUtils.containsAny(value, '\r', '\n')) {
+			throw new IllegalArgumentException("CSV values must not contain line breaks: " + value);
+		}
+		return '"' + StringUtils.replace(value, "\"", "\"\"") + '"';
+	}
+}
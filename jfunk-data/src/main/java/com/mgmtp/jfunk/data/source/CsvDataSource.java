@@ -16,6 +16,7 @@
 package com.mgmtp.jfunk.data.source;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -47,11 +48,32 @@ import com.mgmtp.jfunk.data.DefaultDataSet;
  * <li>Empty lines, lines containing whitespace only, and lines starting with a "#" symbol are
  * ignored.</li>
  * </ul>
+ * <p>
+ * By default, a CSV file is read completely on first access. If property
+ * {@code dataSource.<name>.streaming} is set to {@code true}, CSV files are memory-mapped and only
+ * indexed on first access, lines are then tokenized when they are requested (see
+ * {@link CsvLineIndex}).
+ * </p>
+ * <p>
+ * If property {@code dataSource.<name>.partitioned} is set to {@code true}, all script threads
+ * share one index per file and a {@link SharedRowCursor} per data set key, so each line is served
+ * to exactly one thread. Partitioned mode implies streaming mode.
+ * </p>
  * 
  */
 @ScriptScoped
 public class CsvDataSource extends BaseDataSource {
 
+	/**
+	 * Suffix of the property enabling the streaming mode. It cannot be used as data set key.
+	 */
+	public static final String STREAMING = "streaming";
+
+	/**
+	 * Suffix of the property enabling the partitioned mode. It cannot be used as data set key.
+	 */
+	public static final String PARTITIONED = "partitioned";
+
 	private Map<String, CsvFile> csvFiles;
 
 	@Inject
@@ -69,16 +91,28 @@ public class CsvDataSource extends BaseDataSource {
 
 			Set<String> keys = configuration.keySet();
 			String prefix = "dataSource." + getName() + ".";
+			boolean streaming = configuration.getBoolean(prefix + STREAMING, false);
+			boolean partitioned = configuration.getBoolean(prefix + PARTITIONED, false);
 			for (String key : keys) {
 				if (key.startsWith(prefix)) {
 					String dataKey = key.substring(key.indexOf(prefix) + prefix.length());
+					if (isReservedKey(dataKey)) {
+						continue;
+					}
 					fileName = configuration.get(key);
 					if (StringUtils.isEmpty(fileName)) {
 						// no CSV file configured
 						continue;
 					}
 					log.debug("Loading file " + fileName + " for dataKey=" + dataKey);
-					CsvFile csvFile = new CsvFile(fileName);
+					CsvFile csvFile;
+					if (partitioned) {
+						csvFile = new PartitionedCsvFile(fileName, getName() + "." + dataKey);
+					} else if (streaming) {
+						csvFile = new StreamingCsvFile(fileName);
+					} else {
+						csvFile = new CsvFile(fileName);
+					}
 					csvFiles.put(dataKey, csvFile);
 				}
 			}
@@ -89,11 +123,20 @@ public class CsvDataSource extends BaseDataSource {
 		return csvFiles;
 	}
 
+	/**
+	 * @param dataKey
+	 *            the part of a property key following {@code dataSource.<name>.}
+	 * @return {@code true} if the key configures the data source itself rather than a CSV file
+	 */
+	protected boolean isReservedKey(final String dataKey) {
+		return STREAMING.equals(dataKey) || PARTITIONED.equals(dataKey);
+	}
+
 	@Override
 	protected DataSet getNextDataSetImpl(final String key) {
 		CsvFile csvFile = getCsvFiles().get(key);
 		if (csvFile != null) {
-			if (csvFile.lines == null) {
+			if (!csvFile.isLoaded()) {
 				try {
 					csvFile.load();
 				} catch (IOException e) {
@@ -101,7 +144,7 @@ public class CsvDataSource extends BaseDataSource {
 				}
 			}
 			Map<String, String> data = csvFile.getNextLineMap();
-			return new DefaultDataSet(data);
+			return data == null ? null : new DefaultDataSet(data);
 		}
 		return null;
 	}
@@ -115,7 +158,7 @@ public class CsvDataSource extends BaseDataSource {
 	public boolean hasMoreData(final String dataSetKey) {
 		if (getCsvFiles().containsKey(dataSetKey)) {
 			CsvFile csvFile = getCsvFiles().get(dataSetKey);
-			if (csvFile.lines == null) {
+			if (!csvFile.isLoaded()) {
 				try {
 					csvFile.load();
 				} catch (IOException e) {
@@ -216,5 +259,91 @@ public class CsvDataSource extends BaseDataSource {
 		public boolean hasNextLine() {
 			return !lines.isEmpty();
 		}
+
+		/**
+		 * @return {@code true}, if {@link #load()} has been called.
+		 */
+		public boolean isLoaded() {
+			return lines != null;
+		}
+	}
+
+	/**
+	 * CSV file that is not read into memory. Instead, the lines are served from a shared
+	 * {@link CsvLineIndex} and tokenized on access.
+	 */
+	static class StreamingCsvFile extends CsvFile {
+		protected final StrTokenizer tokenizer = CsvLineIndex.newTokenizer();
+		protected CsvLineIndex index;
+		private int nextLine;
+
+		public StreamingCsvFile(final String fileName) {
+			super(fileName);
+		}
+
+		/**
+		 * Retrieves the line index of the CSV file, which is only built if the file has not been
+		 * indexed before or has changed since.
+		 */
+		@Override
+		public void load() throws IOException {
+			index = CsvLineIndex.forFile(fileName);
+			nextLine = 0;
+		}
+
+		@Override
+		public Map<String, String> getNextLineMap() {
+			if (!hasNextLine()) {
+				return null;
+			}
+			return index.getLineMap(nextLine++, tokenizer);
+		}
+
+		@Override
+		public boolean hasNextLine() {
+			return nextLine < index.getLineCount();
+		}
+
+		@Override
+		public boolean isLoaded() {
+			return index != null;
+		}
+	}
+
+	/**
+	 * CSV file whose lines are distributed across all threads using it. Each line is served
+	 * exactly once per process.
+	 */
+	static class PartitionedCsvFile extends StreamingCsvFile {
+		private final String cursorKey;
+		private SharedRowCursor cursor;
+
+		/**
+		 * @param fileName
+		 *            The file name.
+		 * @param cursorKey
+		 *            Identifies the data set key the lines are shared for.
+		 */
+		public PartitionedCsvFile(final String fileName, final String cursorKey) {
+			super(fileName);
+			this.cursorKey = cursorKey;
+		}
+
+		@Override
+		public void load() throws IOException {
+			super.load();
+			cursor = SharedRowCursor.forFile(cursorKey, new File(fileName));
+		}
+
+		@Override
+		public Map<String, String> getNextLineMap() {
+			int line = cursor.claim(index.getLineCount());
+			return line < 0 ? null : index.getLineMap(line, tokenizer);
+		}
+
+		@Override
+		public boolean hasNextLine() {
+			return cursor.hasMore(index.getLineCount());
+		}
 	}
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.text.StrTokenizer;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Memory-mapped CSV file with an index of the start and end offsets of its data lines. Lines are
+ * only decoded and tokenized on access. Empty lines, lines containing whitespace only, and lines
+ * starting with a "#" symbol are not indexed. The first indexed line is the header line.
+ * <p>
+ * Indices are immutable and cached process-wide by canonical path, size, and modification time of
+ * the file, so a file is only indexed again if it changes. Lines are decoded using the platform's
+ * default encoding, which must be ASCII-compatible.
+ * </p>
+ *
+ */
+@Immutable
+final class CsvLineIndex {
+
+	private static final LoadingCache<IndexKey, CsvLineIndex> INDICES = CacheBuilder.newBuilder()
+			.softValues()
+			.build(new CacheLoader<IndexKey, CsvLineIndex>() {
+				@Override
+				public CsvLineIndex load(final IndexKey key) throws IOException {
+					return new CsvLineIndex(key.path);
+				}
+			});
+
+	private final String fileName;
+	private final ByteBuffer buffer;
+	private final Charset charset;
+	private final String[] headers;
+	private final int[] lineStarts;
+	private final int[] lineEnds;
+	private final int lineCount;
+
+	private CsvLineIndex(final String fileName) throws IOException {
+		this.fileName = fileName;
+		this.charset = Charset.defaultCharset();
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(fileName, "r");
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("CSV file too large for memory mapping: " + fileName);
+			}
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer mbb = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+			this.buffer = mbb.asReadOnlyBuffer();
+		} finally {
+			IOUtils.closeQuietly(raf);
+		}
+
+		int capacity = 1024;
+		int[] starts = new int[capacity];
+		int[] ends = new int[capacity];
+		int count = 0;
+		String[] headerLine = null;
+
+		int limit = buffer.limit();
+		int pos = 0;
+		while (pos < limit) {
+			int start = pos;
+			int end = start;
+			while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+				end++;
+			}
+			pos = end;
+			if (pos < limit && buffer.get(pos) == '\r') {
+				pos++;
+			}
+			if (pos < limit && buffer.get(pos) == '\n') {
+				pos++;
+			}
+
+			int firstChar = start;
+			while (firstChar < end && (buffer.get(firstChar) & 0xff) <= ' ') {
+				firstChar++;
+			}
+			if (firstChar == end || buffer.get(firstChar) == '#') {
+				continue;
+			}
+
+			if (headerLine == null) {
+				StrTokenizer st = newTokenizer();
+				st.reset(decode(start, end));
+				headerLine = st.getTokenArray();
+				for (int i = 0; i < headerLine.length; ++i) {
+					if (StringUtils.isBlank(headerLine[i])) {
+						// blank headers are ignored
+						headerLine[i] = null;
+					}
+				}
+			} else {
+				if (count == capacity) {
+					capacity *= 2;
+					starts = Arrays.copyOf(starts, capacity);
+					ends = Arrays.copyOf(ends, capacity);
+				}
+				starts[count] = start;
+				ends[count] = end;
+				count++;
+			}
+		}
+
+		this.headers = headerLine != null ? headerLine : new String[0];
+		this.lineStarts = starts;
+		this.lineEnds = ends;
+		this.lineCount = count;
+	}
+
+	/**
+	 * Returns the index for the specified file. The file is only indexed if it has not been
+	 * indexed before or if it was modified since.
+	 *
+	 * @param fileName
+	 *            the name of the CSV file
+	 * @return the index
+	 */
+	static CsvLineIndex forFile(final String fileName) throws IOException {
+		File file = new File(fileName);
+		IndexKey key = new IndexKey(file.getCanonicalPath(), file.length(), file.lastModified());
+		try {
+			return INDICES.get(key);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			throw new IllegalStateException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Creates a tokenizer for lines of this index. Tokenizers are not thread-safe, so each reader
+	 * needs its own one.
+	 *
+	 * @return the tokenizer
+	 */
+	static StrTokenizer newTokenizer() {
+		StrTokenizer st = StrTokenizer.getCSVInstance();
+		st.setDelimiterChar(';');
+		return st;
+	}
+
+	/**
+	 * @return the number of data lines, i. e. not counting the header line
+	 */
+	int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Tokenizes the data line with the specified index.
+	 *
+	 * @param index
+	 *            the zero-based index of the data line
+	 * @param tokenizer
+	 *            the tokenizer to use (see {@link #newTokenizer()})
+	 * @return the line as map of header/value pairs backed by the shared header array
+	 */
+	Map<String, String> getLineMap(final int index, final StrTokenizer tokenizer) {
+		if (index < 0 || index >= lineCount) {
+			throw new IndexOutOfBoundsException("Line index " + index + " out of range for " + fileName);
+		}
+		tokenizer.reset(decode(lineStarts[index], lineEnds[index]));
+		return new LineMap(headers, tokenizer.getTokenArray());
+	}
+
+	String getFileName() {
+		return fileName;
+	}
+
+	private String decode(final int start, final int end) {
+		ByteBuffer line = buffer.duplicate();
+		line.limit(end);
+		line.position(start);
+		return charset.decode(line).toString();
+	}
+
+	/**
+	 * Read-only map view on a line's values and the shared headers. Values without a header and
+	 * values with a blank header are not included.
+	 */
+	static final class LineMap extends AbstractMap<String, String> {
+		private final String[] headers;
+		private final String[] values;
+		private final int size;
+
+		LineMap(final String[] headers, final String[] values) {
+			this.headers = headers;
+			this.values = values;
+			int n = Math.min(headers.length, values.length);
+			int s = 0;
+			for (int i = 0; i < n; ++i) {
+				if (headers[i] != null) {
+					s++;
+				}
+			}
+			this.size = s;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Set<Entry<String, String>> entrySet() {
+			return new AbstractSet<Entry<String, String>>() {
+				@Override
+				public Iterator<Entry<String, String>> iterator() {
+					return new Iterator<Entry<String, String>>() {
+						private final int n = Math.min(headers.length, values.length);
+						private int next = advance(0);
+
+						private int advance(final int from) {
+							int i = from;
+							while (i < n && headers[i] == null) {
+								i++;
+							}
+							return i;
+						}
+
+						@Override
+						public boolean hasNext() {
+							return next < n;
+						}
+
+						@Override
+						public Entry<String, String> next() {
+							if (next >= n) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, String> entry = new SimpleImmutableEntry<String, String>(headers[next], values[next]);
+							next = advance(next + 1);
+							return entry;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+	}
+
+	private static final class IndexKey {
+		final String path;
+		final long length;
+		final long lastModified;
+
+		IndexKey(final String path, final long length, final long lastModified) {
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(path, length, lastModified);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof IndexKey)) {
+				return false;
+			}
+			IndexKey other = (IndexKey) obj;
+			return path.equals(other.path) && length == other.length && lastModified == other.lastModified;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Process-wide cursor over the rows of a shared, immutable data set list. Data sources in
+ * partitioned mode use a cursor per file and data set key, so parallel script threads never get the
+ * same row and all threads together consume a file exactly once.
+ * <p>
+ * Cursors only move forward. Resetting a data source does not rewind the cursors it shares with
+ * other threads. All cursors are discarded at the end of a test run, so each run consumes the files
+ * from the start.
+ * </p>
+ *
+ */
+@ThreadSafe
+public final class SharedRowCursor {
+
+	private static final ConcurrentMap<String, SharedRowCursor> CURSORS = Maps.newConcurrentMap();
+
+	private final AtomicInteger nextRow = new AtomicInteger();
+
+	private SharedRowCursor() {
+		// use forKey
+	}
+
+	/**
+	 * Returns the process-wide cursor for the specified key, creating it if necessary.
+	 *
+	 * @param key
+	 *            identifies the shared rows, e. g. the canonical file path and the data set key
+	 * @return the cursor
+	 */
+	public static SharedRowCursor forKey(final String key) {
+		SharedRowCursor cursor = CURSORS.get(key);
+		if (cursor == null) {
+			cursor = new SharedRowCursor();
+			SharedRowCursor existing = CURSORS.putIfAbsent(key, cursor);
+			if (existing != null) {
+				cursor = existing;
+			}
+		}
+		return cursor;
+	}
+
+	/**
+	 * Returns the process-wide cursor for the rows of the specified file. The key includes the
+	 * modification time of the file, so a modified file gets a new cursor.
+	 *
+	 * @param name
+	 *            identifies the rows within the file, e. g. the data set key
+	 * @param file
+	 *            the file the rows are read from
+	 * @return the cursor
+	 */
+	public static SharedRowCursor forFile(final String name, final File file) throws IOException {
+		return forKey(name + ':' + file.getCanonicalPath() + '@' + file.lastModified());
+	}
+
+	/**
+	 * Discards all cursors, so shared rows are consumed from the start again.
+	 */
+	public static void clear() {
+		CURSORS.clear();
+	}
+
+	/**
+	 * Atomically claims the next row.
+	 *
+	 * @param rowCount
+	 *            the number of rows available
+	 * @return the index of the claimed row, or {@code -1} if all rows have been claimed
+	 */
+	public int claim(final int rowCount) {
+		while (true) {
+			int current = nextRow.get();
+			if (current >= rowCount) {
+				return -1;
+			}
+			if (nextRow.compareAndSet(current, current + 1)) {
+				return current;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether unclaimed rows are left. Since other threads may claim rows concurrently, a
+	 * subsequent {@link #claim(int)} may still fail.
+	 *
+	 * @param rowCount
+	 *            the number of rows available
+	 * @return {@code true} if unclaimed rows are left
+	 */
+	public boolean hasMore(final int rowCount) {
+		return nextRow.get() < rowCount;
+	}
+}
@@ -15,18 +15,22 @@
  */
 package com.mgmtp.jfunk.data.source;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.Iterators;
 import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.data.DataSet;
+import com.mgmtp.jfunk.data.DefaultDataSet;
 
 /**
  * Unit test for {@link CsvDataSource}.
@@ -34,6 +38,7 @@ import com.mgmtp.jfunk.data.DataSet;
  */
 public class CsvDataSourceTest {
 
+	private Configuration config;
 	private CsvDataSource ds;
 
 	/**
@@ -42,7 +47,7 @@ public class CsvDataSourceTest {
 	 */
 	@BeforeMethod
 	public void setUp() throws IOException {
-		Configuration config = new Configuration(Charsets.UTF_8);
+		config = new Configuration(Charsets.UTF_8);
 		InputStream is = null;
 		try {
 			is = Thread.currentThread().getContextClassLoader().getResourceAsStream("test-datasources.properties");
@@ -103,6 +108,74 @@ public class CsvDataSourceTest {
 		Assert.assertEquals(i, 2);
 	}
 
+	@Test
+	public void testStreamingMode() {
+		config.put("dataSource.csv.streaming", "true");
+		ds = new CsvDataSource(config);
+
+		for (int i = 1; i <= 2; ++i) {
+			Assert.assertTrue(ds.hasMoreData("bar"));
+			DataSet data = ds.getNextDataSet("bar");
+
+			Assert.assertEquals(data.getValue("quoted-string"), "dummy-" + i % 2);
+			Assert.assertEquals(data.getValue("quote-in-field"), "test\"string-" + i % 2);
+			Assert.assertEquals(data.getValue("unquoted"), "unquoted-" + i % 2);
+		}
+		Assert.assertFalse(ds.hasMoreData("bar"));
+		Assert.assertFalse(ds.hasMoreData("streaming"));
+
+		ds.reset();
+		Assert.assertTrue(ds.hasMoreData("bar"));
+		Assert.assertEquals(ds.getNextDataSet("foo").getValue("empty-quoted"), "");
+	}
+
+	@Test
+	public void testPartitionedMode() {
+		SharedRowCursor.clear();
+		config.put("dataSource.csv.partitioned", "true");
+		CsvDataSource ds1 = new CsvDataSource(config);
+		CsvDataSource ds2 = new CsvDataSource(config);
+
+		DataSet data1 = ds1.getNextDataSet("bar");
+		DataSet data2 = ds2.getNextDataSet("bar");
+		Assert.assertEquals(data1.getValue("unquoted"), "unquoted-1");
+		Assert.assertEquals(data2.getValue("unquoted"), "unquoted-0");
+
+		// both lines have been consumed by any of the data sources
+		Assert.assertFalse(ds1.hasMoreData("bar"));
+		Assert.assertFalse(ds2.hasMoreData("bar"));
+		Assert.assertNull(ds1.getNextDataSet("bar"));
+		Assert.assertTrue(ds2.hasMoreData("foo"));
+	}
+
+	@Test
+	public void testWrittenDataSetsAreReplayed() throws IOException {
+		DataSet first = new DefaultDataSet();
+		first.setValue("quoted", "a \"quoted\"; value");
+		first.setValue("only-first", "1");
+		DataSet second = new DefaultDataSet();
+		second.setValue("quoted", " blanks ");
+
+		File file = File.createTempFile("written", ".csv");
+		try {
+			int count = CsvDataSetWriter.write(Iterators.forArray(first, second), file);
+			Assert.assertEquals(count, 2);
+
+			config.put("dataSource.csv.written", file.getPath());
+			ds = new CsvDataSource(config);
+
+			DataSet data = ds.getNextDataSet("written");
+			Assert.assertEquals(data.getValue("quoted"), "a \"quoted\"; value");
+			Assert.assertEquals(data.getValue("only-first"), "1");
+			data = ds.getNextDataSet("written");
+			Assert.assertEquals(data.getValue("quoted"), " blanks ");
+			Assert.assertEquals(data.getValue("only-first"), "");
+			Assert.assertFalse(ds.hasMoreData("written"));
+		} finally {
+			FileUtils.deleteQuietly(file);
+		}
+	}
+
 	@Test
 	public void testCopyDataSet() {
 		ds.getNextDataSet("foo");
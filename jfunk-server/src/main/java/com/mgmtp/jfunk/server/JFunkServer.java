@@ -33,6 +33,7 @@ import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.core.JFunk;
 import com.mgmtp.jfunk.core.JFunkBase;
 import com.mgmtp.jfunk.core.config.ModulesLoader;
+import com.mgmtp.jfunk.core.scripting.ArchiveWriter;
 import com.mgmtp.jfunk.server.config.JFunkServerModule;
 
 /**
@@ -45,11 +46,13 @@ public class JFunkServer extends JFunkBase {
 	private static final int DEFAULT_PORT = 8182;
 
 	private final Server server;
+	private final ArchiveWriter archiveWriter;
 
 	@Inject
-	public JFunkServer(final Server server, final EventBus eventBus) {
+	public JFunkServer(final Server server, final ArchiveWriter archiveWriter, final EventBus eventBus) {
 		super(eventBus);
 		this.server = server;
+		this.archiveWriter = archiveWriter;
 	}
 
 	/**
@@ -58,8 +61,13 @@ public class JFunkServer extends JFunkBase {
 	 */
 	@Override
 	protected void doExecute() throws Exception {
-		server.start();
-		server.join();
+		try {
+			server.start();
+			server.join();
+		} finally {
+			// make sure all archives are written before the run ends
+			archiveWriter.flush();
+		}
 	}
 
 	/**
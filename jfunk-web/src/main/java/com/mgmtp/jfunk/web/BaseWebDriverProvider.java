@@ -44,31 +44,54 @@ public abstract class BaseWebDriverProvider implements Provider<WebDriver> {
 	private final Set<WebDriverEventListener> eventListeners;
 	protected final Map<String, DesiredCapabilities> capabilitiesMap;
 	private final EventBus eventBus;
+	private final WebDriverPool webDriverPool;
 
+	/**
+	 * Creates a provider which does not support pooling.
+	 */
 	public BaseWebDriverProvider(final Configuration config, final Set<WebDriverEventListener> eventListeners,
 			final Map<String, DesiredCapabilities> capabilitiesMap, final EventBus eventBus) {
+		this(config, eventListeners, capabilitiesMap, eventBus, null);
+	}
+
+	/**
+	 * Creates a provider which leases WebDrivers from the specified pool if
+	 * {@link WebConstants#WEBDRIVER_POOL_ENABLED pooling} is enabled.
+	 */
+	public BaseWebDriverProvider(final Configuration config, final Set<WebDriverEventListener> eventListeners,
+			final Map<String, DesiredCapabilities> capabilitiesMap, final EventBus eventBus, final WebDriverPool webDriverPool) {
 		this.config = config;
 		this.eventListeners = eventListeners;
 		this.capabilitiesMap = capabilitiesMap;
 		this.eventBus = eventBus;
+		this.webDriverPool = webDriverPool;
 	}
 
 	@Override
 	public WebDriver get() {
 		String webDriverKey = config.get(WebConstants.WEBDRIVER_KEY);
-		log.info("Creating new WebDriver instance with key '{}'...", webDriverKey);
-
 		DesiredCapabilities capabilities = capabilitiesMap.get(webDriverKey);
 
 		// post event so users can customize capabilities
 		eventBus.post(new BeforeWebDriverCreationEvent(webDriverKey, capabilities));
 
-		WebDriver webDriver = createWebDriver(capabilities);
-		checkState(!(webDriver instanceof EventFiringWebDriver),
-				"WebDrivers must not be wrapped explicitly into an EventFiringWebDriver. This is implicitly done by jFunk.");
-
+		boolean pooled = webDriverPool != null && config.getBoolean(WebConstants.WEBDRIVER_POOL_ENABLED, false);
+		WebDriver webDriver = pooled ? webDriverPool.lease(webDriverKey, capabilities) : null;
 		long implicitWaitSeconds = config.getLong(WebConstants.WEBDRIVER_IMPLICIT_WAIT_SECONDS, 0L);
-		if (implicitWaitSeconds > 0) {
+
+		if (webDriver == null) {
+			log.info("Creating new WebDriver instance with key '{}'...", webDriverKey);
+			webDriver = createWebDriver(capabilities);
+			checkState(!(webDriver instanceof EventFiringWebDriver),
+					"WebDrivers must not be wrapped explicitly into an EventFiringWebDriver. This is implicitly done by jFunk.");
+			if (pooled) {
+				webDriverPool.add(webDriver, webDriverKey, capabilities);
+			}
+			if (implicitWaitSeconds > 0) {
+				webDriver.manage().timeouts().implicitlyWait(implicitWaitSeconds, TimeUnit.SECONDS);
+			}
+		} else {
+			// the previous script may have used a different timeout
 			webDriver.manage().timeouts().implicitlyWait(implicitWaitSeconds, TimeUnit.SECONDS);
 		}
 
@@ -35,8 +35,8 @@ public class FirefoxDriverProvider extends BaseWebDriverProvider {
 
 	@Inject
 	protected FirefoxDriverProvider(final Configuration config, final Set<WebDriverEventListener> eventListeners,
-			final Map<String, DesiredCapabilities> capabilitiesMap, final EventBus eventBus) {
-		super(config, eventListeners, capabilitiesMap, eventBus);
+			final Map<String, DesiredCapabilities> capabilitiesMap, final EventBus eventBus, final WebDriverPool webDriverPool) {
+		super(config, eventListeners, capabilitiesMap, eventBus, webDriverPool);
 	}
 
 	@Override
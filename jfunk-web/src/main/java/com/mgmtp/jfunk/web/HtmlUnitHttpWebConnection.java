@@ -25,6 +25,7 @@ import org.apache.http.conn.scheme.LayeredSchemeSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 
 import com.gargoylesoftware.htmlunit.HttpWebConnection;
 import com.gargoylesoftware.htmlunit.WebClient;
@@ -35,10 +36,21 @@ import com.mgmtp.jfunk.web.ssl.JFunkSSLSocketFactory;
 /**
  * This {@link WebConnection} uses its own {@link LayeredSchemeSocketFactory} as the default
  * HttpClient implementation does not work with sites which require a client certificate.
+ * Connections are pooled with limits similar to those of real browsers.
  * 
  */
 public class HtmlUnitHttpWebConnection extends HttpWebConnection {
 
+	/**
+	 * The maximum number of connections per route, which is the limit most browsers use per host.
+	 */
+	public static final int MAX_CONNECTIONS_PER_ROUTE = 6;
+
+	/**
+	 * The maximum number of connections of a web client.
+	 */
+	public static final int MAX_CONNECTIONS_TOTAL = 24;
+
 	private final String keyStore;
 	private final String keyStorePassword;
 	private final String keyStoreType;
@@ -80,11 +92,21 @@ public class HtmlUnitHttpWebConnection extends HttpWebConnection {
 		SchemeRegistry sr = ccm.getSchemeRegistry();
 		sr.register(new Scheme("https", 443, socketFactory));
 
+		if (ccm instanceof PoolingClientConnectionManager) {
+			PoolingClientConnectionManager pccm = (PoolingClientConnectionManager) ccm;
+			pccm.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+			pccm.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+		}
+
 		return httpClient;
 	}
 
+	/*
+	 * Overridden for visibility only. The super implementation already synchronizes the lazy
+	 * creation of the client.
+	 */
 	@Override
-	protected synchronized AbstractHttpClient getHttpClient() {
+	protected AbstractHttpClient getHttpClient() {
 		return super.getHttpClient();
 	}
 }
\ No newline at end of file
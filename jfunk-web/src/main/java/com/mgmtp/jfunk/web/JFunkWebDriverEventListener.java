@@ -15,8 +15,6 @@
  */
 package com.mgmtp.jfunk.web;
 
-import static org.apache.commons.io.FileUtils.copyFile;
-import static org.apache.commons.io.FileUtils.deleteQuietly;
 import static org.apache.commons.io.FileUtils.writeStringToFile;
 
 import java.io.File;
@@ -39,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.google.common.io.Files;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.config.ScriptScoped;
 import com.mgmtp.jfunk.common.util.Configuration;
@@ -46,6 +45,7 @@ import com.mgmtp.jfunk.common.util.SaveOutput;
 import com.mgmtp.jfunk.core.config.ModuleArchiveDir;
 import com.mgmtp.jfunk.web.util.DumpFileCreator;
 import com.mgmtp.jfunk.web.util.HtmlValidatorUtil;
+import com.mgmtp.jfunk.web.util.PageDumpStore;
 import com.mgmtp.jfunk.web.util.WebDriverUtils;
 
 /**
@@ -60,14 +60,16 @@ public class JFunkWebDriverEventListener implements WebDriverEventListener {
 	private final Configuration config;
 	private final Provider<File> moduleArchiveDirProvider;
 	private final Provider<DumpFileCreator> dumpFileCreatorProvider;
+	private final Provider<PageDumpStore> pageDumpStoreProvider;
 
 	@Inject
 	public JFunkWebDriverEventListener(final Configuration config,
 			@ModuleArchiveDir final Provider<File> moduleArchiveDirProvider,
-			final Provider<DumpFileCreator> dumpFileCreatorProvider) {
+			final Provider<DumpFileCreator> dumpFileCreatorProvider, final Provider<PageDumpStore> pageDumpStoreProvider) {
 		this.config = config;
 		this.moduleArchiveDirProvider = moduleArchiveDirProvider;
 		this.dumpFileCreatorProvider = dumpFileCreatorProvider;
+		this.pageDumpStoreProvider = pageDumpStoreProvider;
 		this.saveOutputMap = new EnumMap<SaveOutput, Boolean>(SaveOutput.class);
 		for (SaveOutput saveOutput : SaveOutput.values()) {
 			// active flag for every output type
@@ -176,8 +178,9 @@ public class JFunkWebDriverEventListener implements WebDriverEventListener {
 	 * Saves the currently displayed browser window. The page title is used for the filename -
 	 * preceded by some identifying information (thread, counter). Pages of the same type are
 	 * collected inside the same subdirectory. The subdirectory uses
-	 * {@link SaveOutput#getIdentifier()} for its name. If an alert is present, saving is not
-	 * supported and thus skipped.
+	 * {@link SaveOutput#getIdentifier()} for its name. HTML pages are saved by the
+	 * {@link PageDumpStore}, which stores identical pages only once. If an alert is present, saving
+	 * is not supported and thus skipped.
 	 * 
 	 * @param action
 	 *            the event which triggered to save the page. Will be included in the filename.
@@ -204,6 +207,7 @@ public class JFunkWebDriverEventListener implements WebDriverEventListener {
 			}
 		}
 
+		String currentUrl = driver.getCurrentUrl();
 		for (SaveOutput saveOutput : SaveOutput.values()) {
 			boolean saveSwitch = saveOutputMap.get(saveOutput);
 			if (!saveSwitch) {
@@ -211,36 +215,41 @@ public class JFunkWebDriverEventListener implements WebDriverEventListener {
 				continue;
 			}
 
+			if (saveOutput == SaveOutput.HTML) {
+				try {
+					StringBuilder html = new StringBuilder();
+					html.append("<!-- Requested URL: ");
+					html.append(currentUrl);
+					html.append(" -->");
+					html.append(IOUtils.LINE_SEPARATOR);
+					html.append(driver.getPageSource());
+					String pagePath = pageDumpStoreProvider.get().store(action, currentUrl, html.toString());
+					log.trace("Saving page: filename={}, action={}, trigger={}, response={}",
+							pagePath, action, triggeredBy, currentUrl);
+				} catch (Exception ex) {
+					log.error("Could not save page: {}. {}", currentUrl, ex.getMessage());
+				}
+				continue;
+			}
+
 			File f = null;
 			try {
 				f = dumpFileCreatorProvider.get().createDumpFile(new File(moduleArchiveDir, saveOutput.getIdentifier()),
-						saveOutput.getExtension(), driver.getCurrentUrl(), action);
+						saveOutput.getExtension(), currentUrl, action);
 
 				if (f == null) {
 					return;
 				}
 
 				switch (saveOutput) {
-					case HTML:
-						StringBuilder html = new StringBuilder();
-						html.append("<!-- Requested URL: ");
-						html.append(driver.getCurrentUrl());
-						html.append(" -->");
-						html.append(IOUtils.LINE_SEPARATOR);
-						html.append(driver.getPageSource());
-						writeStringToFile(f, html.toString(), "UTF-8");
-						copyFile(f, new File(moduleArchiveDir, JFunkConstants.LASTPAGE_HTML));
-						log.trace("Saving page: filename={}, action={}, trigger={}, response={}",
-								f.getName(), action, triggeredBy, driver.getCurrentUrl());
-						break;
 					case PNG:
 						if (driver instanceof TakesScreenshot) {
 							File tmpFile = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
 							if (tmpFile != null) {
-								copyFile(tmpFile, f);
+								Files.createParentDirs(f);
+								Files.move(tmpFile, f);
 								log.trace("Saving page: filename={}, action={}, trigger={}, response={}",
-										f.getName(), action, triggeredBy, driver.getCurrentUrl());
-								deleteQuietly(tmpFile);
+										f.getName(), action, triggeredBy, currentUrl);
 							}
 						}
 						break;
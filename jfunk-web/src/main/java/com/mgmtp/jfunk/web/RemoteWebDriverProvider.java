@@ -42,8 +42,8 @@ public class RemoteWebDriverProvider extends BaseWebDriverProvider {
 
 	@Inject
 	public RemoteWebDriverProvider(final Configuration config, final Set<WebDriverEventListener> eventListeners,
-			final Map<String, DesiredCapabilities> capabilitiesMap, final EventBus eventBus) {
-		super(config, eventListeners, capabilitiesMap, eventBus);
+			final Map<String, DesiredCapabilities> capabilitiesMap, final EventBus eventBus, final WebDriverPool webDriverPool) {
+		super(config, eventListeners, capabilitiesMap, eventBus, webDriverPool);
 	}
 
 	@Override
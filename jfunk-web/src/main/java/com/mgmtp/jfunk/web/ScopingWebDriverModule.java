@@ -44,6 +44,8 @@ import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.web.util.DumpFileCreator;
 import com.mgmtp.jfunk.web.util.FormInputHandler;
+import com.mgmtp.jfunk.web.util.PageDumpFlusher;
+import com.mgmtp.jfunk.web.util.PageDumpStore;
 import com.mgmtp.jfunk.web.util.WebDriverTool;
 import com.mgmtp.jfunk.web.util.WebElementFinder;
 
@@ -78,6 +80,8 @@ abstract class ScopingWebDriverModule extends BaseWebDriverModule {
 		bind(BrowserVersion.class).toInstance(BrowserVersion.INTERNET_EXPLORER_8);
 		bind(AjaxController.class).to(NicelyResynchronizingAjaxController.class);
 		bind(DumpFileCreator.class);
+		bind(PageDumpStore.class);
+		bindEventHandler().to(PageDumpFlusher.class);
 
 		bindWebDriver(WebConstants.WEBDRIVER_HTMLUNIT, HtmlUnitDriverProvider.class);
 		bindWebDriver(WebConstants.WEBDRIVER_FIREFOX, FirefoxDriverProvider.class);
@@ -86,6 +90,7 @@ abstract class ScopingWebDriverModule extends BaseWebDriverModule {
 		bindWebDriver(WebConstants.WEBDRIVER_REMOTE, RemoteWebDriverProvider.class);
 
 		bindDisposable(Key.get(WebDriver.class)).to(WebDriverDisposable.class);
+		bindEventHandler().to(WebDriverPool.class);
 
 		bind(new TypeLiteral<Map<String, DesiredCapabilities>>() {
 			//
@@ -66,6 +66,9 @@ public final class WebConstants {
 	public static final String WEBDRIVER_REMOTE = "remote";
 	public static final String WEBDRIVER_IMPLICIT_WAIT_SECONDS = "webdriver.implicit.wait.seconds";
 	public static final String WEBDRIVER_DONT_QUIT = "webdriver.dont.quit";
+	public static final String WEBDRIVER_POOL_ENABLED = "webdriver.pool.enabled";
+	public static final String WEBDRIVER_POOL_MAX_SIZE = "webdriver.pool.max.size";
+	public static final String WEBDRIVER_POOL_MAX_REUSE = "webdriver.pool.max.reuse";
 
 	/*
 	 * Properties for the default WebElementFinder
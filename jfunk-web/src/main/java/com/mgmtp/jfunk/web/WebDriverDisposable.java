@@ -20,6 +20,7 @@ import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,7 +28,8 @@ import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.common.util.Disposable;
 
 /**
- * {@link Disposable} for quitting a {@link WebDriver} instance.
+ * {@link Disposable} for quitting a {@link WebDriver} instance. Instances leased from the
+ * {@link WebDriverPool} are returned to the pool instead.
  * 
  * @author rnaegele
  */
@@ -36,18 +38,27 @@ public class WebDriverDisposable implements Disposable<WebDriver> {
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	private final Provider<Configuration> configurationProvider;
+	private final WebDriverPool webDriverPool;
 
 	@Inject
-	public WebDriverDisposable(final Provider<Configuration> configurationProvider) {
+	public WebDriverDisposable(final Provider<Configuration> configurationProvider, final WebDriverPool webDriverPool) {
 		this.configurationProvider = configurationProvider;
+		this.webDriverPool = webDriverPool;
 	}
 
 	/**
-	 * Calls {@link WebDriver#quit()} on the instance return by the provider.
+	 * Calls {@link WebDriver#quit()} on the instance return by the provider, or returns it to the
+	 * {@link WebDriverPool} if it was leased from there.
 	 */
 	@Override
 	public void dispose(final WebDriver source) {
+		WebDriver webDriver = source instanceof EventFiringWebDriver ? ((EventFiringWebDriver) source).getWrappedDriver() : source;
 		if (configurationProvider.get().getBoolean(WebConstants.WEBDRIVER_DONT_QUIT)) {
+			// the browser is left open, so it must not be reused
+			webDriverPool.forget(webDriver);
+			return;
+		}
+		if (webDriverPool.release(webDriver)) {
 			return;
 		}
 		logger.info("Quitting WebDriver...");
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+
+/**
+ * <p>
+ * Pool of {@link WebDriver} instances which are reused across scripts, so browsers need not be
+ * started for every script. Pooling is enabled with the property
+ * {@code webdriver.pool.enabled = true}. Pooled instances are only reused for the same WebDriver
+ * key and equal capabilities.
+ * </p>
+ * <p>
+ * When a script has finished, its WebDriver is reset and returned to the pool: all windows but one
+ * are closed, cookies and web storage of the current page are cleared, and {@code about:blank} is
+ * loaded. Note that WebDriver can only delete cookies of the current domain. A WebDriver is quit
+ * instead of being pooled if resetting fails, if it has been used
+ * {@code webdriver.pool.max.reuse} times, or if {@code webdriver.pool.max.size} instances are
+ * already idle. Idle instances are checked before they are reused. All idle instances are quit
+ * after the run.
+ * </p>
+ * <p>
+ * HtmlUnit drivers are cheap to create and are never pooled.
+ * </p>
+ *
+ * <pre>
+ * webdriver.pool.enabled = true
+ * webdriver.pool.max.size = 4
+ * webdriver.pool.max.reuse = 50
+ * </pre>
+ *
+ * @since 3.1.0
+ */
+@Singleton
+public class WebDriverPool {
+	private static final int DEFAULT_MAX_SIZE = 4;
+	private static final int DEFAULT_MAX_REUSE = 50;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Provider<Configuration> configProvider;
+
+	private final LinkedList<PooledWebDriver> idleWebDrivers = new LinkedList<PooledWebDriver>(); // guarded by this
+	private final Map<WebDriver, PooledWebDriver> leasedWebDrivers = Maps.newIdentityHashMap(); // guarded by this
+
+	private long leaseCount; // guarded by this
+	private long reuseCount; // guarded by this
+	private long discardCount; // guarded by this
+	private long totalLeaseMillis; // guarded by this
+	private long maxLeaseMillis; // guarded by this
+
+	@Inject
+	public WebDriverPool(final Provider<Configuration> configProvider) {
+		this.configProvider = configProvider;
+	}
+
+	/**
+	 * Leases an idle WebDriver with the specified key and capabilities.
+	 *
+	 * @param webDriverKey
+	 *            the WebDriver key
+	 * @param capabilities
+	 *            the capabilities the WebDriver must have been created with
+	 * @return the WebDriver, or {@code null} if no matching WebDriver is idle, in which case the
+	 *         caller must create a new one and {@link #add(WebDriver, String, Capabilities) add} it
+	 */
+	public WebDriver lease(final String webDriverKey, final Capabilities capabilities) {
+		String poolKey = createPoolKey(webDriverKey, capabilities);
+		while (true) {
+			PooledWebDriver pooled = pollIdle(poolKey);
+			if (pooled == null) {
+				return null;
+			}
+			if (isAlive(pooled.webDriver)) {
+				synchronized (this) {
+					pooled.leased();
+					leasedWebDrivers.put(pooled.webDriver, pooled);
+					leaseCount++;
+					reuseCount++;
+				}
+				log.info("Reusing pooled WebDriver instance with key '{}' ({} uses)", webDriverKey, pooled.useCount);
+				return pooled.webDriver;
+			}
+			discard(pooled, "it is not responding anymore");
+		}
+	}
+
+	/**
+	 * Adds a newly created WebDriver to the pool. The WebDriver is considered leased.
+	 *
+	 * @param webDriver
+	 *            the WebDriver, not wrapped into an
+	 *            {@link org.openqa.selenium.support.events.EventFiringWebDriver}
+	 * @param webDriverKey
+	 *            the WebDriver key
+	 * @param capabilities
+	 *            the capabilities the WebDriver was created with
+	 */
+	public void add(final WebDriver webDriver, final String webDriverKey, final Capabilities capabilities) {
+		PooledWebDriver pooled = new PooledWebDriver(webDriver, createPoolKey(webDriverKey, capabilities));
+		synchronized (this) {
+			pooled.leased();
+			leasedWebDrivers.put(webDriver, pooled);
+			leaseCount++;
+		}
+	}
+
+	/**
+	 * Returns a leased WebDriver to the pool. The WebDriver is reset or quit if it cannot be reused.
+	 *
+	 * @param webDriver
+	 *            the WebDriver
+	 * @return {@code false} if the WebDriver was not leased from this pool, in which case it must
+	 *         be quit by the caller
+	 */
+	public boolean release(final WebDriver webDriver) {
+		PooledWebDriver pooled = remove(webDriver);
+		if (pooled == null) {
+			return false;
+		}
+
+		Configuration config = configProvider.get();
+		int maxReuse = config.getInteger(WebConstants.WEBDRIVER_POOL_MAX_REUSE, DEFAULT_MAX_REUSE);
+		int maxSize = config.getInteger(WebConstants.WEBDRIVER_POOL_MAX_SIZE, DEFAULT_MAX_SIZE);
+
+		if (pooled.useCount >= maxReuse) {
+			discard(pooled, "it has reached the maximum number of uses");
+			return true;
+		}
+		try {
+			reset(webDriver);
+		} catch (RuntimeException ex) {
+			log.warn("Error resetting WebDriver: {}", ex.getMessage());
+			discard(pooled, "it could not be reset");
+			return true;
+		}
+
+		synchronized (this) {
+			if (idleWebDrivers.size() < maxSize) {
+				idleWebDrivers.addLast(pooled);
+				return true;
+			}
+		}
+		discard(pooled, "the pool is full");
+		return true;
+	}
+
+	/**
+	 * Removes a leased WebDriver from the pool without quitting it.
+	 *
+	 * @param webDriver
+	 *            the WebDriver
+	 * @return {@code true} if the WebDriver was leased from this pool
+	 */
+	public boolean forget(final WebDriver webDriver) {
+		return remove(webDriver) != null;
+	}
+
+	/**
+	 * Quits all idle WebDrivers.
+	 */
+	public void closeAll() {
+		List<PooledWebDriver> toQuit;
+		synchronized (this) {
+			toQuit = newArrayList(idleWebDrivers);
+			idleWebDrivers.clear();
+		}
+		for (PooledWebDriver pooled : toQuit) {
+			discard(pooled, "the run has finished");
+		}
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		log.info("WebDriver pool: {}", getStats());
+		closeAll();
+	}
+
+	/**
+	 * @return a snapshot of the pool's lease statistics
+	 */
+	public synchronized Stats getStats() {
+		return new Stats(leaseCount, reuseCount, discardCount, idleWebDrivers.size(), leasedWebDrivers.size(), totalLeaseMillis,
+				maxLeaseMillis);
+	}
+
+	private synchronized PooledWebDriver pollIdle(final String poolKey) {
+		for (Iterator<PooledWebDriver> it = idleWebDrivers.iterator(); it.hasNext();) {
+			PooledWebDriver pooled = it.next();
+			if (pooled.poolKey.equals(poolKey)) {
+				it.remove();
+				return pooled;
+			}
+		}
+		return null;
+	}
+
+	private synchronized PooledWebDriver remove(final WebDriver webDriver) {
+		PooledWebDriver pooled = leasedWebDrivers.remove(webDriver);
+		if (pooled != null) {
+			long leaseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pooled.leaseStartNanos);
+			totalLeaseMillis += leaseMillis;
+			maxLeaseMillis = Math.max(maxLeaseMillis, leaseMillis);
+		}
+		return pooled;
+	}
+
+	private void discard(final PooledWebDriver pooled, final String reason) {
+		synchronized (this) {
+			discardCount++;
+		}
+		log.info("Quitting pooled WebDriver instance because {}...", reason);
+		try {
+			pooled.webDriver.quit();
+		} catch (RuntimeException ex) {
+			log.warn("Error quitting WebDriver: {}", ex.getMessage());
+		}
+	}
+
+	private void reset(final WebDriver webDriver) {
+		Set<String> windowHandles = webDriver.getWindowHandles();
+		String firstHandle = Iterables.getFirst(windowHandles, null);
+		for (String handle : windowHandles) {
+			if (!handle.equals(firstHandle)) {
+				webDriver.switchTo().window(handle).close();
+			}
+		}
+		if (firstHandle != null) {
+			webDriver.switchTo().window(firstHandle);
+		}
+
+		// cookies and storage can only be cleared for the current page, so this must happen before navigating away
+		webDriver.manage().deleteAllCookies();
+		if (webDriver instanceof JavascriptExecutor) {
+			try {
+				((JavascriptExecutor) webDriver).executeScript(
+						"try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}");
+			} catch (RuntimeException ex) {
+				// JavaScript may be disabled
+				log.debug("Could not clear web storage: {}", ex.getMessage());
+			}
+		}
+		webDriver.get("about:blank");
+	}
+
+	private boolean isAlive(final WebDriver webDriver) {
+		try {
+			return !webDriver.getWindowHandles().isEmpty();
+		} catch (RuntimeException ex) {
+			return false;
+		}
+	}
+
+	/*
+	 * Capabilities may contain values without proper equals/toString implementations, so a key
+	 * string is created with proxies described by their settings.
+	 */
+	private static String createPoolKey(final String webDriverKey, final Capabilities capabilities) {
+		StringBuilder sb = new StringBuilder(webDriverKey);
+		if (capabilities != null) {
+			SortedMap<String, Object> sortedCapabilities = Maps.newTreeMap();
+			sortedCapabilities.putAll(capabilities.asMap());
+			for (Entry<String, Object> entry : sortedCapabilities.entrySet()) {
+				sb.append('|').append(entry.getKey()).append('=');
+				Object value = entry.getValue();
+				if (value instanceof Proxy) {
+					Proxy proxy = (Proxy) value;
+					sb.append("Proxy[").append(proxy.getProxyType()).append(',').append(proxy.getHttpProxy()).append(',')
+							.append(proxy.getSslProxy()).append(',').append(proxy.getFtpProxy()).append(',')
+							.append(proxy.getSocksProxy()).append(',').append(proxy.getNoProxy()).append(',')
+							.append(proxy.getProxyAutoconfigUrl()).append(']');
+				} else {
+					sb.append(value);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Lease statistics of a {@link WebDriverPool}.
+	 */
+	public static class Stats {
+		private final long leaseCount;
+		private final long reuseCount;
+		private final long discardCount;
+		private final int idleCount;
+		private final int leasedCount;
+		private final long totalLeaseMillis;
+		private final long maxLeaseMillis;
+
+		Stats(final long leaseCount, final long reuseCount, final long discardCount, final int idleCount, final int leasedCount,
+				final long totalLeaseMillis, final long maxLeaseMillis) {
+			this.leaseCount = leaseCount;
+			this.reuseCount = reuseCount;
+			this.discardCount = discardCount;
+			this.idleCount = idleCount;
+			this.leasedCount = leasedCount;
+			this.totalLeaseMillis = totalLeaseMillis;
+			this.maxLeaseMillis = maxLeaseMillis;
+		}
+
+		/**
+		 * @return the number of leases, including those of newly created WebDrivers
+		 */
+		public long getLeaseCount() {
+			return leaseCount;
+		}
+
+		/**
+		 * @return the number of leases served by idle WebDrivers
+		 */
+		public long getReuseCount() {
+			return reuseCount;
+		}
+
+		/**
+		 * @return the number of pooled WebDrivers that were quit
+		 */
+		public long getDiscardCount() {
+			return discardCount;
+		}
+
+		/**
+		 * @return the number of idle WebDrivers
+		 */
+		public int getIdleCount() {
+			return idleCount;
+		}
+
+		/**
+		 * @return the number of currently leased WebDrivers
+		 */
+		public int getLeasedCount() {
+			return leasedCount;
+		}
+
+		/**
+		 * @return the total time in milliseconds WebDrivers were leased
+		 */
+		public long getTotalLeaseMillis() {
+			return totalLeaseMillis;
+		}
+
+		/**
+		 * @return the maximum time in milliseconds a WebDriver was leased
+		 */
+		public long getMaxLeaseMillis() {
+			return maxLeaseMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats[leaseCount=%d, reuseCount=%d, discardCount=%d, idleCount=%d, leasedCount=%d, "
+					+ "totalLeaseMillis=%d, maxLeaseMillis=%d]", leaseCount, reuseCount, discardCount, idleCount, leasedCount,
+					totalLeaseMillis, maxLeaseMillis);
+		}
+	}
+
+	private static class PooledWebDriver {
+		private final WebDriver webDriver;
+		private final String poolKey;
+		private int useCount;
+		private long leaseStartNanos;
+
+		PooledWebDriver(final WebDriver webDriver, final String poolKey) {
+			this.webDriver = webDriver;
+			this.poolKey = poolKey;
+		}
+
+		void leased() {
+			useCount++;
+			leaseStartNanos = System.nanoTime();
+		}
+	}
+}
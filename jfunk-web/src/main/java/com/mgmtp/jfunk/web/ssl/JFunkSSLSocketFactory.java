@@ -17,11 +17,13 @@ package com.mgmtp.jfunk.web.ssl;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.CharBuffer;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -30,16 +32,22 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.conn.scheme.LayeredSchemeSocketFactory;
 import org.apache.http.params.HttpConnectionParams;
@@ -47,16 +55,36 @@ import org.apache.http.params.HttpParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.mgmtp.jfunk.common.exception.JFunkException;
 
 /**
  * {@link LayeredSchemeSocketFactory} implementation for SSL and client authentication. As
  * HttpClient seems to have a problem when connecting to SSL sites which require a client
  * certificate we are using this SocketFactory implementation.
+ * <p>
+ * SSL contexts are shared by all instances using the same key and trust stores, so the stores are
+ * only loaded once and TLS sessions can be resumed across connections and web clients. Stores
+ * modified on disk are loaded again by instances created afterwards. At most
+ * {@value #MAX_SSL_CONTEXTS} contexts are kept.
+ * </p>
  * 
  */
 public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 
+	private static final int MAX_SSL_CONTEXTS = 16;
+
+	/**
+	 * SSL contexts by key store and trust store, including their types, modification times, and
+	 * hashes of their passwords.
+	 */
+	private static final Cache<List<Object>, SSLContext> SSL_CONTEXTS = CacheBuilder.newBuilder().maximumSize(MAX_SSL_CONTEXTS)
+			.build();
+
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	private final URL keyStoreUrl;
@@ -66,7 +94,7 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 	private final char[] trustStorePassword;
 	private final String trustStoreType;
 
-	private volatile SSLContext sslContext;
+	private volatile SSLSocketFactory sslSocketFactory;
 
 	/**
 	 * @param keyStoreUrl
@@ -204,20 +232,57 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 		log.debug("  Issuer DN: {}", cert.getIssuerDN());
 	}
 
-	private SSLContext getSSLContext() {
-		if (this.sslContext == null) {
+	private SSLSocketFactory getSSLSocketFactory() {
+		if (this.sslSocketFactory == null) {
 			synchronized (this) {
-				if (sslContext == null) {
-					this.sslContext = createSSLContext();
+				if (sslSocketFactory == null) {
+					this.sslSocketFactory = getSSLContext().getSocketFactory();
 				}
 			}
 		}
-		return this.sslContext;
+		return this.sslSocketFactory;
 	}
 
+	private SSLContext getSSLContext() {
+		List<Object> key = Arrays.<Object>asList(storeKey(keyStoreUrl, keyStorePassword, keyStoreType),
+				storeKey(trustStoreUrl, trustStorePassword, trustStoreType));
+		try {
+			return SSL_CONTEXTS.get(key, new Callable<SSLContext>() {
+				@Override
+				public SSLContext call() {
+					return createSSLContext();
+				}
+			});
+		} catch (ExecutionException ex) {
+			throw new JFunkException("Error creating SSL context", ex.getCause());
+		} catch (UncheckedExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	private static List<Object> storeKey(final URL url, final char[] password, final String type) {
+		if (url == null) {
+			return null;
+		}
+		File file = FileUtils.toFile(url);
+		long lastModified = file != null ? file.lastModified() : 0L;
+		// the password itself is not kept in the key
+		String passwordHash = password != null ? Hashing.sha256().hashString(CharBuffer.wrap(password), Charsets.UTF_8).toString()
+				: null;
+		return Arrays.<Object>asList(url.toExternalForm(), lastModified, type, passwordHash);
+	}
+
+	/**
+	 * Creates an unconnected plain socket. The SSL socket is layered on top of it in
+	 * {@link #connectSocket(Socket, InetSocketAddress, InetSocketAddress, HttpParams)}, where host
+	 * and port are known, which is required for resuming TLS sessions.
+	 */
 	@Override
 	public Socket createSocket(final HttpParams params) throws IOException {
-		return getSSLContext().getSocketFactory().createSocket();
+		return new Socket();
 	}
 
 	@Override
@@ -239,7 +304,7 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 			return socket;
 		}
 
-		return getSSLContext().getSocketFactory().createSocket(socket, remoteAddress.getHostName(), remoteAddress.getPort(), true);
+		return getSSLSocketFactory().createSocket(socket, remoteAddress.getHostName(), remoteAddress.getPort(), true);
 	}
 
 	@Override
@@ -252,6 +317,6 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 
 	@Override
 	public Socket createLayeredSocket(final Socket socket, final String host, final int port, final boolean autoClose) throws IOException {
-		return getSSLContext().getSocketFactory().createSocket(socket, host, port, autoClose);
+		return getSSLSocketFactory().createSocket(socket, host, port, autoClose);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.core.event.AfterModuleEvent;
+
+/**
+ * Event handler which makes sure all page dumps of a module have been written before the module
+ * archive is zipped up.
+ *
+ * @see PageDumpStore
+ * @since 3.1.0
+ */
+@Singleton
+public class PageDumpFlusher {
+
+	private final Provider<PageDumpStore> pageDumpStoreProvider;
+
+	@Inject
+	public PageDumpFlusher(final Provider<PageDumpStore> pageDumpStoreProvider) {
+		this.pageDumpStoreProvider = pageDumpStoreProvider;
+	}
+
+	@Subscribe
+	@AllowConcurrentEvents
+	public void handleEvent(@SuppressWarnings("unused") final AfterModuleEvent event) {
+		pageDumpStoreProvider.get().flush();
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.common.config.ModuleScoped;
+import com.mgmtp.jfunk.common.util.SaveOutput;
+import com.mgmtp.jfunk.core.config.ModuleArchiveDir;
+
+/**
+ * Stores HTML page dumps in the module archive. Pages are stored by the SHA-1 hash of their
+ * content, so identical pages, e. g. consecutive dumps of an unchanged page, are stored only once.
+ * Every dump is recorded in an index file with the columns counter, action, URL, and page file,
+ * separated by tabs. {@link JFunkConstants#LASTPAGE_HTML} redirects to the last page dumped.
+ * <p>
+ * Files are written in the order of the dumps by a background thread, so the test thread only
+ * computes the hash. If too many dumps are waiting, the test thread blocks until the writer has
+ * caught up. {@link #flush()} must be called before the module archive is zipped up, which is done
+ * by the {@link PageDumpFlusher}.
+ * </p>
+ *
+ * @since 3.1.0
+ */
+@ModuleScoped
+@NotThreadSafe
+public class PageDumpStore {
+
+	/**
+	 * The name of the index file in the page directory.
+	 */
+	public static final String INDEX_FILE = "index.txt";
+
+	private static final int QUEUE_CAPACITY = 16;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Provider<File> moduleArchiveDirProvider;
+	private final Set<String> storedHashes = Sets.newHashSet();
+	private int counter;
+
+	private ThreadPoolExecutor executor;
+
+	/*
+	 * Only accessed by the writer thread. Closed by flush() after the writer thread has terminated.
+	 */
+	private Writer indexWriter;
+
+	@Inject
+	public PageDumpStore(@ModuleArchiveDir final Provider<File> moduleArchiveDirProvider) {
+		this.moduleArchiveDirProvider = moduleArchiveDirProvider;
+	}
+
+	/**
+	 * Stores a page dump. The page is written only if no page with the same content has been stored
+	 * before.
+	 *
+	 * @param action
+	 *            the action which triggered the dump
+	 * @param url
+	 *            the URL of the page
+	 * @param content
+	 *            the content of the page
+	 * @return the page file relative to the module archive directory, or {@code null} if there is
+	 *         no module archive directory
+	 */
+	public String store(final String action, final String url, final String content) {
+		File moduleArchiveDir = moduleArchiveDirProvider.get();
+		if (moduleArchiveDir == null) {
+			return null;
+		}
+
+		final File pageDir = new File(moduleArchiveDir, SaveOutput.HTML.getIdentifier());
+		final String hash = Hashing.sha1().hashString(content, Charsets.UTF_8).toString();
+		final String pageFileName = hash + '.' + SaveOutput.HTML.getExtension();
+		final String pagePath = pageDir.getName() + '/' + pageFileName;
+		final boolean newPage = storedHashes.add(hash);
+		final String indexLine = String.format("%04d\t%s\t%s\t%s%n", counter++, StringUtils.defaultString(action), url,
+				pageFileName);
+
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (newPage) {
+						writeStringToFile(new File(pageDir, pageFileName), content, "UTF-8");
+					}
+					if (indexWriter == null) {
+						File indexFile = new File(pageDir, INDEX_FILE);
+						Files.createParentDirs(indexFile);
+						indexWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile, true), Charsets.UTF_8));
+					}
+					indexWriter.write(indexLine);
+					writeStringToFile(new File(pageDir.getParentFile(), JFunkConstants.LASTPAGE_HTML), "<html><head>"
+							+ "<meta http-equiv=\"refresh\" content=\"0; url=" + pagePath + "\"/></head></html>", "UTF-8");
+				} catch (IOException ex) {
+					log.error("Could not save page dump: " + pagePath, ex);
+				}
+			}
+		});
+
+		return pagePath;
+	}
+
+	/**
+	 * Waits until all page dumps have been written and closes the index file. Pages stored afterwards
+	 * are appended to the index file again.
+	 */
+	public void flush() {
+		if (executor == null) {
+			return;
+		}
+
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1L, TimeUnit.MINUTES)) {
+				log.info("Waiting for page dumps to be written...");
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted while waiting for page dumps to be written");
+		} finally {
+			executor = null;
+			closeQuietly(indexWriter);
+			indexWriter = null;
+		}
+	}
+
+	private void submit(final Runnable task) {
+		if (executor == null) {
+			String nameFormat = "page-dump-" + Thread.currentThread().getName().replace("%", "%%");
+			executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+					new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build(), new RejectedExecutionHandler() {
+						@Override
+						public void rejectedExecution(final Runnable r, final ThreadPoolExecutor e) {
+							// block instead of running the task in the caller, which would break the order of the dumps
+							try {
+								e.getQueue().put(r);
+							} catch (InterruptedException ex) {
+								Thread.currentThread().interrupt();
+								log.warn("Interrupted while waiting to save page dump");
+							}
+						}
+					});
+		}
+		executor.execute(task);
+	}
+}